@@ -0,0 +1,45 @@
+#!/bin/bash
+#
+# Run the load test against a local instance of the service, backed by
+# DynamoDB Local instead of the real DynamoDB.
+#
+# Prerequisites:
+#   - Docker, the SAM CLI, and Maven on the PATH
+#   - AWS credentials that can read the service's SSM parameters (the
+#     table name and the JWT secret key still come from Parameter Store)
+#   - `sam build` has been run in the project root folder
+#   - LOAD_TEST_TOKEN holds a valid bearer token for the load test user
+#
+# Any arguments are passed on to the load generator as settings, e.g.
+#
+#   $ ./load-test/run_local.sh rate=500 duration=120 readFraction=0.95
+#
+# The report is written to `load-test/load-test-report.json`.
+
+cd "$(dirname "$0")/.."
+
+PORT_NUMBER=6000
+BASE_URL=http://localhost:$PORT_NUMBER/short-url/mappings
+
+echo "Starting DynamoDB Local on localhost:8000"
+docker run -d --rm --name short-url-dynamodb-local -p 8000:8000 \
+    amazon/dynamodb-local -jar DynamoDBLocal.jar -inMemory -sharedDb > /dev/null
+trap 'kill $SAM_PID 2> /dev/null; docker stop short-url-dynamodb-local > /dev/null' EXIT
+
+echo "Starting ShortUrlMappingService on localhost:$PORT_NUMBER"
+sam local start-api -p $PORT_NUMBER --warm-containers EAGER \
+    --env-vars env_loadtest.json > load-test/sam-local.log 2>&1 &
+SAM_PID=$!
+
+until curl -s -o /dev/null -X POST \
+        -H "Authorization: Bearer $LOAD_TEST_TOKEN" \
+        $BASE_URL/initialize-repository; do
+    sleep 1
+done
+
+(cd load-test && mvn -B -q -DskipTests package) || exit 1
+java -jar load-test/target/load-test.jar \
+    baseUrl=$BASE_URL \
+    token="$LOAD_TEST_TOKEN" \
+    report=load-test/load-test-report.json \
+    "$@"
@@ -0,0 +1,99 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.loadtest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * The latencies and outcomes of the requests sent to one endpoint.
+ *
+ * <p>Latencies are recorded in an HdrHistogram `Recorder`, which many
+ * threads can record into concurrently without locking. Each latency is
+ * measured from the time at which the request was scheduled to be sent,
+ * not from the time at which it was actually sent, so that a stalled
+ * service cannot hide its own queueing delay (coordinated omission).</p>
+ */
+public class EndpointStats {
+    private static final double[] REPORTED_PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    // Latencies from 1 microsecond to 5 minutes, with 3 significant digits.
+    private final Recorder recorder = new Recorder(TimeUnit.MINUTES.toMicros(5), 3);
+    private final Map<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder drops = new LongAdder();
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    public void
+    recordResponse(long latencyNanos, int statusCode) {
+        recorder.recordValue(Math.max(1, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+        statusCounts.computeIfAbsent(statusCode, code -> new LongAdder()).increment();
+    }
+
+    public void
+    recordFailure(long latencyNanos) {
+        recorder.recordValue(Math.max(1, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+        failures.increment();
+    }
+
+    public void
+    recordDrop() {
+        drops.increment();
+    }
+
+    /**
+     * Discard everything recorded so far, e.g. at the end of the warmup.
+     */
+    public void
+    reset() {
+        recorder.reset();
+        statusCounts.clear();
+        failures.reset();
+        drops.reset();
+    }
+
+    /**
+     * Summarize everything recorded since the last reset.
+     *
+     * @param elapsedSeconds The length of the measurement period.
+     * @return The summary, as a JSON object.
+     */
+    public ObjectNode
+    summarize(double elapsedSeconds) {
+        Histogram histogram = recorder.getIntervalHistogram();
+
+        ObjectNode summary = JsonNodeFactory.instance.objectNode();
+        summary.put("requests", histogram.getTotalCount());
+        summary.put("throughputPerSecond", histogram.getTotalCount() / elapsedSeconds);
+        summary.put("failures", failures.sum());
+        summary.put("drops", drops.sum());
+
+        ObjectNode statuses = summary.putObject("statusCodes");
+        new TreeMap<>(statusCounts).forEach((statusCode, count) ->
+                statuses.put(String.valueOf(statusCode), count.sum()));
+
+        ObjectNode latencies = summary.putObject("latencyMillis");
+        latencies.put("min", histogram.getMinValue() / 1000.0);
+        latencies.put("mean", histogram.getMean() / 1000.0);
+        for (double percentile : REPORTED_PERCENTILES) {
+            String name = "p" + String.valueOf(percentile).replaceAll("\\.0$", "");
+            latencies.put(name, histogram.getValueAtPercentile(percentile) / 1000.0);
+        }
+        latencies.put("max", histogram.getMaxValue() / 1000.0);
+        return summary;
+    }
+}
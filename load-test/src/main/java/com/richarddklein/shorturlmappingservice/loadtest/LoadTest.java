@@ -0,0 +1,295 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Drive the REST endpoints of a running instance of the Short URL Mapping
+ * Service with a reproducible load, and report the latencies and throughput
+ * per endpoint.
+ *
+ * <p>The load is an open model: requests arrive as a Poisson process at the
+ * configured mean rate, whether or not earlier requests have been answered.
+ * (A closed model, in which each client waits for its previous response,
+ * slows down along with the service, and so hides exactly the queueing that
+ * a load test is supposed to reveal.)</p>
+ *
+ * <p>The short URL of each request is drawn from a Zipf distribution, and
+ * each request is a read or a write according to the configured mix. With
+ * the same settings and seed, two runs send the same sequence of requests,
+ * so their reports can be compared release against release.</p>
+ *
+ * <p>See `LoadTestConfig` for the settings, and the README for how to run
+ * the load test against a local instance backed by DynamoDB Local.</p>
+ */
+public class LoadTest {
+    private static final String GET_MAPPINGS = "get-mappings";
+    private static final String MULTI_GET_MAPPINGS = "multi-get-mappings";
+    private static final String CHANGE_LONG_URL = "change-long-url";
+    private static final String CREATE_MAPPING = "create-mapping";
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final int POPULATE_CONCURRENCY = 32;
+
+    private final LoadTestConfig config;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, EndpointStats> endpointStats = new LinkedHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong longUrlCounter = new AtomicLong();
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    public static void
+    main(String[] args) throws Exception {
+        new LoadTest(new LoadTestConfig(args)).run();
+    }
+
+    public LoadTest(LoadTestConfig config) {
+        this.config = config;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (String endpoint : List.of(GET_MAPPINGS, MULTI_GET_MAPPINGS, CHANGE_LONG_URL)) {
+            endpointStats.put(endpoint, new EndpointStats());
+        }
+    }
+
+    public void
+    run() throws Exception {
+        if (config.isPopulate()) {
+            populate();
+        }
+
+        Random random = new Random(config.getSeed());
+        ZipfDistribution zipf = new ZipfDistribution(config.getKeys(), config.getZipfExponent());
+        double meanInterArrivalNanos = TimeUnit.SECONDS.toNanos(1) / config.getRate();
+
+        long startNanos = System.nanoTime();
+        long measureStartNanos = startNanos + config.getWarmup().toNanos();
+        long endNanos = measureStartNanos + config.getDuration().toNanos();
+        boolean isMeasuring = false;
+
+        System.out.printf("Warming up for %d s, then measuring for %d s at %.1f requests/s%n",
+                config.getWarmup().toSeconds(), config.getDuration().toSeconds(), config.getRate());
+
+        long scheduledNanos = startNanos;
+        while (true) {
+            // Exponentially distributed inter-arrival times make a Poisson process.
+            scheduledNanos += (long) (-Math.log(1 - random.nextDouble()) * meanInterArrivalNanos);
+            if (scheduledNanos >= endNanos) {
+                break;
+            }
+            if (!isMeasuring && scheduledNanos >= measureStartNanos) {
+                isMeasuring = true;
+                endpointStats.values().forEach(EndpointStats::reset);
+            }
+
+            // Draw the request before waiting, so that the sequence of
+            // requests depends only on the seed.
+            String endpoint;
+            HttpRequest request;
+            double operation = random.nextDouble();
+            if (operation >= config.getReadFraction()) {
+                endpoint = CHANGE_LONG_URL;
+                request = changeLongUrlRequest(shortUrl(zipf.sample(random)));
+            } else if (operation < config.getReadFraction() * config.getMultiGetFraction()) {
+                endpoint = MULTI_GET_MAPPINGS;
+                List<String> shortUrls = new ArrayList<>();
+                for (int i = 0; i < config.getBatchSize(); i++) {
+                    shortUrls.add(shortUrl(zipf.sample(random)));
+                }
+                request = multiGetMappingsRequest(shortUrls);
+            } else {
+                endpoint = GET_MAPPINGS;
+                request = getMappingsRequest(shortUrl(zipf.sample(random)));
+            }
+
+            long delayNanos = scheduledNanos - System.nanoTime();
+            if (delayNanos > 0) {
+                LockSupport.parkNanos(delayNanos);
+            }
+            send(endpoint, request, scheduledNanos, isMeasuring);
+        }
+
+        waitForInFlightRequests();
+        report((endNanos - measureStartNanos) / 1e9);
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private void
+    populate() throws InterruptedException {
+        System.out.printf("Creating %d mappings for user '%s'%n",
+                config.getKeys(), config.getUsername());
+
+        Semaphore permits = new Semaphore(POPULATE_CONCURRENCY);
+        AtomicInteger failures = new AtomicInteger();
+        for (int rank = 0; rank < config.getKeys(); rank++) {
+            ObjectNode body = objectMapper.createObjectNode()
+                    .put("username", config.getUsername())
+                    .put("shortUrl", shortUrl(rank))
+                    .put("longUrl", longUrl(shortUrl(rank)));
+            permits.acquire();
+            httpClient.sendAsync(request(CREATE_MAPPING, "POST", body),
+                            HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, e) -> {
+                        // A conflict means the mapping exists from an earlier run.
+                        if (e != null || (response.statusCode() != 200
+                                && response.statusCode() != 409)) {
+                            failures.incrementAndGet();
+                        }
+                        permits.release();
+                    });
+        }
+        permits.acquire(POPULATE_CONCURRENCY);
+
+        if (failures.get() > 0) {
+            System.out.printf("Warning: %d mappings could not be created%n", failures.get());
+        }
+    }
+
+    private void
+    send(String endpoint, HttpRequest request, long scheduledNanos, boolean isMeasuring) {
+        EndpointStats stats = endpointStats.get(endpoint);
+        if (inFlight.incrementAndGet() > config.getMaxInFlight()) {
+            inFlight.decrementAndGet();
+            if (isMeasuring) {
+                stats.recordDrop();
+            }
+            return;
+        }
+
+        CompletableFuture<HttpResponse<Void>> response =
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+        response.whenComplete((httpResponse, e) -> {
+            inFlight.decrementAndGet();
+            if (!isMeasuring) {
+                return;
+            }
+            // Measured from the scheduled send time (see `EndpointStats`).
+            long latencyNanos = System.nanoTime() - scheduledNanos;
+            if (e != null) {
+                stats.recordFailure(latencyNanos);
+            } else {
+                stats.recordResponse(latencyNanos, httpResponse.statusCode());
+            }
+        });
+    }
+
+    private void
+    waitForInFlightRequests() {
+        long deadlineNanos = System.nanoTime() + REQUEST_TIMEOUT.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadlineNanos) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    private void
+    report(double elapsedSeconds) throws IOException {
+        ObjectNode report = objectMapper.createObjectNode();
+        report.put("finishedAt", Instant.now().toString());
+        report.put("elapsedSeconds", elapsedSeconds);
+        ObjectNode settings = report.putObject("config");
+        config.toMap().forEach(settings::put);
+        ObjectNode endpoints = report.putObject("endpoints");
+
+        System.out.printf("%n%-20s %9s %9s %8s %8s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "req/s", "failed", "dropped",
+                "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        endpointStats.forEach((endpoint, stats) -> {
+            ObjectNode summary = stats.summarize(elapsedSeconds);
+            endpoints.set(endpoint, summary);
+            ObjectNode latencies = (ObjectNode) summary.get("latencyMillis");
+            System.out.printf("%-20s %9d %9.1f %8d %8d %9.2f %9.2f %9.2f %9.2f%n",
+                    endpoint,
+                    summary.get("requests").asLong(),
+                    summary.get("throughputPerSecond").asDouble(),
+                    summary.get("failures").asLong(),
+                    summary.get("drops").asLong(),
+                    latencies.get("p50").asDouble(),
+                    latencies.get("p99").asDouble(),
+                    latencies.get("p99.9").asDouble(),
+                    latencies.get("max").asDouble());
+        });
+
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(config.getReport()), report);
+        System.out.printf("%nReport written to %s%n", config.getReport());
+    }
+
+    private HttpRequest
+    getMappingsRequest(String shortUrl) {
+        return request(GET_MAPPINGS, "GET", objectMapper.createObjectNode()
+                .put("username", config.getUsername())
+                .put("shortUrl", shortUrl)
+                .put("longUrl", "*"));
+    }
+
+    private HttpRequest
+    multiGetMappingsRequest(List<String> shortUrls) {
+        ObjectNode body = objectMapper.createObjectNode()
+                .put("username", config.getUsername());
+        shortUrls.forEach(body.putArray("shortUrls")::add);
+        return request(MULTI_GET_MAPPINGS, "GET", body);
+    }
+
+    private HttpRequest
+    changeLongUrlRequest(String shortUrl) {
+        return request(CHANGE_LONG_URL, "PATCH", objectMapper.createObjectNode()
+                .put("shortUrl", shortUrl)
+                .put("longUrl", longUrl(shortUrl) + "?v=" + longUrlCounter.incrementAndGet()));
+    }
+
+    private HttpRequest
+    request(String endpoint, String method, ObjectNode body) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(config.getBaseUrl() + "/" + endpoint))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body.toString()));
+        if (!config.getToken().isEmpty()) {
+            builder.header("Authorization", "Bearer " + config.getToken());
+        }
+        return builder.build();
+    }
+
+    private String
+    shortUrl(int rank) {
+        return "lt" + config.getSeed() + "-" + rank;
+    }
+
+    private static String
+    longUrl(String shortUrl) {
+        return "https://www.example.com/load-test/" + shortUrl;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.loadtest;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The configuration of a load test run.
+ *
+ * <p>Every setting has a default, and can be overridden by a `name=value`
+ * command line argument, e.g. `rate=200 duration=60 readFraction=0.95`.</p>
+ */
+public class LoadTestConfig {
+    private final Map<String, String> settings = new LinkedHashMap<>();
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    public LoadTestConfig(String[] args) {
+        // The base URL of the service under test.
+        settings.put("baseUrl", "http://localhost:6000/short-url/mappings");
+        // The bearer token sent with every request (if any).
+        settings.put("token", "");
+        // The user who owns the mappings created by the load test.
+        settings.put("username", "load-test");
+        // The mean number of requests per second. Requests arrive as a
+        // Poisson process, regardless of how fast the service answers.
+        settings.put("rate", "100");
+        // How long to run before measuring, and how long to measure.
+        settings.put("warmup", "10");
+        settings.put("duration", "60");
+        // The number of distinct short URLs, and the exponent of the Zipf
+        // distribution from which the short URL of each request is drawn.
+        settings.put("keys", "10000");
+        settings.put("zipfExponent", "1.0");
+        // The fraction of requests that are reads; the rest are writes.
+        // Of the reads, the given fraction are multi-gets (of `batchSize`
+        // short URLs each), and the rest are single-mapping reads.
+        settings.put("readFraction", "0.9");
+        settings.put("multiGetFraction", "0.05");
+        settings.put("batchSize", "50");
+        // Requests beyond this many in flight are not sent, but counted as
+        // dropped, so that a stalled service cannot exhaust the client.
+        settings.put("maxInFlight", "2000");
+        // Whether to create the mappings before the run.
+        settings.put("populate", "true");
+        settings.put("seed", "42");
+        settings.put("report", "load-test-report.json");
+
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0 || !settings.containsKey(arg.substring(0, separator))) {
+                throw new IllegalArgumentException("Unknown setting: " + arg
+                        + " (known settings: " + settings.keySet() + ")");
+            }
+            settings.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+    }
+
+    public String getBaseUrl() {
+        return settings.get("baseUrl");
+    }
+
+    public String getToken() {
+        return settings.get("token");
+    }
+
+    public String getUsername() {
+        return settings.get("username");
+    }
+
+    public double getRate() {
+        return Double.parseDouble(settings.get("rate"));
+    }
+
+    public Duration getWarmup() {
+        return Duration.ofSeconds(Long.parseLong(settings.get("warmup")));
+    }
+
+    public Duration getDuration() {
+        return Duration.ofSeconds(Long.parseLong(settings.get("duration")));
+    }
+
+    public int getKeys() {
+        return Integer.parseInt(settings.get("keys"));
+    }
+
+    public double getZipfExponent() {
+        return Double.parseDouble(settings.get("zipfExponent"));
+    }
+
+    public double getReadFraction() {
+        return Double.parseDouble(settings.get("readFraction"));
+    }
+
+    public double getMultiGetFraction() {
+        return Double.parseDouble(settings.get("multiGetFraction"));
+    }
+
+    public int getBatchSize() {
+        return Integer.parseInt(settings.get("batchSize"));
+    }
+
+    public int getMaxInFlight() {
+        return Integer.parseInt(settings.get("maxInFlight"));
+    }
+
+    public boolean isPopulate() {
+        return Boolean.parseBoolean(settings.get("populate"));
+    }
+
+    public long getSeed() {
+        return Long.parseLong(settings.get("seed"));
+    }
+
+    public String getReport() {
+        return settings.get("report");
+    }
+
+    /**
+     * Get all settings, for inclusion in the report.
+     *
+     * @return The settings, except the bearer token.
+     */
+    public Map<String, String>
+    toMap() {
+        Map<String, String> copy = new LinkedHashMap<>(settings);
+        copy.remove("token");
+        return copy;
+    }
+}
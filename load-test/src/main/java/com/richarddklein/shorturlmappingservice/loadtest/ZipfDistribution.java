@@ -0,0 +1,51 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.loadtest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A Zipf distribution over the ranks 0 .. n-1, where the probability of
+ * rank k is proportional to 1 / (k + 1)^s.
+ *
+ * <p>Real short URL traffic is heavily skewed: a few viral links get most
+ * of the hits. A Zipf distribution models that skew, so that hot keys
+ * (and hot partitions) show up in the load test as they would in
+ * production.</p>
+ */
+public class ZipfDistribution {
+    private final double[] cumulativeProbabilities;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    public ZipfDistribution(int n, double exponent) {
+        cumulativeProbabilities = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, exponent);
+            cumulativeProbabilities[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulativeProbabilities[k] /= sum;
+        }
+    }
+
+    /**
+     * Draw a rank from the distribution.
+     *
+     * @param random The source of randomness.
+     * @return A rank between 0 (the most popular) and n-1.
+     */
+    public int
+    sample(Random random) {
+        int index = Arrays.binarySearch(cumulativeProbabilities, random.nextDouble());
+        int rank = (index >= 0) ? index : -index - 1;
+        return Math.min(rank, cumulativeProbabilities.length - 1);
+    }
+}
@@ -0,0 +1,57 @@
+#!/bin/bash
+#
+# Compare the cold start time and peak memory (RSS) of the JVM build and
+# the GraalVM native build of the service, on the local machine.
+#
+# Prerequisites:
+#   - `aws-lambda-rie` (the Lambda Runtime Interface Emulator) on the PATH
+#   - AWS credentials that can read the service's SSM parameters
+#   - STARTUP_TEST_USERNAME set to an existing user, and STARTUP_TEST_TOKEN
+#     set to a bearer token (JWT) issued to that user
+#   - `mvn -Pnative -DskipTests package` has been run (native build), and
+#     `mvn -DskipTests package` has been run (JVM build)
+#
+# Each build is started under the emulator, a single `get-mappings`
+# request is sent to it, and the time until the response arrives (cold
+# start + first invocation) and the peak RSS of the function process are
+# reported. The request lists the mappings of the test user, with the
+# user's own token, so that it is served by the read-only fast path
+# rather than by Spring.
+
+HANDLER=com.richarddklein.shorturlmappingservice.StreamLambdaHandler::handleRequest
+RIC_MAIN=com.amazonaws.services.lambda.runtime.api.client.AWSLambda
+INVOKE_URL=http://localhost:8080/2015-03-31/functions/function/invocations
+
+: "${STARTUP_TEST_USERNAME:?Set STARTUP_TEST_USERNAME to an existing user}"
+: "${STARTUP_TEST_TOKEN:?Set STARTUP_TEST_TOKEN to a bearer token for that user}"
+EVENT='{"httpMethod":"GET","path":"/get-mappings","headers":{"Content-Type":"application/json","Authorization":"Bearer '"$STARTUP_TEST_TOKEN"'"},"body":"{\"username\":\"'"$STARTUP_TEST_USERNAME"'\",\"shortUrl\":\"*\",\"longUrl\":\"*\"}","isBase64Encoded":false,"requestContext":{}}'
+
+export PROFILE=${PROFILE:-test}
+
+measure() {
+    local label=$1
+    shift
+
+    local start_ms=$(date +%s%3N)
+    aws-lambda-rie "$@" > "target/startup-$label.log" 2>&1 &
+    local rie_pid=$!
+
+    until curl -s -o /dev/null -d "$EVENT" $INVOKE_URL; do
+        sleep 0.05
+    done
+    local end_ms=$(date +%s%3N)
+
+    local function_pid=$(pgrep -P $rie_pid | head -1)
+    local peak_rss_kb=$(grep VmHWM /proc/$function_pid/status | awk '{print $2}')
+
+    kill $rie_pid
+    wait $rie_pid 2>/dev/null
+
+    printf "%-8s first response after %6d ms, peak RSS %7d KB\n" \
+        "$label" $((end_ms - start_ms)) "$peak_rss_kb"
+}
+
+mvn -q -Pnative dependency:build-classpath -Dmdep.outputFile=target/native-classpath.txt
+
+measure jvm java -cp "target/classes:$(cat target/native-classpath.txt)" $RIC_MAIN $HANDLER
+measure native target/short-url-mapping-service $HANDLER
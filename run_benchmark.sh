@@ -0,0 +1,18 @@
+#!/bin/bash
+#
+# Run one of the micro-benchmarks in `src/test/java` (e.g.
+# `ResponseCompressorBenchmark`) on the local machine.
+#
+# The benchmarks are plain `main` classes rather than unit tests, so they
+# never run as part of the build.
+
+if [ $# -ne 1 ]; then
+    echo "Usage: $0 <benchmark class name>"
+    exit 1
+fi
+
+mvn -q test-compile dependency:build-classpath \
+    -Dmdep.includeScope=test -Dmdep.outputFile=target/test-classpath.txt || exit 1
+
+java -cp "target/test-classes:target/classes:$(cat target/test-classpath.txt)" \
+    "com.richarddklein.shorturlmappingservice.$1"
@@ -0,0 +1,117 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * The subset of an API Gateway proxy event that the Lambda handler needs
+ * in order to route a request without going through Spring.
+ *
+ * <p>The event is parsed with a streaming parser, and everything that the
+ * handler does not need (the request context, the multi-value headers,
+ * the query string parameters, etc.) is skipped over without being
+ * materialized.</p>
+ */
+public class ApiGatewayProxyEvent {
+    private String httpMethod;
+    private String path;
+    private String body;
+    private final Map<String, String> headers =
+            new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    /**
+     * Parse an API Gateway proxy event.
+     *
+     * @param jsonFactory The Jackson factory used to create the parser.
+     * @param event The raw bytes of the API Gateway proxy event.
+     * @return The parsed event.
+     * @throws IOException if the event is not well-formed JSON.
+     */
+    public static ApiGatewayProxyEvent
+    parse(JsonFactory jsonFactory, byte[] event) throws IOException {
+        ApiGatewayProxyEvent proxyEvent = new ApiGatewayProxyEvent();
+        boolean isBase64Encoded = false;
+
+        try (JsonParser parser = jsonFactory.createParser(event)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("API Gateway proxy event is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                JsonToken valueToken = parser.nextToken();
+
+                switch (fieldName) {
+                    case "httpMethod" -> proxyEvent.httpMethod = parser.getValueAsString();
+                    case "path" -> proxyEvent.path = parser.getValueAsString();
+                    case "body" -> proxyEvent.body = parser.getValueAsString();
+                    case "isBase64Encoded" -> isBase64Encoded = parser.getValueAsBoolean();
+                    case "headers" -> {
+                        if (valueToken == JsonToken.START_OBJECT) {
+                            readHeaders(parser, proxyEvent.headers);
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+
+        if (isBase64Encoded && proxyEvent.body != null) {
+            proxyEvent.body = new String(
+                    Base64.getDecoder().decode(proxyEvent.body),
+                    StandardCharsets.UTF_8);
+        }
+        return proxyEvent;
+    }
+
+    public String getHttpMethod() {
+        return httpMethod;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * Get the value of a request header.
+     *
+     * @param name The (case-insensitive) name of the header.
+     * @return The value of the header, or `null` if the request does
+     * not contain the header.
+     */
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private static void
+    readHeaders(JsonParser parser, Map<String, String> headers) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            headers.put(name, parser.getValueAsString());
+        }
+    }
+}
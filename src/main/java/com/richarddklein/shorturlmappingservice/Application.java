@@ -11,6 +11,7 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.ImportRuntimeHints;
 import org.springframework.web.bind.annotation.RestController;
 
 /**
@@ -21,6 +22,7 @@ import org.springframework.web.bind.annotation.RestController;
  */
 @SpringBootApplication
 @Import({EnvironmentConfig.class, SecurityConfig.class})
+@ImportRuntimeHints(NativeRuntimeHints.class)
 @ComponentScan(
         // The REST Controller will be instantiated via the `ControllerConfig`
         // @Configuration class, so we exclude it from the component scan.
@@ -0,0 +1,118 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice;
+
+import java.time.Duration;
+import javax.crypto.SecretKey;
+
+import com.richarddklein.shorturlcommonlibrary.environment.ParameterStoreAccessor;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Authenticate requests that are served by the Lambda fast path.
+ *
+ * <p>Requests served by the fast path never reach the Spring Security
+ * filter chain, so the fast path must do its own authentication. It
+ * does so conservatively: it only ever answers "yes, this bearer token
+ * is valid and belongs to this user". Anything else (a missing or
+ * malformed token, a bad signature, an expired token, a key that cannot
+ * be loaded) is reported as "not authenticated", and the request is then
+ * handed to Spring, which remains the single authority for rejecting
+ * requests.</p>
+ *
+ * <p>Clients present the same bearer token on request after request, so
+ * the verdict on each token is cached (see `VerifiedTokenCache`), and a
+ * repeated token costs a hash and a map lookup instead of Base64 decoding,
+ * JSON parsing, and HMAC verification.</p>
+ */
+public class FastPathAuthenticator {
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final int MAX_VERIFIED_TOKENS = 10_000;
+    private static final int MAX_REJECTED_TOKENS = 1_000;
+    private static final Duration MAX_VERIFIED_AGE = Duration.ofMinutes(15);
+    private static final Duration REJECTION_AGE = Duration.ofMinutes(1);
+
+    private final ParameterStoreAccessor parameterStoreAccessor;
+    private final VerifiedTokenCache verifiedTokenCache = new VerifiedTokenCache(
+            MAX_VERIFIED_TOKENS, MAX_REJECTED_TOKENS, MAX_VERIFIED_AGE, REJECTION_AGE);
+    private volatile JwtParser jwtParser;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    public FastPathAuthenticator(ParameterStoreAccessor parameterStoreAccessor) {
+        this.parameterStoreAccessor = parameterStoreAccessor;
+    }
+
+    /**
+     * Determine whether an `Authorization` header carries a valid bearer
+     * token for the specified user.
+     *
+     * @param authorizationHeader The value of the `Authorization` header,
+     *                            or `null` if there is none.
+     * @param username The user that the token must belong to.
+     * @return `true` if the token is valid and its subject is `username`,
+     * `false` otherwise.
+     */
+    public boolean
+    isAuthenticatedAs(String authorizationHeader, String username) {
+        if (authorizationHeader == null
+                || !authorizationHeader.startsWith(BEARER_PREFIX)
+                || username == null) {
+            return false;
+        }
+        String token = authorizationHeader.substring(BEARER_PREFIX.length()).trim();
+        if (token.isEmpty()) {
+            return false;
+        }
+
+        String key = VerifiedTokenCache.keyOf(token);
+        long nowMillis = System.currentTimeMillis();
+        VerifiedTokenCache.Verdict verdict = verifiedTokenCache.get(key, nowMillis);
+        if (verdict != null) {
+            return verdict.isVerified() && username.equals(verdict.subject());
+        }
+
+        try {
+            Claims claims = getJwtParser()
+                    .parseSignedClaims(token)
+                    .getPayload();
+            verifiedTokenCache.putVerified(
+                    key, claims.getSubject(), claims.getExpiration(), nowMillis);
+            return username.equals(claims.getSubject());
+        } catch (JwtException e) {
+            // Only the token itself is to blame, so the verdict is final.
+            verifiedTokenCache.putRejected(key, nowMillis);
+            return false;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private JwtParser getJwtParser() {
+        JwtParser parser = jwtParser;
+        if (parser == null) {
+            // The JWT secret key is fetched once per execution environment.
+            // Synchronous logic is fine here, since the Lambda handler thread
+            // has nothing else to do until the request has been served.
+            SecretKey secretKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(
+                    parameterStoreAccessor.getJwtSecretKey().block()));
+            parser = Jwts.parser().verifyWith(secretKey).build();
+            jwtParser = parser;
+        }
+        return parser;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice;
+
+import java.util.List;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.ShortUrlAndLongUrl;
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.ShortUrlMappingFilter;
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.StatusAndShortUrlMappingArray;
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.entity.ShortUrlMapping;
+import com.richarddklein.shorturlcommonlibrary.service.status.Status;
+import com.richarddklein.shorturlmappingservice.dto.ConcurrencyLimiterState;
+import com.richarddklein.shorturlmappingservice.dto.LongUrlMatch;
+import com.richarddklein.shorturlmappingservice.dto.ShortUrlMappingMatchFilter;
+import com.richarddklein.shorturlmappingservice.dto.StatusAndConcurrencyLimiterState;
+import com.richarddklein.shorturlmappingservice.dto.StatusAndFoundAndMissingMappings;
+import com.richarddklein.shorturlmappingservice.dto.StatusAndMappingJob;
+import com.richarddklein.shorturlmappingservice.dto.UsernameAndShortUrlArray;
+import com.richarddklein.shorturlmappingservice.entity.MappingJobItem;
+import com.richarddklein.shorturlmappingservice.entity.ShortUrlMappingItem;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * The reachability metadata that a GraalVM native image of the service
+ * needs, beyond what Spring AOT and the GraalVM metadata repository
+ * already provide.
+ *
+ * <p>Spring AOT processing applies these hints when the `native` Maven
+ * profile is used; they have no effect on the JVM build.</p>
+ */
+public class NativeRuntimeHints implements RuntimeHintsRegistrar {
+    // jjwt locates its implementation classes by name at runtime.
+    private static final List<String> JJWT_IMPLEMENTATION_CLASSES = List.of(
+            "io.jsonwebtoken.impl.DefaultClaimsBuilder",
+            "io.jsonwebtoken.impl.DefaultJwtBuilder",
+            "io.jsonwebtoken.impl.DefaultJwtHeaderBuilder",
+            "io.jsonwebtoken.impl.DefaultJwtParserBuilder",
+            "io.jsonwebtoken.impl.io.StandardCompressionAlgorithms",
+            "io.jsonwebtoken.impl.security.DefaultDynamicJwkBuilder",
+            "io.jsonwebtoken.impl.security.DefaultJwkParserBuilder",
+            "io.jsonwebtoken.impl.security.DefaultJwkSetBuilder",
+            "io.jsonwebtoken.impl.security.DefaultJwkSetParserBuilder",
+            "io.jsonwebtoken.impl.security.DefaultKeyOperationBuilder",
+            "io.jsonwebtoken.impl.security.DefaultKeyOperationPolicyBuilder",
+            "io.jsonwebtoken.impl.security.JwksBridge",
+            "io.jsonwebtoken.impl.security.KeysBridge",
+            "io.jsonwebtoken.impl.security.StandardCurves",
+            "io.jsonwebtoken.impl.security.StandardEncryptionAlgorithms",
+            "io.jsonwebtoken.impl.security.StandardHashAlgorithms",
+            "io.jsonwebtoken.impl.security.StandardKeyAlgorithms",
+            "io.jsonwebtoken.impl.security.StandardKeyOperations",
+            "io.jsonwebtoken.impl.security.StandardSecureDigestAlgorithms",
+            "io.jsonwebtoken.jackson.io.JacksonDeserializer",
+            "io.jsonwebtoken.jackson.io.JacksonSerializer");
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        // The Lambda runtime interface client instantiates the handler by name.
+        hints.reflection().registerType(StreamLambdaHandler.class,
+                MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS,
+                MemberCategory.INVOKE_PUBLIC_METHODS);
+
+        // Jackson (de)serialization of the API Gateway proxy events, and of
+        // the request and response bodies of the REST endpoints.
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                AwsProxyRequest.class,
+                AwsProxyResponse.class,
+                ShortUrlMapping.class,
+                ShortUrlMappingItem.class,
+                ShortUrlMappingFilter.class,
+                ShortUrlMappingMatchFilter.class,
+                LongUrlMatch.class,
+                ShortUrlAndLongUrl.class,
+                Status.class,
+                StatusAndShortUrlMappingArray.class,
+                UsernameAndShortUrlArray.class,
+                StatusAndFoundAndMissingMappings.class,
+                MappingJobItem.class,
+                StatusAndMappingJob.class,
+                ConcurrencyLimiterState.class,
+                StatusAndConcurrencyLimiterState.class);
+
+        for (String className : JJWT_IMPLEMENTATION_CLASSES) {
+            hints.reflection().registerTypeIfPresent(classLoader, className,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+        hints.resources().registerPattern("META-INF/services/io.jsonwebtoken.*");
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.StatusAndShortUrlMappingArray;
+import com.richarddklein.shorturlmappingservice.controller.ShortUrlMappingController;
+import com.richarddklein.shorturlmappingservice.dto.ShortUrlMappingMatchFilter;
+import com.richarddklein.shorturlmappingservice.exception.GlobalExceptionHandler;
+import com.richarddklein.shorturlmappingservice.exception.ServiceUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Serve the hot, read-only endpoints without going through Spring.
+ *
+ * <p>Proxying a request to Spring Boot means building an emulated servlet
+ * request and response, running the filter chain, and invoking the
+ * dispatcher servlet. For a simple lookup, that overhead dominates the
+ * CPU time (and hence the billed duration) of the invocation.</p>
+ *
+ * <p>The fast path recognizes the read-only endpoints, calls the REST
+ * Controller bean directly (so that the validation, status mapping, and
+ * response bodies are identical to those produced via Spring), and writes
+ * the API Gateway proxy response straight to the Lambda output stream.</p>
+ *
+ * <p>The fast path only serves a request when it is certain that Spring
+ * would have served it the same way. In particular, a `get-mappings`
+ * request is served only when it asks for the mappings of a single user,
+ * and carries a valid bearer token for that same user. Every other
+ * request, and every request that fails in the fast path for any other
+ * reason, is handed to Spring unchanged.</p>
+ *
+ * <p>The one failure that is answered right here is an unavailable (or
+ * too slow) database, or an overloaded service: Spring would only repeat
+ * the same read, doubling the latency and the load on the database, and
+ * fail the same way. The fast path answers with the same "Service
+ * Unavailable" response that Spring would send.</p>
+ */
+public class ReadOnlyFastPath {
+    private static final Logger logger = LoggerFactory.getLogger(ReadOnlyFastPath.class);
+
+    private static final List<String> GET_MAPPINGS_PATHS = List.of(
+            "/get-mappings",
+            "/short-url/mappings/get-mappings");
+
+    private final ShortUrlMappingController shortUrlMappingController;
+    private final FastPathAuthenticator fastPathAuthenticator;
+    private final ObjectMapper objectMapper;
+    private final GlobalExceptionHandler globalExceptionHandler = new GlobalExceptionHandler();
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    public ReadOnlyFastPath(
+            ShortUrlMappingController shortUrlMappingController,
+            FastPathAuthenticator fastPathAuthenticator,
+            ObjectMapper objectMapper) {
+
+        this.shortUrlMappingController = shortUrlMappingController;
+        this.fastPathAuthenticator = fastPathAuthenticator;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Try to serve a request via the fast path.
+     *
+     * @param proxyEvent The parsed API Gateway proxy event.
+     * @param outputStream The Lambda function output stream.
+     * @return `true` if the request was served, in which case the proxy
+     * response has been written to `outputStream`; `false` if the request
+     * must be handed to Spring, in which case nothing has been written.
+     */
+    public boolean
+    tryHandle(ApiGatewayProxyEvent proxyEvent, OutputStream outputStream) {
+        try {
+            ResponseEntity<?> responseEntity;
+            try {
+                responseEntity = route(proxyEvent);
+            } catch (ServiceUnavailableException e) {
+                responseEntity = globalExceptionHandler.handleServiceUnavailableException(e);
+            }
+            if (responseEntity == null) {
+                return false;
+            }
+            // Serialize the body before touching the output stream, so that
+            // a serialization failure can still fall back to Spring.
+            Object body = responseEntity.getBody();
+            String responseBody = (body == null) ? "" : objectMapper.writeValueAsString(body);
+            writeProxyResponse(responseEntity, responseBody, outputStream);
+            return true;
+        } catch (Exception e) {
+            logger.warn("====> Fast path failed; falling back to Spring", e);
+            return false;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private ResponseEntity<?>
+    route(ApiGatewayProxyEvent proxyEvent) throws IOException {
+        if ("GET".equals(proxyEvent.getHttpMethod())
+                && GET_MAPPINGS_PATHS.contains(proxyEvent.getPath())) {
+            return getMappings(proxyEvent);
+        }
+        return null;
+    }
+
+    private ResponseEntity<StatusAndShortUrlMappingArray>
+    getMappings(ApiGatewayProxyEvent proxyEvent) throws IOException {
+        String body = proxyEvent.getBody();
+        if (body == null || body.isBlank()) {
+            return null;
+        }
+        ShortUrlMappingMatchFilter shortUrlMappingFilter =
+                objectMapper.readValue(body, ShortUrlMappingMatchFilter.class);
+
+        String username = shortUrlMappingFilter.getUsername();
+        if (username == null || "*".equals(username)
+                || !fastPathAuthenticator.isAuthenticatedAs(
+                        proxyEvent.getHeader(HttpHeaders.AUTHORIZATION), username)) {
+            return null;
+        }
+        return shortUrlMappingController.getMappings(
+                shortUrlMappingFilter,
+                proxyEvent.getHeader(HttpHeaders.IF_NONE_MATCH)).block();
+    }
+
+    private void
+    writeProxyResponse(
+            ResponseEntity<?> responseEntity,
+            String responseBody,
+            OutputStream outputStream) throws IOException {
+
+        HttpHeaders headers = responseEntity.getHeaders();
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.writeStartObject();
+            generator.writeNumberField("statusCode", responseEntity.getStatusCode().value());
+
+            generator.writeObjectFieldStart("headers");
+            if (!headers.containsKey(HttpHeaders.CONTENT_TYPE)) {
+                generator.writeStringField(
+                        HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+            }
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (!header.getValue().isEmpty()) {
+                    generator.writeStringField(header.getKey(), header.getValue().getFirst());
+                }
+            }
+            generator.writeEndObject();
+
+            generator.writeObjectFieldStart("multiValueHeaders");
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                generator.writeArrayFieldStart(header.getKey());
+                for (String value : header.getValue()) {
+                    generator.writeString(value);
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+
+            generator.writeStringField("body", responseBody);
+            generator.writeBooleanField("isBase64Encoded", false);
+            generator.writeEndObject();
+        }
+    }
+}
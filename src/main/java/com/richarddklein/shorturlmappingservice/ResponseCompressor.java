@@ -0,0 +1,183 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Compress the bodies of API Gateway proxy responses.
+ *
+ * <p>Wide `get-mappings` responses are large JSON arrays of highly
+ * repetitive URLs, which compress by a factor of 5 - 8. When the client
+ * accepts gzip, and the body is large enough for compression to pay off,
+ * the body is gzipped and returned base64-encoded, with `isBase64Encoded`
+ * set. (API Gateway must have binary media types enabled, so that it
+ * decodes the body before returning it to the client.)</p>
+ *
+ * <p>Compression uses the fastest deflate level: on bodies of 100 or more
+ * mappings, it costs about a third of the CPU time of the default level,
+ * for an output that is only about 20% larger (see
+ * `ResponseCompressorBenchmark`).</p>
+ */
+public class ResponseCompressor {
+    // Below this size, compression saves too little to be worth the CPU time.
+    private static final int MIN_COMPRESSIBLE_SIZE = 1024;
+    private static final String GZIP = "gzip";
+
+    private final ObjectMapper objectMapper;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    public ResponseCompressor(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Determine whether a client accepts gzip-encoded responses.
+     *
+     * @param acceptEncoding The value of the request's `Accept-Encoding`
+     *                       header, or `null` if there is none.
+     * @return `true` if the client accepts gzip.
+     */
+    public static boolean
+    acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase(GZIP) && !name.equals("*")) {
+                continue;
+            }
+            boolean isRejected = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        isRejected = Double.parseDouble(parameter.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        isRejected = true;
+                    }
+                }
+            }
+            if (!isRejected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compress the body of an API Gateway proxy response, if that pays off.
+     *
+     * @param proxyResponse The serialized API Gateway proxy response.
+     * @return The serialized proxy response with a gzipped, base64-encoded
+     * body; or the original proxy response, if its body is already encoded,
+     * or too small to be worth compressing.
+     * @throws IOException if the proxy response is not well-formed JSON.
+     */
+    public byte[]
+    compress(byte[] proxyResponse) throws IOException {
+        JsonNode root = objectMapper.readTree(proxyResponse);
+        if (!(root instanceof ObjectNode response)
+                || response.path("isBase64Encoded").asBoolean(false)
+                || !response.path("body").isTextual()
+                || hasHeader(response, HttpHeaders.CONTENT_ENCODING)) {
+            return proxyResponse;
+        }
+
+        byte[] body = response.get("body").asText().getBytes(StandardCharsets.UTF_8);
+        if (body.length < MIN_COMPRESSIBLE_SIZE) {
+            return proxyResponse;
+        }
+        byte[] compressedBody = gzip(body);
+        if (compressedBody.length >= body.length) {
+            return proxyResponse;
+        }
+
+        response.put("body", Base64.getEncoder().encodeToString(compressedBody));
+        response.put("isBase64Encoded", true);
+        removeHeader(response, HttpHeaders.CONTENT_LENGTH);
+        setHeader(response, HttpHeaders.CONTENT_ENCODING, GZIP);
+        setHeader(response, HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private static byte[]
+    gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4);
+        try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed, 8192) {
+            {
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        }) {
+            gzipStream.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static boolean
+    hasHeader(ObjectNode response, String name) {
+        for (String headersField : new String[] {"headers", "multiValueHeaders"}) {
+            JsonNode headers = response.get(headersField);
+            if (headers != null) {
+                Iterator<String> fieldNames = headers.fieldNames();
+                while (fieldNames.hasNext()) {
+                    if (fieldNames.next().equalsIgnoreCase(name)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void
+    removeHeader(ObjectNode response, String name) {
+        for (String headersField : new String[] {"headers", "multiValueHeaders"}) {
+            if (response.get(headersField) instanceof ObjectNode headers) {
+                Iterator<Map.Entry<String, JsonNode>> fields = headers.fields();
+                while (fields.hasNext()) {
+                    if (fields.next().getKey().equalsIgnoreCase(name)) {
+                        fields.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void
+    setHeader(ObjectNode response, String name, String value) {
+        removeHeader(response, name);
+        if (!(response.get("headers") instanceof ObjectNode)) {
+            response.putObject("headers");
+        }
+        ((ObjectNode) response.get("headers")).put(name, value);
+        if (response.get("multiValueHeaders") instanceof ObjectNode multiValueHeaders) {
+            multiValueHeaders.putArray(name).add(value);
+        }
+    }
+}
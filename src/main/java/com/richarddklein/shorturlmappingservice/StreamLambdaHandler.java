@@ -5,12 +5,23 @@
 
 package com.richarddklein.shorturlmappingservice;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.time.Duration;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.richarddklein.shorturlcommonlibrary.environment.ParameterStoreAccessor;
+import com.richarddklein.shorturlmappingservice.controller.ShortUrlMappingController;
+import com.richarddklein.shorturlmappingservice.dao.RequestDeadline;
+import com.richarddklein.shorturlmappingservice.service.ClickCounter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
 
 import com.amazonaws.serverless.exceptions.ContainerInitializationException;
 import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
@@ -25,19 +36,45 @@ import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
 public class StreamLambdaHandler implements RequestStreamHandler {
     private static final Logger logger = LoggerFactory.getLogger(StreamLambdaHandler.class);
     private static final SpringBootLambdaContainerHandler<AwsProxyRequest, AwsProxyResponse> handler;
+    private static final ReadOnlyFastPath readOnlyFastPath;
+    private static final ObjectMapper objectMapper;
+    private static final ResponseCompressor responseCompressor;
+    private static final ClickCounter clickCounter;
 
     static {
+        long startNanos = System.nanoTime();
         try {
             handler = SpringBootLambdaContainerHandler.getAwsProxyHandler(Application.class);
         } catch (ContainerInitializationException e) {
             logger.error("====> ", e);
             throw new RuntimeException("Could not initialize Spring Boot application", e);
         }
+
+        WebApplicationContext applicationContext = WebApplicationContextUtils
+                .getRequiredWebApplicationContext(handler.getServletContext());
+        objectMapper = applicationContext.getBean(ObjectMapper.class);
+        readOnlyFastPath = new ReadOnlyFastPath(
+                applicationContext.getBean(ShortUrlMappingController.class),
+                new FastPathAuthenticator(
+                        applicationContext.getBean(ParameterStoreAccessor.class)),
+                objectMapper);
+        responseCompressor = new ResponseCompressor(objectMapper);
+        clickCounter = applicationContext.getBean(ClickCounter.class);
+
+        // Used to compare the cold starts of the JVM and native builds.
+        System.out.println("====> Initialization completed in "
+                + (System.nanoTime() - startNanos) / 1_000_000 + " ms");
     }
 
     /**
-     * Handle an incoming request from AWS Lambda, by proxying it to
-     * Spring Boot, and returning the response to AWS Lambda.
+     * Handle an incoming request from AWS Lambda.
+     *
+     * <p>Hot, read-only requests are served directly by the fast path.
+     * All other requests are proxied to Spring Boot, and the response is
+     * returned to AWS Lambda (gzipped, if the client accepts that).</p>
+     *
+     * <p>The remaining execution time of the invocation becomes the
+     * deadline of the request, from which the DAO derives its timeouts.</p>
      *
      * @param inputStream The Lambda function input stream.
      * @param outputStream The Lambda function output stream.
@@ -47,6 +84,59 @@ public class StreamLambdaHandler implements RequestStreamHandler {
     @Override
     public void handleRequest(InputStream inputStream, OutputStream outputStream, Context context)
             throws IOException {
-        handler.proxyStream(inputStream, outputStream, context);
+        if (context != null) {
+            RequestDeadline.start(Duration.ofMillis(context.getRemainingTimeInMillis()));
+        }
+        try {
+            // The execution environment is frozen between invocations, so the
+            // click counts are flushed while an invocation is running. The
+            // flush overlaps this invocation, rather than delaying its response.
+            clickCounter.flushIfDue();
+
+            // The event is buffered, so that it can be replayed to Spring if
+            // the fast path declines to serve it.
+            handleEvent(inputStream.readAllBytes(), outputStream, context);
+        } finally {
+            RequestDeadline.clear();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private void
+    handleEvent(byte[] event, OutputStream outputStream, Context context)
+            throws IOException {
+        ApiGatewayProxyEvent proxyEvent = null;
+        try {
+            proxyEvent = ApiGatewayProxyEvent.parse(objectMapper.getFactory(), event);
+        } catch (IOException e) {
+            // Let Spring deal with (and report) the malformed event.
+            logger.warn("====> ", e);
+        }
+
+        // When the client accepts gzip, the response is buffered, so that
+        // its body can be compressed before it is returned.
+        boolean acceptsGzip = proxyEvent != null && ResponseCompressor.acceptsGzip(
+                proxyEvent.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        ByteArrayOutputStream bufferedResponse = acceptsGzip ? new ByteArrayOutputStream() : null;
+        OutputStream responseStream = acceptsGzip ? bufferedResponse : outputStream;
+
+        if (proxyEvent == null || !readOnlyFastPath.tryHandle(proxyEvent, responseStream)) {
+            handler.proxyStream(new ByteArrayInputStream(event), responseStream, context);
+        }
+
+        if (acceptsGzip) {
+            byte[] response = bufferedResponse.toByteArray();
+            try {
+                response = responseCompressor.compress(response);
+            } catch (IOException e) {
+                // Return the response uncompressed.
+                logger.warn("====> ", e);
+            }
+            outputStream.write(response);
+            outputStream.flush();
+        }
     }
 }
@@ -0,0 +1,155 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the verdicts on recently seen bearer tokens, so that a
+ * token that a client presents over and over is only parsed and verified
+ * once (per execution environment), rather than on every request.
+ *
+ * <p>A token that passed verification is remembered with its subject until
+ * the token's own `exp` claim (or, if it has none, for a maximum age), so
+ * the cache never accepts a token that the parser would reject as expired.
+ * A token that failed verification is remembered as rejected for a short
+ * while, so that a client retrying with a bad token does not cost a full
+ * verification each time either.</p>
+ *
+ * <p>Entries are keyed by a SHA-256 hash of the token, so the cache never
+ * holds the tokens themselves. Verified and rejected tokens are kept in
+ * separate maps, each evicting its least recently used entries, so that a
+ * flood of bad tokens cannot evict the good ones.</p>
+ */
+public class VerifiedTokenCache {
+    private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final long maxVerifiedAgeMillis;
+    private final long rejectionAgeMillis;
+    private final Map<String, Verdict> verifiedTokens;
+    private final Map<String, Verdict> rejectedTokens;
+
+    /**
+     * The verdict on a token.
+     *
+     * @param subject The subject of a verified token, or `null` if the token
+     *                was rejected.
+     * @param expiresAtMillis The time at which the verdict expires.
+     */
+    public record Verdict(String subject, long expiresAtMillis) {
+        public boolean
+        isVerified() {
+            return subject != null;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    public VerifiedTokenCache(
+            int maxVerifiedTokens,
+            int maxRejectedTokens,
+            Duration maxVerifiedAge,
+            Duration rejectionAge) {
+
+        this.maxVerifiedAgeMillis = maxVerifiedAge.toMillis();
+        this.rejectionAgeMillis = rejectionAge.toMillis();
+        this.verifiedTokens = lruMap(maxVerifiedTokens);
+        this.rejectedTokens = lruMap(maxRejectedTokens);
+    }
+
+    /**
+     * Compute the key under which a token's verdict is cached.
+     *
+     * @param token The token.
+     * @return The Base64-encoded SHA-256 hash of the token.
+     */
+    public static String
+    keyOf(String token) {
+        MessageDigest digest = sha256.get();
+        return Base64.getEncoder().encodeToString(
+                digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Look up the verdict on a token.
+     *
+     * @param key The token's key (see `keyOf()`).
+     * @param nowMillis The current time.
+     * @return The verdict, or `null` if there is no unexpired verdict.
+     */
+    public synchronized Verdict
+    get(String key, long nowMillis) {
+        Verdict verdict = verifiedTokens.get(key);
+        if (verdict == null) {
+            verdict = rejectedTokens.get(key);
+        }
+        if (verdict != null && verdict.expiresAtMillis() <= nowMillis) {
+            verifiedTokens.remove(key);
+            rejectedTokens.remove(key);
+            return null;
+        }
+        return verdict;
+    }
+
+    /**
+     * Remember that a token passed verification.
+     *
+     * @param key The token's key (see `keyOf()`).
+     * @param subject The token's subject.
+     * @param expiration The token's `exp` claim, or `null` if it has none.
+     * @param nowMillis The current time.
+     */
+    public synchronized void
+    putVerified(String key, String subject, Date expiration, long nowMillis) {
+        long expiresAtMillis = nowMillis + maxVerifiedAgeMillis;
+        if (expiration != null) {
+            expiresAtMillis = Math.min(expiresAtMillis, expiration.getTime());
+        }
+        if (subject != null && expiresAtMillis > nowMillis) {
+            verifiedTokens.put(key, new Verdict(subject, expiresAtMillis));
+        }
+    }
+
+    /**
+     * Remember that a token failed verification.
+     *
+     * @param key The token's key (see `keyOf()`).
+     * @param nowMillis The current time.
+     */
+    public synchronized void
+    putRejected(String key, long nowMillis) {
+        rejectedTokens.put(key, new Verdict(null, nowMillis + rejectionAgeMillis));
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private static Map<String, Verdict>
+    lruMap(int maxEntries) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Verdict> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.controller;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import com.richarddklein.shorturlmappingservice.dto.ConcurrencyLimiterState;
+import com.richarddklein.shorturlmappingservice.exception.ServiceUnavailableException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * An adaptive limit on the number of requests in flight, which sheds the
+ * excess requests with a fast "Service Unavailable" rather than letting them
+ * queue up behind a slow database.
+ *
+ * <p>The limit is estimated from the observed latency, with a gradient
+ * algorithm: it compares a short-term average of the latency with a
+ * long-term one. While the two agree, there is no queueing, and the limit
+ * grows (by about the square root of itself per request). When the short-
+ * term latency rises above the long-term one, requests are queueing
+ * somewhere, and the limit shrinks in proportion (by at most half per
+ * request). Only requests that complete are sampled, and samples taken
+ * while fewer than half of the allowed requests were in flight are
+ * ignored, since they say nothing about the limit.</p>
+ *
+ * <p>Cheap point operations take precedence over bulk operations (scans,
+ * listings across all users, lookups of many short URLs at once, and the
+ * pages of background jobs): bulk
+ * operations may only use a share of the limit, so the rest is kept free
+ * for point operations.</p>
+ *
+ * <p>A Lambda execution environment serves one request at a time, so on
+ * Lambda the limiter never sheds; it protects the service when it runs as a
+ * long-lived server, where requests do share the process.</p>
+ */
+public class ConcurrencyLimiter {
+    public enum Priority { POINT, BULK }
+
+    // The share of the limit that bulk operations may use.
+    private static final double BULK_SHARE = 0.5;
+    // How much the short-term latency may exceed the long-term latency
+    // before the limit starts to shrink.
+    private static final double LATENCY_TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    // The weights of each new sample in the short- and long-term averages,
+    // which span roughly the last 10 and 500 requests.
+    private static final double SHORT_TERM_WEIGHT = 2.0 / (10 + 1);
+    private static final double LONG_TERM_WEIGHT = 2.0 / (500 + 1);
+    private static final Duration RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private int inFlight;
+    private double shortTermLatencyNanos;
+    private double longTermLatencyNanos;
+    private long admittedCount;
+    private long rejectedCount;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Run a request under the limit.
+     *
+     * @param priority The priority of the request.
+     * @param request The request.
+     * @return The result of the request, or a `ServiceUnavailableException`
+     * if too many requests of its priority are in flight.
+     */
+    public <T> Mono<T>
+    limit(Priority priority, Supplier<Mono<T>> request) {
+        return Mono.defer(() -> {
+            int inFlightAtStart = tryAcquire(priority);
+            if (inFlightAtStart < 0) {
+                return Mono.error(new ServiceUnavailableException(
+                        "The service is overloaded", RETRY_AFTER));
+            }
+            long startNanos = System.nanoTime();
+            return Mono.defer(request)
+                // Only a completed request says something about the latency.
+                // A cancelled one was cut short, and a failed one may have
+                // failed fast (or, at the deadline, slowly) for reasons that
+                // have nothing to do with queueing.
+                .doFinally(signalType -> release(
+                        signalType == SignalType.ON_COMPLETE,
+                        System.nanoTime() - startNanos,
+                        inFlightAtStart));
+        });
+    }
+
+    /**
+     * Get the current state of the limiter, for monitoring.
+     *
+     * @return The current state.
+     */
+    public synchronized ConcurrencyLimiterState
+    getState() {
+        return new ConcurrencyLimiterState(
+                allowedInFlight(Priority.POINT),
+                allowedInFlight(Priority.BULK),
+                inFlight,
+                shortTermLatencyNanos / 1e6,
+                longTermLatencyNanos / 1e6,
+                admittedCount,
+                rejectedCount);
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    // Returns the number of requests in flight before this one, or -1 if the
+    // request is rejected.
+    private synchronized int
+    tryAcquire(Priority priority) {
+        if (inFlight >= allowedInFlight(priority)) {
+            rejectedCount++;
+            return -1;
+        }
+        admittedCount++;
+        return inFlight++;
+    }
+
+    private synchronized void
+    release(boolean isSample, long latencyNanos, int inFlightAtStart) {
+        inFlight--;
+        if (!isSample) {
+            return;
+        }
+
+        if (longTermLatencyNanos == 0) {
+            shortTermLatencyNanos = latencyNanos;
+            longTermLatencyNanos = latencyNanos;
+        } else {
+            shortTermLatencyNanos += SHORT_TERM_WEIGHT * (latencyNanos - shortTermLatencyNanos);
+            longTermLatencyNanos += LONG_TERM_WEIGHT * (latencyNanos - longTermLatencyNanos);
+        }
+        // After a long spike, the long-term average lags far behind; pull it
+        // down, so that the limit can recover quickly.
+        if (longTermLatencyNanos > 2 * shortTermLatencyNanos) {
+            longTermLatencyNanos *= 0.95;
+        }
+
+        if (inFlightAtStart + 1 < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0,
+                LATENCY_TOLERANCE * longTermLatencyNanos / shortTermLatencyNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit,
+                (1 - SMOOTHING) * limit + SMOOTHING * newLimit));
+    }
+
+    private int
+    allowedInFlight(Priority priority) {
+        double allowed = (priority == Priority.BULK) ? limit * BULK_SHARE : limit;
+        return Math.max(1, (int) allowed);
+    }
+}
@@ -6,7 +6,6 @@
 package com.richarddklein.shorturlmappingservice.controller;
 
 import com.richarddklein.shorturlmappingservice.service.ShortUrlMappingService;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -18,12 +17,44 @@ import org.springframework.context.annotation.Configuration;
  */
 @Configuration
 public class ControllerConfig {
-    @Autowired
-    ShortUrlMappingService shortUrlMappingService;
+    // Optional environment variables that bound the adaptive limit on the
+    // number of requests in flight.
+    private static final String CONCURRENCY_LIMIT_MIN = "CONCURRENCY_LIMIT_MIN";
+    private static final String CONCURRENCY_LIMIT_MAX = "CONCURRENCY_LIMIT_MAX";
 
+    private static final int INITIAL_CONCURRENCY_LIMIT = 20;
+    private static final int DEFAULT_CONCURRENCY_LIMIT_MIN = 4;
+    private static final int DEFAULT_CONCURRENCY_LIMIT_MAX = 500;
+
+    // The service is a parameter rather than an autowired field, since the
+    // service in turn uses the concurrency limiter (see `MappingJobRunner`),
+    // which would otherwise make the two configurations depend on each other.
     @Bean
     public ShortUrlMappingController
-    shortUrlMappingController() {
-        return new ShortUrlMappingControllerImpl(shortUrlMappingService);
+    shortUrlMappingController(ShortUrlMappingService shortUrlMappingService) {
+        return new ShortUrlMappingControllerImpl(
+                shortUrlMappingService,
+                concurrencyLimiter());
+    }
+
+    @Bean
+    public ConcurrencyLimiter
+    concurrencyLimiter() {
+        int minLimit = intFromEnv(CONCURRENCY_LIMIT_MIN, DEFAULT_CONCURRENCY_LIMIT_MIN);
+        int maxLimit = intFromEnv(CONCURRENCY_LIMIT_MAX, DEFAULT_CONCURRENCY_LIMIT_MAX);
+        return new ConcurrencyLimiter(
+                Math.max(minLimit, Math.min(maxLimit, INITIAL_CONCURRENCY_LIMIT)),
+                minLimit,
+                maxLimit);
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private static int
+    intFromEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return (value == null || value.isBlank()) ? defaultValue : Integer.parseInt(value);
     }
 }
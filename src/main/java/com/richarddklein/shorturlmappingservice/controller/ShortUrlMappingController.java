@@ -6,10 +6,15 @@
 package com.richarddklein.shorturlmappingservice.controller;
 
 import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.ShortUrlAndLongUrl;
-import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.ShortUrlMappingFilter;
 import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.StatusAndShortUrlMappingArray;
-import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.entity.ShortUrlMapping;
 import com.richarddklein.shorturlcommonlibrary.service.status.Status;
+import com.richarddklein.shorturlmappingservice.dto.StatusAndConcurrencyLimiterState;
+import com.richarddklein.shorturlmappingservice.dto.StatusAndFoundAndMissingMappings;
+import com.richarddklein.shorturlmappingservice.dto.ShortUrlMappingMatchFilter;
+import com.richarddklein.shorturlmappingservice.dto.StatusAndMappingJob;
+import com.richarddklein.shorturlmappingservice.dto.UsernameAndShortUrlArray;
+import com.richarddklein.shorturlmappingservice.entity.ShortUrlMappingItem;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Mono;
@@ -20,13 +25,23 @@ public interface ShortUrlMappingController {
     ResponseEntity<Status>
     initializeShortUrlMappingRepository();
 
+    @PostMapping("/migrate-indexes")
+    ResponseEntity<Status>
+    migrateShortUrlMappingIndexes();
+
     @PostMapping("/create-mapping")
     Mono<ResponseEntity<Status>>
-    createMapping(@RequestBody ShortUrlMapping shortUrlMapping);
+    createMapping(@RequestBody ShortUrlMappingItem shortUrlMapping);
 
     @GetMapping("/get-mappings")
     Mono<ResponseEntity<StatusAndShortUrlMappingArray>>
-    getMappings(@RequestBody ShortUrlMappingFilter shortUrlMappingFilter);
+    getMappings(@RequestBody ShortUrlMappingMatchFilter shortUrlMappingFilter,
+                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                String ifNoneMatch);
+
+    @GetMapping("/multi-get-mappings")
+    Mono<ResponseEntity<StatusAndFoundAndMissingMappings>>
+    getMappingsByShortUrls(@RequestBody UsernameAndShortUrlArray usernameAndShortUrlArray);
 
     @PatchMapping("/change-long-url")
     Mono<ResponseEntity<Status>>
@@ -34,5 +49,17 @@ public interface ShortUrlMappingController {
 
     @DeleteMapping("/delete-mappings")
     Mono<ResponseEntity<Status>>
-    deleteMappings(@RequestBody ShortUrlMappingFilter shortUrlMappingFilter);
+    deleteMappings(@RequestBody ShortUrlMappingMatchFilter shortUrlMappingFilter);
+
+    @DeleteMapping("/delete-mappings-job")
+    Mono<ResponseEntity<StatusAndMappingJob>>
+    submitDeleteMappingsJob(@RequestBody ShortUrlMappingMatchFilter shortUrlMappingFilter);
+
+    @GetMapping("/mapping-jobs/{jobId}")
+    Mono<ResponseEntity<StatusAndMappingJob>>
+    getMappingJob(@PathVariable String jobId);
+
+    @GetMapping("/concurrency-limiter")
+    ResponseEntity<StatusAndConcurrencyLimiterState>
+    getConcurrencyLimiterState();
 }
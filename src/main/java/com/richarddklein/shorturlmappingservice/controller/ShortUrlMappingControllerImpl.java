@@ -5,10 +5,25 @@
 
 package com.richarddklein.shorturlmappingservice.controller;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+
 import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.*;
 import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.entity.ShortUrlMapping;
 import com.richarddklein.shorturlcommonlibrary.service.status.ShortUrlStatus;
 import com.richarddklein.shorturlcommonlibrary.service.status.Status;
+import com.richarddklein.shorturlmappingservice.controller.ConcurrencyLimiter.Priority;
+import com.richarddklein.shorturlmappingservice.dto.ShortUrlMappingMatchFilter;
+import com.richarddklein.shorturlmappingservice.dto.StatusAndConcurrencyLimiterState;
+import com.richarddklein.shorturlmappingservice.dto.StatusAndFoundAndMissingMappings;
+import com.richarddklein.shorturlmappingservice.dto.StatusAndMappingJob;
+import com.richarddklein.shorturlmappingservice.dto.UsernameAndShortUrlArray;
+import com.richarddklein.shorturlmappingservice.entity.ShortUrlMappingItem;
 import com.richarddklein.shorturlmappingservice.service.ShortUrlMappingService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -19,16 +34,22 @@ import reactor.core.publisher.Mono;
 @RestController
 @RequestMapping({"/short-url/mappings", "/"})
 public class ShortUrlMappingControllerImpl implements ShortUrlMappingController {
+    // One batch read of the database fetches up to this many mappings.
+    private static final int MAX_SHORT_URLS_PER_POINT_LOOKUP = 100;
+
     private final ShortUrlMappingService shortUrlMappingService;
+    private final ConcurrencyLimiter concurrencyLimiter;
 
     // ------------------------------------------------------------------------
     // PUBLIC METHODS
     // ------------------------------------------------------------------------
 
     public ShortUrlMappingControllerImpl(
-            ShortUrlMappingService shortUrlMappingService) {
+            ShortUrlMappingService shortUrlMappingService,
+            ConcurrencyLimiter concurrencyLimiter) {
 
         this.shortUrlMappingService = shortUrlMappingService;
+        this.concurrencyLimiter = concurrencyLimiter;
     }
 
     @Override
@@ -63,10 +84,36 @@ public class ShortUrlMappingControllerImpl implements ShortUrlMappingController
                 httpStatus);
     }
 
+    @Override
+    public ResponseEntity<Status>
+    migrateShortUrlMappingIndexes() {
+        Status status = shortUrlMappingService.migrateShortUrlMappingIndexes();
+
+        HttpStatus httpStatus;
+
+        switch (status.getStatus()) {
+            // The message describes the progress of the migration.
+            case SUCCESS -> httpStatus = HttpStatus.OK;
+            case NOT_ON_LOCAL_MACHINE -> {
+                httpStatus = HttpStatus.FORBIDDEN;
+                status.setMessage("Migration of the Short URL Mapping "
+                        + "table indexes can be done only when the service is "
+                        + "running on your local machine");
+            }
+            default -> {
+                httpStatus = HttpStatus.INTERNAL_SERVER_ERROR;
+                status.setMessage("An unknown error occurred");
+            }
+        }
+
+        return new ResponseEntity<>(status, httpStatus);
+    }
+
     @Override
     public Mono<ResponseEntity<Status>>
-    createMapping(ShortUrlMapping shortUrlMapping) {
-        return shortUrlMappingService.createMapping(shortUrlMapping)
+    createMapping(ShortUrlMappingItem shortUrlMapping) {
+        return concurrencyLimiter.limit(Priority.POINT, () ->
+                shortUrlMappingService.createMapping(shortUrlMapping))
             .map(shortUrlUserStatus -> {
                 HttpStatus httpStatus;
                 String message;
@@ -108,8 +155,14 @@ public class ShortUrlMappingControllerImpl implements ShortUrlMappingController
 
     @Override
     public Mono<ResponseEntity<StatusAndShortUrlMappingArray>>
-    getMappings(ShortUrlMappingFilter shortUrlMappingFilter) {
-        return shortUrlMappingService.getMappings(shortUrlMappingFilter)
+    getMappings(ShortUrlMappingMatchFilter shortUrlMappingFilter, String ifNoneMatch) {
+        // A conditional request is a client polling for changes to mappings
+        // that it already has, not a resolution of a short URL, so it does
+        // not count as a click. Otherwise, a client that polls a mapping
+        // would change the mapping's click count, and thus its ETag, itself.
+        boolean isClick = (ifNoneMatch == null);
+        return concurrencyLimiter.limit(priorityOf(shortUrlMappingFilter), () ->
+                shortUrlMappingService.getMappings(shortUrlMappingFilter, isClick))
             .map(statusAndShortUrlMappingArray -> {
                 ShortUrlStatus shortUrlMappingStatus =
                         statusAndShortUrlMappingArray.getStatus().getStatus();
@@ -141,16 +194,66 @@ public class ShortUrlMappingControllerImpl implements ShortUrlMappingController
                 }
                 statusAndShortUrlMappingArray.getStatus().setMessage(message);
 
-                return new ResponseEntity<>(
-                        statusAndShortUrlMappingArray,
-                        httpStatus);
+                if (shortUrlMappingStatus != ShortUrlStatus.SUCCESS) {
+                    return new ResponseEntity<>(
+                            statusAndShortUrlMappingArray,
+                            httpStatus);
+                }
+
+                // Let polling clients skip re-downloading unchanged mappings.
+                String eTag = computeETag(statusAndShortUrlMappingArray.getShortUrlMappings());
+                if (eTagMatches(eTag, ifNoneMatch)) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                            .eTag(eTag)
+                            .<StatusAndShortUrlMappingArray>build();
+                }
+                return ResponseEntity.status(httpStatus)
+                        .eTag(eTag)
+                        .body(statusAndShortUrlMappingArray);
+            });
+    }
+
+    @Override
+    public Mono<ResponseEntity<StatusAndFoundAndMissingMappings>>
+    getMappingsByShortUrls(UsernameAndShortUrlArray usernameAndShortUrlArray) {
+        return concurrencyLimiter.limit(priorityOf(usernameAndShortUrlArray), () ->
+                shortUrlMappingService.getMappingsByShortUrls(usernameAndShortUrlArray))
+            .map(statusAndFoundAndMissingMappings -> {
+                ShortUrlStatus shortUrlMappingStatus =
+                        statusAndFoundAndMissingMappings.getStatus().getStatus();
+
+                HttpStatus httpStatus;
+                String message;
+
+                switch (shortUrlMappingStatus) {
+                    case SUCCESS -> {
+                        httpStatus = HttpStatus.OK;
+                        message = "Mappings successfully retrieved";
+                    }
+                    case MISSING_USERNAME -> {
+                        httpStatus = HttpStatus.BAD_REQUEST;
+                        message = "A non-empty username must be specified";
+                    }
+                    case MISSING_SHORT_URL -> {
+                        httpStatus = HttpStatus.BAD_REQUEST;
+                        message = "A non-empty list of non-empty short URLs must be specified";
+                    }
+                    default -> {
+                        httpStatus = HttpStatus.INTERNAL_SERVER_ERROR;
+                        message = "An unknown error occurred";
+                    }
+                }
+                statusAndFoundAndMissingMappings.getStatus().setMessage(message);
+
+                return new ResponseEntity<>(statusAndFoundAndMissingMappings, httpStatus);
             });
     }
 
     @Override
     public Mono<ResponseEntity<Status>>
     changeLongUrl(ShortUrlAndLongUrl shortUrlAndLongUrl) {
-        return shortUrlMappingService.changeLongUrl(shortUrlAndLongUrl)
+        return concurrencyLimiter.limit(Priority.POINT, () ->
+                shortUrlMappingService.changeLongUrl(shortUrlAndLongUrl))
             .map(status -> {
                 ShortUrlStatus shortUrlMappingStatus = status.getStatus();
 
@@ -189,8 +292,9 @@ public class ShortUrlMappingControllerImpl implements ShortUrlMappingController
 
     @Override
     public Mono<ResponseEntity<Status>>
-    deleteMappings(ShortUrlMappingFilter shortUrlMappingFilter) {
-        return shortUrlMappingService.deleteMappings(shortUrlMappingFilter)
+    deleteMappings(ShortUrlMappingMatchFilter shortUrlMappingFilter) {
+        return concurrencyLimiter.limit(priorityOf(shortUrlMappingFilter), () ->
+                shortUrlMappingService.deleteMappings(shortUrlMappingFilter))
             .map(status -> {
                 ShortUrlStatus shortUrlMappingStatus = status.getStatus();
 
@@ -226,7 +330,158 @@ public class ShortUrlMappingControllerImpl implements ShortUrlMappingController
             });
     }
 
+    @Override
+    public Mono<ResponseEntity<StatusAndMappingJob>>
+    submitDeleteMappingsJob(ShortUrlMappingMatchFilter shortUrlMappingFilter) {
+        // Submitting a job is cheap, whatever the job itself will cost.
+        return concurrencyLimiter.limit(Priority.POINT, () ->
+                shortUrlMappingService.submitDeleteMappingsJob(shortUrlMappingFilter))
+            .map(statusAndMappingJob -> {
+                ShortUrlStatus shortUrlMappingStatus =
+                        statusAndMappingJob.getStatus().getStatus();
+
+                HttpStatus httpStatus;
+                String message;
+
+                switch (shortUrlMappingStatus) {
+                    case SUCCESS -> {
+                        // The job runs in the background; its progress can be
+                        // followed via the `mapping-jobs` endpoint.
+                        httpStatus = HttpStatus.ACCEPTED;
+                        message = String.format("Job '%s' successfully submitted",
+                                statusAndMappingJob.getMappingJob().getJobId());
+                    }
+                    case MISSING_USERNAME -> {
+                        httpStatus = HttpStatus.BAD_REQUEST;
+                        message = "A non-empty username must be specified";
+                    }
+                    case MISSING_SHORT_URL -> {
+                        httpStatus = HttpStatus.BAD_REQUEST;
+                        message = "A non-empty short URL must be specified";
+                    }
+                    case MISSING_LONG_URL -> {
+                        httpStatus = HttpStatus.BAD_REQUEST;
+                        message = "A non-empty long URL must be specified";
+                    }
+                    default -> {
+                        httpStatus = HttpStatus.INTERNAL_SERVER_ERROR;
+                        message = "An unknown error occurred";
+                    }
+                }
+                statusAndMappingJob.getStatus().setMessage(message);
+
+                return new ResponseEntity<>(statusAndMappingJob, httpStatus);
+            });
+    }
+
+    @Override
+    public Mono<ResponseEntity<StatusAndMappingJob>>
+    getMappingJob(String jobId) {
+        // A lookup is a point read, even if it resumes the job: the job's
+        // pages then take bulk slots of their own (see `MappingJobRunner`).
+        return concurrencyLimiter.limit(Priority.POINT, () ->
+                shortUrlMappingService.getMappingJob(jobId))
+            .map(mappingJob -> new ResponseEntity<>(
+                    new StatusAndMappingJob(
+                            new Status(ShortUrlStatus.SUCCESS, "Job successfully retrieved"),
+                            mappingJob),
+                    HttpStatus.OK))
+            .defaultIfEmpty(new ResponseEntity<>(
+                    new StatusAndMappingJob(
+                            new Status(ShortUrlStatus.UNKNOWN_ERROR,
+                                    String.format("Job '%s' was not found", jobId)),
+                            null),
+                    HttpStatus.NOT_FOUND));
+    }
+
+    @Override
+    public ResponseEntity<StatusAndConcurrencyLimiterState>
+    getConcurrencyLimiterState() {
+        return new ResponseEntity<>(
+                new StatusAndConcurrencyLimiterState(
+                        new Status(ShortUrlStatus.SUCCESS,
+                                "Concurrency limiter state successfully retrieved"),
+                        concurrencyLimiter.getState()),
+                HttpStatus.OK);
+    }
+
     // ------------------------------------------------------------------------
     // PRIVATE METHODS
     // ------------------------------------------------------------------------
+
+    // A filter that names a short URL or a user is served by a point read, an
+    // index query, or a per-user view. Only a filter that spans all users
+    // needs a scan (or a long URL index query that may match any number of
+    // mappings), and so is a bulk operation.
+    private Priority
+    priorityOf(ShortUrlMappingFilter shortUrlMappingFilter) {
+        return ("*".equals(shortUrlMappingFilter.getUsername())
+                && "*".equals(shortUrlMappingFilter.getShortUrl()))
+                ? Priority.BULK
+                : Priority.POINT;
+    }
+
+    // A lookup of up to `MAX_SHORT_URLS_PER_POINT_LOOKUP` short URLs is
+    // served by a single batch read, which costs about as much as a point
+    // read. A longer list takes several batch reads, and so is a bulk
+    // operation.
+    private Priority
+    priorityOf(UsernameAndShortUrlArray usernameAndShortUrlArray) {
+        List<String> shortUrls = usernameAndShortUrlArray.getShortUrls();
+        return (shortUrls != null && shortUrls.size() > MAX_SHORT_URLS_PER_POINT_LOOKUP)
+                ? Priority.BULK
+                : Priority.POINT;
+    }
+
+    // The ETag of a set of mappings is derived from the short URL, the
+    // `version` attribute, and the click count of each mapping. Since every
+    // change to a mapping bumps its version, the ETag changes whenever any
+    // mapping in the set changes, or whenever a mapping enters or leaves the
+    // set. Click counts change without changing the version, but they are
+    // part of the response body, so they must be part of its (strong) ETag
+    // as well.
+    private String
+    computeETag(List<ShortUrlMapping> shortUrlMappings) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        shortUrlMappings.stream()
+            .sorted(Comparator.comparing(ShortUrlMapping::getShortUrl))
+            .forEach(shortUrlMapping -> {
+                digest.update(shortUrlMapping.getShortUrl().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(String.valueOf(shortUrlMapping.getVersion())
+                        .getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                if (shortUrlMapping instanceof ShortUrlMappingItem shortUrlMappingItem) {
+                    digest.update(String.valueOf(shortUrlMappingItem.getClickCount())
+                            .getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                }
+            });
+
+        byte[] hash = Arrays.copyOf(digest.digest(), 16);
+        return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + "\"";
+    }
+
+    private boolean
+    eTagMatches(String eTag, String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,168 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+import com.richarddklein.shorturlmappingservice.exception.ServiceUnavailableException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+
+/**
+ * A circuit breaker around the calls to a database table.
+ *
+ * <p>While the breaker is CLOSED, calls go through. After a run of
+ * consecutive failures (timeouts, or errors reported by the database
+ * client), the breaker OPENs, and calls fail immediately with a
+ * `ServiceUnavailableException`, without touching the database. Once the
+ * open interval has elapsed, the breaker becomes HALF_OPEN, and lets a
+ * single trial call through: if it succeeds, the breaker CLOSEs again;
+ * if it fails, the breaker re-OPENs.</p>
+ *
+ * <p>A failed optimistic-locking condition check is an answer from the
+ * database, and so counts as a success. Any other failure that does not
+ * come from the database client (e.g. a bug in the calling code) says
+ * nothing about the health of the database, and leaves the breaker as it
+ * is.</p>
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final Duration openInterval;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean isTrialCallInProgress;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    public CircuitBreaker(int failureThreshold, Duration openInterval) {
+        this.failureThreshold = failureThreshold;
+        this.openInterval = openInterval;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Protect a database call with the circuit breaker.
+     *
+     * @param call The database call.
+     * @return The result of the call, or a `ServiceUnavailableException`
+     * if the breaker does not let the call through.
+     */
+    public <T> Mono<T>
+    protect(Mono<T> call) {
+        return Mono.defer(() -> {
+            ServiceUnavailableException rejection = tryAcquirePermission();
+            if (rejection != null) {
+                return Mono.error(rejection);
+            }
+            return call
+                .doOnSuccess(result -> onSuccess())
+                .doOnError(this::onError)
+                .doOnCancel(this::onCancel);
+        });
+    }
+
+    /**
+     * Protect a streaming database call (e.g. a scan) with the circuit
+     * breaker.
+     *
+     * @param call The streaming database call.
+     * @return The items emitted by the call, or a
+     * `ServiceUnavailableException` if the breaker does not let the call
+     * through.
+     */
+    public <T> Flux<T>
+    protect(Flux<T> call) {
+        return Flux.defer(() -> {
+            ServiceUnavailableException rejection = tryAcquirePermission();
+            if (rejection != null) {
+                return Flux.error(rejection);
+            }
+            return call
+                .doOnComplete(this::onSuccess)
+                .doOnError(this::onError)
+                .doOnCancel(this::onCancel);
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private synchronized ServiceUnavailableException
+    tryAcquirePermission() {
+        if (state == State.OPEN) {
+            long openNanos = System.nanoTime() - openedAtNanos;
+            if (openNanos < openInterval.toNanos()) {
+                Duration retryAfter = openInterval.minusNanos(openNanos);
+                return new ServiceUnavailableException(
+                        "The database is unavailable", retryAfter);
+            }
+            state = State.HALF_OPEN;
+        }
+        if (state == State.HALF_OPEN) {
+            if (isTrialCallInProgress) {
+                return new ServiceUnavailableException(
+                        "The database is unavailable", openInterval);
+            }
+            isTrialCallInProgress = true;
+        }
+        return null;
+    }
+
+    private synchronized void
+    onSuccess() {
+        consecutiveFailures = 0;
+        isTrialCallInProgress = false;
+        state = State.CLOSED;
+    }
+
+    private synchronized void
+    onError(Throwable e) {
+        if (e instanceof ConditionalCheckFailedException) {
+            // The database answered, so it is healthy.
+            onSuccess();
+            return;
+        }
+        if (!isDatabaseFailure(e)) {
+            // Neither here nor there; like a cancelled call.
+            onCancel();
+            return;
+        }
+        isTrialCallInProgress = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            System.out.println("====> Circuit breaker opened after "
+                    + consecutiveFailures + " consecutive failures");
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+        }
+    }
+
+    private synchronized void
+    onCancel() {
+        // A cancelled trial call says nothing either way; let another through.
+        isTrialCallInProgress = false;
+    }
+
+    private static boolean
+    isDatabaseFailure(Throwable e) {
+        return e instanceof TimeoutException
+                || (e instanceof SdkException
+                        && !(e instanceof ConditionalCheckFailedException));
+    }
+}
@@ -5,54 +5,213 @@
 
 package com.richarddklein.shorturlmappingservice.dao;
 
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
 import com.richarddklein.shorturlcommonlibrary.environment.ParameterStoreAccessor;
-import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.entity.ShortUrlMapping;
+import com.richarddklein.shorturlmappingservice.entity.MappingJobItem;
+import com.richarddklein.shorturlmappingservice.entity.ShortUrlMappingItem;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClientBuilder;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClientBuilder;
 
 /**
  * The DAO (Data Access Object) @Configuration class.
  *
  * <p>Tells Spring how to construct instances of classes that are needed
  * to implement the DAO package.</p>
+ *
+ * <p>By default, the mappings are stored in DynamoDB. Setting the environment
+ * variable `SHORT_URL_MAPPING_STORE` to `log` selects the embedded store
+ * instead (see `ShortUrlMappingLogDaoImpl`), which keeps its files in the
+ * directory named by `SHORT_URL_MAPPING_LOG_DIR`. The DynamoDB beans are
+ * lazy, so they are only created (and only need AWS) when they are used.</p>
+ *
+ * <p>Setting `CHANGE_FEED_ENABLED` to `true` makes each instance tail the
+ * table's stream (see `ShortUrlMappingChangeFeed`), so that the per-user
+ * mapping views can be kept for much longer.</p>
  */
 @Configuration
 public class DaoConfig {
+    // Optional environment variables that configure the DynamoDB endpoints.
+    private static final String DYNAMODB_ENDPOINT = "DYNAMODB_ENDPOINT";
+    private static final String DYNAMODB_REPLICA_REGION = "DYNAMODB_REPLICA_REGION";
+    private static final String DYNAMODB_REPLICA_ENDPOINT = "DYNAMODB_REPLICA_ENDPOINT";
+    private static final String DYNAMODB_HEDGE_PERCENTILE = "DYNAMODB_HEDGE_PERCENTILE";
+    // Optional environment variables that configure the long URL encoding.
+    // The prefixes are a comma-separated, append-only list.
+    private static final String LONG_URL_CODEC_ENABLED = "LONG_URL_CODEC_ENABLED";
+    private static final String LONG_URL_CODEC_PREFIXES = "LONG_URL_CODEC_PREFIXES";
+
+    // Optional environment variables that select and configure the store.
+    private static final String SHORT_URL_MAPPING_STORE = "SHORT_URL_MAPPING_STORE";
+    private static final String SHORT_URL_MAPPING_LOG_DIR = "SHORT_URL_MAPPING_LOG_DIR";
+    private static final String SHORT_URL_MAPPING_LOG_SYNC_ON_WRITE =
+            "SHORT_URL_MAPPING_LOG_SYNC_ON_WRITE";
+    // Optional environment variables that size the per-user mapping views.
+    private static final String USER_VIEW_MAX_USERS = "USER_VIEW_MAX_USERS";
+    private static final String USER_VIEW_MAX_AGE_SECONDS = "USER_VIEW_MAX_AGE_SECONDS";
+    // Optional environment variables that enable and configure the change feed.
+    private static final String CHANGE_FEED_ENABLED = "CHANGE_FEED_ENABLED";
+    private static final String CHANGE_FEED_POLL_INTERVAL_MILLIS = "CHANGE_FEED_POLL_INTERVAL_MILLIS";
+
+    private static final double DEFAULT_HEDGE_PERCENTILE = 95.0;
+    private static final int DEFAULT_USER_VIEW_MAX_USERS = 1000;
+    private static final int DEFAULT_USER_VIEW_MAX_AGE_SECONDS = 30;
+    // With the change feed, a view only needs reloading as a safety net.
+    private static final int DEFAULT_USER_VIEW_MAX_AGE_SECONDS_WITH_CHANGE_FEED = 900;
+    private static final int DEFAULT_CHANGE_FEED_POLL_INTERVAL_MILLIS = 1000;
+    // How many poll intervals the feed may fall behind before the views
+    // stop being trusted.
+    private static final int MAX_CHANGE_FEED_LAG_IN_POLL_INTERVALS = 5;
+    private static final String DEFAULT_SHORT_URL_MAPPING_LOG_DIR = "short-url-mapping-data";
+    private static final int LOG_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final long LOG_COMPACTION_THRESHOLD = 4L * LOG_SEGMENT_SIZE;
+
     @Autowired
     ParameterStoreAccessor parameterStoreAccessor;
 
     @Bean
     public ShortUrlMappingDao
     shortUrlMappingDao() {
+        if ("log".equalsIgnoreCase(System.getenv(SHORT_URL_MAPPING_STORE))) {
+            return shortUrlMappingLogDao();
+        }
+        if (isChangeFeedEnabled()) {
+            shortUrlMappingChangeFeed();
+        }
         return new ShortUrlMappingDaoImpl(
                 parameterStoreAccessor,
                 dynamoDbClient(),
-                shortUrlMappingTable()
+                dynamoDbAsyncClient(),
+                shortUrlMappingTable(),
+                shortUrlMappingReader(),
+                shortUrlMappingTableCircuitBreaker(),
+                longUrlCodec(),
+                shortUrlMappingIndexes(),
+                userMappingViews()
         );
     }
 
     @Bean
+    public MappingJobDao
+    mappingJobDao() {
+        if ("log".equalsIgnoreCase(System.getenv(SHORT_URL_MAPPING_STORE))) {
+            return new MappingJobMemoryDaoImpl();
+        }
+        return new MappingJobDaoImpl(dynamoDbClient(), mappingJobTable());
+    }
+
+    @Bean
+    @Lazy
     public DynamoDbClient
     dynamoDbClient() {
-        return DynamoDbClient.builder()
-                .credentialsProvider(DefaultCredentialsProvider.create())
-                .build();
+        DynamoDbClientBuilder builder = DynamoDbClient.builder()
+                .credentialsProvider(DefaultCredentialsProvider.create());
+        String endpoint = System.getenv(DYNAMODB_ENDPOINT);
+        if (endpoint != null && !endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        return builder.build();
     }
 
     @Bean
+    @Lazy
     public DynamoDbAsyncClient
     dynamoDbAsyncClient() {
-        return DynamoDbAsyncClient.builder().build();
+        DynamoDbAsyncClientBuilder builder = DynamoDbAsyncClient.builder();
+        String endpoint = System.getenv(DYNAMODB_ENDPOINT);
+        if (endpoint != null && !endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        return builder.build();
+    }
+
+    @Bean
+    @Lazy
+    public HedgedReader<DynamoDbAsyncTable<ShortUrlMappingItem>>
+    shortUrlMappingReader() {
+        return new HedgedReader<>(
+                shortUrlMappingTable(),
+                shortUrlMappingReplicaTable(),
+                hedgePercentile());
+    }
+
+    @Bean
+    @Lazy
+    public CircuitBreaker
+    shortUrlMappingTableCircuitBreaker() {
+        return new CircuitBreaker(5, Duration.ofSeconds(10));
+    }
+
+    @Bean
+    public LongUrlCodec
+    longUrlCodec() {
+        String extraPrefixes = System.getenv(LONG_URL_CODEC_PREFIXES);
+        return new LongUrlCodec(
+                Boolean.parseBoolean(System.getenv(LONG_URL_CODEC_ENABLED)),
+                (extraPrefixes == null || extraPrefixes.isBlank())
+                        ? List.of()
+                        : List.of(extraPrefixes.split(",")));
+    }
+
+    @Bean
+    @Lazy
+    public ShortUrlMappingIndexes
+    shortUrlMappingIndexes() {
+        return new ShortUrlMappingIndexes(shortUrlMappingTable());
+    }
+
+    @Bean
+    public UserMappingViews
+    userMappingViews() {
+        boolean isChangeFeedEnabled = isChangeFeedEnabled();
+        return new UserMappingViews(
+                intFromEnv(USER_VIEW_MAX_USERS, DEFAULT_USER_VIEW_MAX_USERS),
+                Duration.ofSeconds(intFromEnv(USER_VIEW_MAX_AGE_SECONDS, isChangeFeedEnabled
+                        ? DEFAULT_USER_VIEW_MAX_AGE_SECONDS_WITH_CHANGE_FEED
+                        : DEFAULT_USER_VIEW_MAX_AGE_SECONDS)),
+                isChangeFeedEnabled
+                        ? changeFeedPollInterval().multipliedBy(MAX_CHANGE_FEED_LAG_IN_POLL_INTERVALS)
+                        : null);
+    }
+
+    @Bean
+    @Lazy
+    public ShortUrlMappingChangeFeed
+    shortUrlMappingChangeFeed() {
+        DynamoDbStreamsClientBuilder builder = DynamoDbStreamsClient.builder()
+                .credentialsProvider(DefaultCredentialsProvider.create());
+        String endpoint = System.getenv(DYNAMODB_ENDPOINT);
+        if (endpoint != null && !endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        ShortUrlMappingChangeFeed shortUrlMappingChangeFeed = new ShortUrlMappingChangeFeed(
+                dynamoDbClient(),
+                builder.build(),
+                parameterStoreAccessor.getShortUrlMappingTableName().block(),
+                List.of(userMappingViews()),
+                changeFeedPollInterval());
+        shortUrlMappingChangeFeed.startPolling();
+        return shortUrlMappingChangeFeed;
     }
 
     @Bean
+    @Lazy
     public DynamoDbEnhancedAsyncClient
     dynamoDbEnhancedAsyncClient() {
         return DynamoDbEnhancedAsyncClient.builder()
@@ -61,10 +220,104 @@ public class DaoConfig {
     }
 
     @Bean
-    public DynamoDbAsyncTable<ShortUrlMapping>
+    @Lazy
+    public DynamoDbAsyncTable<ShortUrlMappingItem>
     shortUrlMappingTable() {
         return dynamoDbEnhancedAsyncClient().table(
                 parameterStoreAccessor.getShortUrlMappingTableName().block(),
-                TableSchema.fromBean(ShortUrlMapping.class));
+                shortUrlMappingTableSchema());
+    }
+
+    // The Mapping Job table is named after the Short URL Mapping table, so
+    // that each deployment stage gets a job table of its own.
+    @Bean
+    @Lazy
+    public DynamoDbAsyncTable<MappingJobItem>
+    mappingJobTable() {
+        return dynamoDbEnhancedAsyncClient().table(
+                parameterStoreAccessor.getShortUrlMappingTableName().block() + "-jobs",
+                MappingJobDaoImpl.tableSchema());
+    }
+
+    @Bean
+    public TableSchema<ShortUrlMappingItem>
+    shortUrlMappingTableSchema() {
+        return ShortUrlMappingTableSchema.create();
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private ShortUrlMappingDao
+    shortUrlMappingLogDao() {
+        String directory = System.getenv(SHORT_URL_MAPPING_LOG_DIR);
+        // Syncing each write is the durable default; without it, the writes
+        // of the last second or so may be lost if the machine crashes.
+        String syncOnWrite = System.getenv(SHORT_URL_MAPPING_LOG_SYNC_ON_WRITE);
+        boolean isSyncOnWrite = syncOnWrite == null || syncOnWrite.isBlank()
+                || Boolean.parseBoolean(syncOnWrite);
+        return new ShortUrlMappingLogDaoImpl(
+                new ShortUrlMappingLog(
+                        Path.of((directory == null || directory.isBlank())
+                                ? DEFAULT_SHORT_URL_MAPPING_LOG_DIR
+                                : directory),
+                        LOG_SEGMENT_SIZE,
+                        isSyncOnWrite),
+                LOG_COMPACTION_THRESHOLD,
+                isSyncOnWrite);
+    }
+
+    // The secondary replica used to hedge reads, if one is configured via
+    // the `DYNAMODB_REPLICA_REGION` and/or `DYNAMODB_REPLICA_ENDPOINT`
+    // environment variables (the latter e.g. for a local DynamoDB stand-in).
+    private DynamoDbAsyncTable<ShortUrlMappingItem>
+    shortUrlMappingReplicaTable() {
+        String region = System.getenv(DYNAMODB_REPLICA_REGION);
+        String endpoint = System.getenv(DYNAMODB_REPLICA_ENDPOINT);
+        boolean hasRegion = region != null && !region.isBlank();
+        boolean hasEndpoint = endpoint != null && !endpoint.isBlank();
+        if (!hasRegion && !hasEndpoint) {
+            return null;
+        }
+
+        DynamoDbAsyncClientBuilder builder = DynamoDbAsyncClient.builder();
+        if (hasRegion) {
+            builder.region(Region.of(region));
+        }
+        if (hasEndpoint) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        return DynamoDbEnhancedAsyncClient.builder()
+                .dynamoDbClient(builder.build())
+                .build()
+                .table(parameterStoreAccessor.getShortUrlMappingTableName().block(),
+                        shortUrlMappingTableSchema());
+    }
+
+    private double
+    hedgePercentile() {
+        String percentile = System.getenv(DYNAMODB_HEDGE_PERCENTILE);
+        return (percentile == null || percentile.isBlank())
+                ? DEFAULT_HEDGE_PERCENTILE
+                : Double.parseDouble(percentile);
+    }
+
+    private static boolean
+    isChangeFeedEnabled() {
+        return Boolean.parseBoolean(System.getenv(CHANGE_FEED_ENABLED))
+                && !"log".equalsIgnoreCase(System.getenv(SHORT_URL_MAPPING_STORE));
+    }
+
+    private static Duration
+    changeFeedPollInterval() {
+        return Duration.ofMillis(intFromEnv(
+                CHANGE_FEED_POLL_INTERVAL_MILLIS, DEFAULT_CHANGE_FEED_POLL_INTERVAL_MILLIS));
+    }
+
+    private static int
+    intFromEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return (value == null || value.isBlank()) ? defaultValue : Integer.parseInt(value);
     }
 }
@@ -0,0 +1,22 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.util.Map;
+
+/**
+ * The outcome of deleting one page of the mappings that match a filter.
+ *
+ * @param deletedCount The number of mappings deleted from the page.
+ * @param nextPosition The position at which the next page starts, or `null`
+ *                     if there are no more pages.
+ */
+public record DeletionPage(long deletedCount, Map<String, String> nextPosition) {
+    public boolean
+    isLastPage() {
+        return nextPosition == null;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+
+/**
+ * Perform reads against a primary replica of a table, hedging them with
+ * a second read against another replica when the primary is slow.
+ *
+ * <p>Since eventual consistency is good enough for the Short URL Mapping
+ * table, any replica can answer a read. A read is first sent to the
+ * primary replica. If the primary has not answered within the hedge
+ * delay, the same read is also sent to the secondary replica. Whichever
+ * replica answers first wins, and the other read is cancelled. If the
+ * primary fails, its error is reported at once, without hedging.</p>
+ *
+ * <p>The hedge delay is a high percentile of the recently observed
+ * primary latencies, so only the slowest few percent of reads are ever
+ * hedged. In addition, the fraction of reads that may be hedged is
+ * capped, so that a degraded primary does not double the load on the
+ * secondary.</p>
+ *
+ * <p>If no secondary replica is configured, reads simply go to the
+ * primary.</p>
+ *
+ * @param <T> The type of the handle (client or table) used to access
+ *            a replica.
+ */
+public class HedgedReader<T> {
+    private static final Duration DEFAULT_HEDGE_DELAY = Duration.ofMillis(50);
+    private static final Duration MIN_HEDGE_DELAY = Duration.ofMillis(5);
+    private static final double MAX_HEDGED_FRACTION = 0.1;
+
+    private final T primary;
+    private final T secondary;
+    private final LatencyTracker latencyTracker;
+    private final AtomicLong readCount = new AtomicLong();
+    private final AtomicLong hedgedReadCount = new AtomicLong();
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    /**
+     * Construct a hedged reader.
+     *
+     * @param primary The handle used to access the primary replica.
+     * @param secondary The handle used to access the secondary replica,
+     *                  or `null` if there is no secondary replica.
+     * @param hedgePercentile The percentile (0 - 100) of the primary's
+     *                        latency after which a read is hedged.
+     */
+    public HedgedReader(T primary, T secondary, double hedgePercentile) {
+        this.primary = primary;
+        this.secondary = secondary;
+        this.latencyTracker = new LatencyTracker(1024, hedgePercentile);
+    }
+
+    public T getPrimary() {
+        return primary;
+    }
+
+    /**
+     * Perform a (possibly hedged) read.
+     *
+     * @param read The read operation, given the handle of the replica to
+     *             read from. It must emit exactly one value (so use e.g.
+     *             a list or an `Optional` to represent "not found"), and
+     *             must be safe to cancel.
+     * @return The result of whichever replica answered first.
+     */
+    public <R> Mono<R>
+    read(Function<T, Mono<R>> read) {
+        Mono<R> primaryRead = timed(Mono.defer(() -> read.apply(primary)));
+        if (secondary == null) {
+            return primaryRead;
+        }
+
+        return Mono.defer(() -> {
+            Duration hedgeDelay = latencyTracker.getPercentile(DEFAULT_HEDGE_DELAY);
+            if (hedgeDelay.compareTo(MIN_HEDGE_DELAY) < 0) {
+                hedgeDelay = MIN_HEDGE_DELAY;
+            }
+            long reads = readCount.incrementAndGet();
+
+            Mono<Signal<R>> secondaryRead = Mono.delay(hedgeDelay)
+                .flatMap(tick -> {
+                    if (hedgedReadCount.get() >= reads * MAX_HEDGED_FRACTION) {
+                        // Over the hedging budget; just wait for the primary.
+                        return Mono.empty();
+                    }
+                    hedgedReadCount.incrementAndGet();
+                    return read.apply(secondary).map(Signal::next);
+                });
+
+            // The primary's outcome is materialized, so that its failure
+            // wins the race just like a value does: it is reported at once,
+            // and cancels the (pending or running) hedge. A failure of the
+            // secondary, on the other hand, is ignored by `firstWithValue`,
+            // which then waits for the primary.
+            return Mono.firstWithValue(primaryRead.materialize(), secondaryRead)
+                .dematerialize();
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private <R> Mono<R>
+    timed(Mono<R> read) {
+        return Mono.defer(() -> {
+            long startNanos = System.nanoTime();
+            // Cancelled reads are recorded too (as a lower bound on their
+            // latency). Otherwise, only the fast reads would ever be recorded,
+            // and the hedge delay would keep shrinking.
+            return read.doFinally(signalType -> latencyTracker.record(
+                    Duration.ofNanos(System.nanoTime() - startNanos)));
+        });
+    }
+}
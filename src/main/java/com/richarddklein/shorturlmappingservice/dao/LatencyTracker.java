@@ -0,0 +1,78 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Track the latency distribution of recent operations.
+ *
+ * <p>The most recent latency samples are kept in a fixed-size ring
+ * buffer. The requested percentile of those samples is recomputed every
+ * so often (rather than on every request), so that asking for it is
+ * cheap enough to do on the read path.</p>
+ */
+public class LatencyTracker {
+    private static final int RECOMPUTE_INTERVAL = 64;
+
+    private final AtomicLongArray samplesNanos;
+    private final AtomicLong sampleCount = new AtomicLong();
+    private final double percentile;
+    private volatile long percentileNanos = -1;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    /**
+     * Construct a latency tracker.
+     *
+     * @param windowSize The number of recent samples to keep.
+     * @param percentile The percentile (0 - 100) to be tracked.
+     */
+    public LatencyTracker(int windowSize, double percentile) {
+        this.samplesNanos = new AtomicLongArray(windowSize);
+        this.percentile = percentile;
+    }
+
+    public void record(Duration latency) {
+        long count = sampleCount.getAndIncrement();
+        samplesNanos.set((int) (count % samplesNanos.length()), latency.toNanos());
+        if ((count + 1) % RECOMPUTE_INTERVAL == 0) {
+            percentileNanos = computePercentileNanos(count + 1);
+        }
+    }
+
+    /**
+     * Get the tracked percentile of the recent latencies.
+     *
+     * @param defaultValue The value to return while there are not yet
+     *                     enough samples to compute the percentile.
+     * @return The tracked percentile, or `defaultValue`.
+     */
+    public Duration getPercentile(Duration defaultValue) {
+        long nanos = percentileNanos;
+        return (nanos < 0) ? defaultValue : Duration.ofNanos(nanos);
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private long computePercentileNanos(long count) {
+        int size = (int) Math.min(count, samplesNanos.length());
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = samplesNanos.get(i);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+        return sorted[Math.max(0, Math.min(index, size - 1))];
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encode long URLs compactly for storage in the Short URL Mapping table.
+ *
+ * <p>Most long URLs start with one of a few scheme/host prefixes, and
+ * some carry long, repetitive query strings. Storing them raw inflates
+ * the item size, and with it the read/write capacity consumed by every
+ * access, and the bandwidth of every scan.</p>
+ *
+ * <p>A long URL is stored in one of four forms, distinguished by its
+ * first character:</p>
+ *
+ * <ul>
+ *   <li>Raw: the URL itself, if it does not start with one of the marker
+ *   characters U+0001 - U+0003.</li>
+ *   <li>Escaped: U+0003, followed by the URL itself. Used (whether or not
+ *   encoding is enabled) for the rare URL that does start with a marker
+ *   character, since long URLs are not validated, so that it is not
+ *   mistaken for an encoded one.</li>
+ *   <li>Dictionary: U+0001, followed by one character identifying a
+ *   well-known prefix, followed by the remainder of the URL.</li>
+ *   <li>Compressed: U+0002, followed by the base64-encoded deflate
+ *   compression of the URL. Only used for URLs above a size threshold,
+ *   and only when it is actually shorter than the dictionary form.</li>
+ * </ul>
+ *
+ * <p>Encoding is deterministic, so an equality lookup through the
+ * `longUrl-index` simply looks up the encoded form of the desired long
+ * URL. Decoding recognizes all three forms regardless of whether encoding
+ * is enabled, so a table can contain a mix of raw and encoded items
+ * while encoding is being rolled out (or rolled back). A stored value
+ * that looks encoded, but does not decode, was stored raw before marker
+ * characters were escaped, and is returned as it is.</p>
+ *
+ * <p>The prefix dictionary is append-only: an entry, once used, must
+ * never be removed or moved, or existing items would decode wrongly.</p>
+ */
+public class LongUrlCodec {
+    private static final char DICTIONARY_MARKER = '\u0001';
+    private static final char COMPRESSED_MARKER = '\u0002';
+    private static final char ESCAPE_MARKER = '\u0003';
+    private static final int COMPRESSION_THRESHOLD = 256;
+
+    private static final List<String> BUILT_IN_PREFIXES = List.of(
+            "https://www.",
+            "http://www.",
+            "https://",
+            "http://");
+
+    private final boolean isEncodingEnabled;
+    private final List<String> prefixes;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    /**
+     * Construct a long URL codec.
+     *
+     * @param isEncodingEnabled Whether long URLs are to be encoded when
+     *                          they are stored. (They are always decoded
+     *                          when they are read.)
+     * @param extraPrefixes Deployment-specific prefixes (e.g. the scheme
+     *                      and host of popular sites), appended to the
+     *                      built-in dictionary.
+     */
+    public LongUrlCodec(boolean isEncodingEnabled, List<String> extraPrefixes) {
+        this.isEncodingEnabled = isEncodingEnabled;
+        this.prefixes = new ArrayList<>(BUILT_IN_PREFIXES);
+        this.prefixes.addAll(extraPrefixes);
+    }
+
+    /**
+     * Encode a long URL for storage.
+     *
+     * @param longUrl The long URL.
+     * @return The form in which the long URL is to be stored.
+     */
+    public String
+    encode(String longUrl) {
+        return isEncodingEnabled ? encodeCompactly(longUrl) : escape(longUrl);
+    }
+
+    /**
+     * Decode a stored long URL.
+     *
+     * @param storedLongUrl The long URL, in any of its stored forms.
+     * @return The long URL itself.
+     */
+    public String
+    decode(String storedLongUrl) {
+        if (storedLongUrl == null || storedLongUrl.isEmpty()) {
+            return storedLongUrl;
+        }
+        return switch (storedLongUrl.charAt(0)) {
+            case DICTIONARY_MARKER -> {
+                int prefixIndex = (storedLongUrl.length() > 1) ? storedLongUrl.charAt(1) - 'A' : -1;
+                yield (prefixIndex >= 0 && prefixIndex < prefixes.size())
+                        ? prefixes.get(prefixIndex) + storedLongUrl.substring(2)
+                        : storedLongUrl;
+            }
+            case COMPRESSED_MARKER -> {
+                try {
+                    yield decompress(storedLongUrl.substring(1));
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    yield storedLongUrl;
+                }
+            }
+            case ESCAPE_MARKER -> storedLongUrl.substring(1);
+            default -> storedLongUrl;
+        };
+    }
+
+    /**
+     * Get all the forms in which a long URL may be stored in the table.
+     *
+     * @param longUrl The long URL.
+     * @return The distinct stored forms of the long URL, the form used
+     * for new items first.
+     */
+    public List<String>
+    storedForms(String longUrl) {
+        String raw = escape(longUrl);
+        String encoded = encodeCompactly(longUrl);
+        if (encoded.equals(raw)) {
+            return List.of(raw);
+        }
+        return isEncodingEnabled ? List.of(encoded, raw) : List.of(raw, encoded);
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private String
+    encodeCompactly(String longUrl) {
+        if (longUrl == null) {
+            return null;
+        }
+        String encoded = encodeWithDictionary(longUrl);
+        if (longUrl.length() >= COMPRESSION_THRESHOLD) {
+            String compressed = compress(longUrl);
+            if (compressed.length() < encoded.length()) {
+                encoded = compressed;
+            }
+        }
+        return encoded;
+    }
+
+    private String
+    encodeWithDictionary(String longUrl) {
+        int bestIndex = -1;
+        for (int i = 0; i < prefixes.size(); i++) {
+            String prefix = prefixes.get(i);
+            if (longUrl.startsWith(prefix)
+                    && (bestIndex < 0 || prefix.length() > prefixes.get(bestIndex).length())) {
+                bestIndex = i;
+            }
+        }
+        if (bestIndex < 0) {
+            return escape(longUrl);
+        }
+        return "" + DICTIONARY_MARKER + (char) ('A' + bestIndex)
+                + longUrl.substring(prefixes.get(bestIndex).length());
+    }
+
+    private static String
+    escape(String longUrl) {
+        if (longUrl == null || longUrl.isEmpty()) {
+            return longUrl;
+        }
+        char first = longUrl.charAt(0);
+        boolean isMarker = first == DICTIONARY_MARKER
+                || first == COMPRESSED_MARKER
+                || first == ESCAPE_MARKER;
+        return isMarker ? ESCAPE_MARKER + longUrl : longUrl;
+    }
+
+    private static String
+    compress(String longUrl) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(longUrl.getBytes(StandardCharsets.UTF_8));
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(longUrl.length());
+            byte[] buffer = new byte[512];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return COMPRESSED_MARKER
+                    + Base64.getEncoder().withoutPadding().encodeToString(compressed.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String
+    decompress(String base64) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(Base64.getDecoder().decode(base64));
+            ByteArrayOutputStream decompressed = new ByteArrayOutputStream(base64.length() * 2);
+            byte[] buffer = new byte[512];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                decompressed.write(buffer, 0, length);
+            }
+            // Whatever was not compressed by us (such as a legacy raw URL
+            // that happens to start with the marker) hardly ever forms a
+            // complete deflate stream.
+            if (!inflater.finished()) {
+                throw new IllegalStateException("Truncated compressed long URL");
+            }
+            return decompressed.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed long URL", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.util.Locale;
+
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.ShortUrlMappingFilter;
+import com.richarddklein.shorturlmappingservice.dto.LongUrlMatch;
+import com.richarddklein.shorturlmappingservice.dto.ShortUrlMappingMatchFilter;
+
+/**
+ * The `longUrl` part of a Short URL Mapping filter.
+ *
+ * <p>By default, the `longUrl` is `*` (any long URL) or an exact long URL.
+ * A filter that opts in via its `longUrlMatch` (see `LongUrlMatch`) may
+ * instead give a host, which matches every long URL on exactly that host
+ * (not on its subdomains), or a prefix, which matches every long URL that
+ * starts with it.</p>
+ *
+ * <p>To find the mappings for a host without a scan, every item stores the
+ * normalized host of its long URL in the derived `longUrlHost` attribute,
+ * which is the partition key of its own GSI. A domain filter queries that
+ * index directly. So does a prefix filter, provided that the prefix spells
+ * out the complete host (i.e. it continues past the host with a `/`, `?`,
+ * `#` or `:`); otherwise, it has to scan.</p>
+ */
+public final class LongUrlPattern {
+    // The `longUrlHost` of a long URL that has no host. (The attribute
+    // cannot simply be left out, since that would leave the host of the
+    // previous long URL in place when the long URL is changed.)
+    public static final String NO_HOST = "-";
+
+    private final String exactLongUrl;
+    private final String host;
+    private final String prefix;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    /**
+     * Parse the `longUrl` part of a filter.
+     *
+     * @param shortUrlMappingFilter The filter.
+     * @return The parsed pattern.
+     */
+    public static LongUrlPattern
+    parse(ShortUrlMappingFilter shortUrlMappingFilter) {
+        String desiredLongUrl = shortUrlMappingFilter.getLongUrl();
+        if ("*".equals(desiredLongUrl)) {
+            return new LongUrlPattern(null, null, null);
+        }
+        LongUrlMatch longUrlMatch = ShortUrlMappingMatchFilter.longUrlMatchOf(shortUrlMappingFilter);
+        return switch (longUrlMatch) {
+            case DOMAIN -> {
+                String host = normalizeHost(desiredLongUrl);
+                yield new LongUrlPattern(null, host.isEmpty() ? NO_HOST : host, null);
+            }
+            case PREFIX -> new LongUrlPattern(null, hostOf(desiredLongUrl, true), desiredLongUrl);
+            case EXACT -> new LongUrlPattern(desiredLongUrl, null, null);
+        };
+    }
+
+    /**
+     * Derive the normalized host of a long URL, to be stored in the item's
+     * `longUrlHost` attribute.
+     *
+     * @param longUrl The long URL.
+     * @return The host, lower-cased and without any `www.` prefix, port, or
+     * trailing dot; or `NO_HOST` if the long URL has no host.
+     */
+    public static String
+    hostOf(String longUrl) {
+        String host = hostOf(longUrl, false);
+        return (host != null) ? host : NO_HOST;
+    }
+
+    public boolean
+    isAny() {
+        return exactLongUrl == null && host == null && prefix == null;
+    }
+
+    // The exact long URL to look up, or `null` if this is not an exact match.
+    public String
+    getExactLongUrl() {
+        return exactLongUrl;
+    }
+
+    // The host to look up in the `longUrlHost` index, or `null` if the
+    // pattern does not pin down a single host.
+    public String
+    getIndexedHost() {
+        return host;
+    }
+
+    public boolean
+    matches(String longUrl) {
+        if (exactLongUrl != null) {
+            return exactLongUrl.equals(longUrl);
+        }
+        if (prefix != null) {
+            return longUrl != null && longUrl.startsWith(prefix);
+        }
+        if (host != null) {
+            return host.equals(hostOf(longUrl));
+        }
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private LongUrlPattern(String exactLongUrl, String host, String prefix) {
+        this.exactLongUrl = exactLongUrl;
+        this.host = host;
+        this.prefix = prefix;
+    }
+
+    // Extract the host from the authority of a URL, i.e. the part between
+    // `//` and the first `/`, `?` or `#`. Returns `null` if there is no host,
+    // or if `isPrefix` and the prefix may end in the middle of the host.
+    private static String
+    hostOf(String url, boolean isPrefix) {
+        if (url == null) {
+            return null;
+        }
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd < 0) {
+            return null;
+        }
+        int authorityStart = schemeEnd + 3;
+        int authorityEnd = url.length();
+        for (int i = authorityStart; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                authorityEnd = i;
+                break;
+            }
+        }
+        String authority = url.substring(authorityStart, authorityEnd);
+        authority = authority.substring(authority.lastIndexOf('@') + 1);
+
+        String host;
+        boolean isHostComplete = authorityEnd < url.length();
+        if (authority.startsWith("[")) {
+            // An IPv6 address.
+            int bracketEnd = authority.indexOf(']');
+            if (bracketEnd < 0) {
+                return null;
+            }
+            host = authority.substring(0, bracketEnd + 1);
+            isHostComplete = true;
+        } else {
+            int portStart = authority.indexOf(':');
+            if (portStart >= 0) {
+                isHostComplete = true;
+            }
+            host = (portStart >= 0) ? authority.substring(0, portStart) : authority;
+        }
+        if (isPrefix && !isHostComplete) {
+            return null;
+        }
+        host = normalizeHost(host);
+        return host.isEmpty() ? null : host;
+    }
+
+    private static String
+    normalizeHost(String host) {
+        host = host.trim().toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        if (host.startsWith("www.")) {
+            host = host.substring(4);
+        }
+        return host;
+    }
+}
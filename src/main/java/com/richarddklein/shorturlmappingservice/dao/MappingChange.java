@@ -0,0 +1,29 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+/**
+ * A change to a Short URL Mapping item, as published by the change feed
+ * (see `ShortUrlMappingChangeFeed`).
+ *
+ * @param shortUrl The short URL of the changed item.
+ * @param username The owner of the item, or `null` if the feed does not
+ *                 carry the item's attributes.
+ * @param version The version of the item after the change (or, for a
+ *                removal, before it), or `null` if unknown.
+ * @param clickCount The click count of the item after the change (or, for
+ *                   a removal, before it), or `null` if it has none, or it
+ *                   is unknown. Adding clicks does not bump the version, so
+ *                   a change may differ from a cached item in this alone.
+ * @param isRemoval Whether the item was deleted (by a request, or by TTL).
+ */
+public record MappingChange(
+        String shortUrl,
+        String username,
+        Long version,
+        Long clickCount,
+        boolean isRemoval) {
+}
@@ -0,0 +1,25 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+/**
+ * An in-process cache of mapping data that the change feed keeps
+ * consistent with the writes made by all instances of the service.
+ */
+public interface MappingChangeListener {
+    // An item has changed; invalidate whatever the cache holds for it.
+    void
+    onMappingChange(MappingChange change);
+
+    // Some changes may have been missed; invalidate everything.
+    void
+    onChangesMissed();
+
+    // Every change made before `asOfNanos` (a `System.nanoTime()` value)
+    // has been delivered.
+    void
+    onCaughtUp(long asOfNanos);
+}
@@ -0,0 +1,30 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import com.richarddklein.shorturlmappingservice.entity.MappingJobItem;
+import reactor.core.publisher.Mono;
+
+public interface MappingJobDao {
+    void
+    initializeMappingJobRepository();
+
+    // Returns a description of the step taken, or `null` if there was
+    // nothing to do.
+    String
+    createMappingJobRepositoryIfMissing();
+
+    Mono<Void>
+    createJob(MappingJobItem mappingJob);
+
+    Mono<MappingJobItem>
+    getJob(String jobId);
+
+    // Returns the job as saved (with its new version), or an empty `Mono`
+    // if the job has been saved by someone else since it was read.
+    Mono<MappingJobItem>
+    saveJob(MappingJobItem mappingJob);
+}
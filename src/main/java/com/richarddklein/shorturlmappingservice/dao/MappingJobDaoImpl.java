@@ -0,0 +1,192 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import com.richarddklein.shorturlmappingservice.entity.MappingJobItem;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
+import software.amazon.awssdk.enhanced.dynamodb.EnhancedType;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.extensions.VersionedRecordExtension;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticTableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.waiters.DynamoDbWaiter;
+
+/**
+ * The production implementation of the Mapping Job DAO interface.
+ *
+ * <p>Jobs are stored in a DynamoDB table of their own, the Mapping Job
+ * table, whose name is that of the Short URL Mapping table plus `-jobs`.
+ * Each job is a single item, keyed by its job ID. Like the Short URL
+ * Mapping items, job items are protected by optimistic locking.</p>
+ */
+public class MappingJobDaoImpl implements MappingJobDao {
+    private final DynamoDbClient dynamoDbClient;
+    private final DynamoDbAsyncTable<MappingJobItem> mappingJobTable;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    public MappingJobDaoImpl(
+            DynamoDbClient dynamoDbClient,
+            DynamoDbAsyncTable<MappingJobItem> mappingJobTable) {
+
+        this.dynamoDbClient = dynamoDbClient;
+        this.mappingJobTable = mappingJobTable;
+    }
+
+    public static TableSchema<MappingJobItem>
+    tableSchema() {
+        return StaticTableSchema.builder(MappingJobItem.class)
+            .newItemSupplier(MappingJobItem::new)
+            .addAttribute(String.class, attribute -> attribute
+                    .name("jobId")
+                    .getter(MappingJobItem::getJobId)
+                    .setter(MappingJobItem::setJobId)
+                    .tags(StaticAttributeTags.primaryPartitionKey()))
+            .addAttribute(String.class, attribute -> attribute
+                    .name("operation")
+                    .getter(MappingJobItem::getOperation)
+                    .setter(MappingJobItem::setOperation))
+            .addAttribute(String.class, attribute -> attribute
+                    .name("username")
+                    .getter(MappingJobItem::getUsername)
+                    .setter(MappingJobItem::setUsername))
+            .addAttribute(String.class, attribute -> attribute
+                    .name("shortUrl")
+                    .getter(MappingJobItem::getShortUrl)
+                    .setter(MappingJobItem::setShortUrl))
+            .addAttribute(String.class, attribute -> attribute
+                    .name("longUrl")
+                    .getter(MappingJobItem::getLongUrl)
+                    .setter(MappingJobItem::setLongUrl))
+            .addAttribute(String.class, attribute -> attribute
+                    .name("longUrlMatch")
+                    .getter(MappingJobItem::getLongUrlMatch)
+                    .setter(MappingJobItem::setLongUrlMatch))
+            .addAttribute(String.class, attribute -> attribute
+                    .name("status")
+                    .getter(MappingJobItem::getStatus)
+                    .setter(MappingJobItem::setStatus))
+            .addAttribute(Long.class, attribute -> attribute
+                    .name("processedCount")
+                    .getter(MappingJobItem::getProcessedCount)
+                    .setter(MappingJobItem::setProcessedCount))
+            .addAttribute(EnhancedType.mapOf(String.class, String.class), attribute -> attribute
+                    .name("position")
+                    .getter(MappingJobItem::getPosition)
+                    .setter(MappingJobItem::setPosition))
+            .addAttribute(String.class, attribute -> attribute
+                    .name("owner")
+                    .getter(MappingJobItem::getOwner)
+                    .setter(MappingJobItem::setOwner))
+            .addAttribute(Long.class, attribute -> attribute
+                    .name("heartbeatAt")
+                    .getter(MappingJobItem::getHeartbeatAt)
+                    .setter(MappingJobItem::setHeartbeatAt))
+            .addAttribute(Long.class, attribute -> attribute
+                    .name("createdAt")
+                    .getter(MappingJobItem::getCreatedAt)
+                    .setter(MappingJobItem::setCreatedAt))
+            .addAttribute(Long.class, attribute -> attribute
+                    .name("finishedAt")
+                    .getter(MappingJobItem::getFinishedAt)
+                    .setter(MappingJobItem::setFinishedAt))
+            .addAttribute(String.class, attribute -> attribute
+                    .name("message")
+                    .getter(MappingJobItem::getMessage)
+                    .setter(MappingJobItem::setMessage))
+            .addAttribute(Long.class, attribute -> attribute
+                    .name("version")
+                    .getter(MappingJobItem::getVersion)
+                    .setter(MappingJobItem::setVersion)
+                    .tags(VersionedRecordExtension.AttributeTags.versionAttribute()))
+            .build();
+    }
+
+    // Like the initialization of the Short URL Mapping table, this is done
+    // rarely, and only by the Admin from a local machine, so synchronous
+    // logic is fine here.
+    @Override
+    public void
+    initializeMappingJobRepository() {
+        if (doesTableExist()) {
+            System.out.print("====> Deleting the Mapping Job table ...");
+            mappingJobTable.deleteTable().join();
+            try (DynamoDbWaiter waiter = DynamoDbWaiter.builder().client(dynamoDbClient).build()) {
+                waiter.waitUntilTableNotExists(builder -> builder
+                        .tableName(mappingJobTable.tableName()));
+            }
+            System.out.println(" done!");
+        }
+        createMappingJobTable();
+    }
+
+    @Override
+    public String
+    createMappingJobRepositoryIfMissing() {
+        if (doesTableExist()) {
+            return null;
+        }
+        createMappingJobTable();
+        return "Created the Mapping Job table";
+    }
+
+    @Override
+    public Mono<Void>
+    createJob(MappingJobItem mappingJob) {
+        return Mono.fromFuture(() -> mappingJobTable.putItem(req -> req
+                .item(mappingJob)
+                .conditionExpression(Expression.builder()
+                        .expression("attribute_not_exists(jobId)")
+                        .build())));
+    }
+
+    @Override
+    public Mono<MappingJobItem>
+    getJob(String jobId) {
+        return Mono.fromFuture(() -> mappingJobTable.getItem(
+                Key.builder().partitionValue(jobId).build()));
+    }
+
+    @Override
+    public Mono<MappingJobItem>
+    saveJob(MappingJobItem mappingJob) {
+        return Mono.fromFuture(() -> mappingJobTable.updateItem(mappingJob))
+            .onErrorResume(ConditionalCheckFailedException.class, e -> Mono.empty());
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private boolean
+    doesTableExist() {
+        try {
+            dynamoDbClient.describeTable(req -> req.tableName(mappingJobTable.tableName()));
+        } catch (ResourceNotFoundException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private void
+    createMappingJobTable() {
+        System.out.print("====> Creating the Mapping Job table ...");
+        mappingJobTable.createTable().join();
+        try (DynamoDbWaiter waiter = DynamoDbWaiter.builder().client(dynamoDbClient).build()) {
+            waiter.waitUntilTableExists(builder -> builder
+                    .tableName(mappingJobTable.tableName()));
+        }
+        System.out.println(" done!");
+    }
+}
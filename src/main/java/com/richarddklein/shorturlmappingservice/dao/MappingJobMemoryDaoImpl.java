@@ -0,0 +1,113 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import com.richarddklein.shorturlmappingservice.entity.MappingJobItem;
+import reactor.core.publisher.Mono;
+
+/**
+ * The implementation of the Mapping Job DAO interface that accompanies the
+ * embedded Short URL Mapping store (see `ShortUrlMappingLogDaoImpl`).
+ *
+ * <p>Jobs are kept in memory only. With the embedded store, every job runs
+ * on the single node that owns the store, and a page of work takes
+ * microseconds, so a job that is interrupted by a restart is simply
+ * submitted again.</p>
+ */
+public class MappingJobMemoryDaoImpl implements MappingJobDao {
+    private final Map<String, MappingJobItem> jobs = new HashMap<>();
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    @Override
+    public synchronized void
+    initializeMappingJobRepository() {
+        jobs.clear();
+    }
+
+    @Override
+    public String
+    createMappingJobRepositoryIfMissing() {
+        return null;
+    }
+
+    @Override
+    public Mono<Void>
+    createJob(MappingJobItem mappingJob) {
+        return Mono.fromRunnable(() -> {
+            synchronized (this) {
+                if (jobs.containsKey(mappingJob.getJobId())) {
+                    throw new IllegalStateException("Duplicate job ID " + mappingJob.getJobId());
+                }
+                MappingJobItem createdJob = copy(mappingJob);
+                createdJob.setVersion(1L);
+                jobs.put(createdJob.getJobId(), createdJob);
+            }
+        });
+    }
+
+    @Override
+    public Mono<MappingJobItem>
+    getJob(String jobId) {
+        return Mono.fromSupplier(() -> {
+            synchronized (this) {
+                MappingJobItem mappingJob = jobs.get(jobId);
+                return (mappingJob != null) ? copy(mappingJob) : null;
+            }
+        });
+    }
+
+    @Override
+    public Mono<MappingJobItem>
+    saveJob(MappingJobItem mappingJob) {
+        return Mono.fromSupplier(() -> {
+            synchronized (this) {
+                MappingJobItem storedJob = jobs.get(mappingJob.getJobId());
+                if (storedJob == null
+                        || !Objects.equals(storedJob.getVersion(), mappingJob.getVersion())) {
+                    return null;
+                }
+                MappingJobItem savedJob = copy(mappingJob);
+                savedJob.setVersion(mappingJob.getVersion() + 1);
+                jobs.put(savedJob.getJobId(), savedJob);
+                return copy(savedJob);
+            }
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private static MappingJobItem
+    copy(MappingJobItem mappingJob) {
+        MappingJobItem copy = new MappingJobItem();
+        copy.setJobId(mappingJob.getJobId());
+        copy.setOperation(mappingJob.getOperation());
+        copy.setUsername(mappingJob.getUsername());
+        copy.setShortUrl(mappingJob.getShortUrl());
+        copy.setLongUrl(mappingJob.getLongUrl());
+        copy.setLongUrlMatch(mappingJob.getLongUrlMatch());
+        copy.setStatus(mappingJob.getStatus());
+        copy.setProcessedCount(mappingJob.getProcessedCount());
+        copy.setPosition((mappingJob.getPosition() != null)
+                ? new HashMap<>(mappingJob.getPosition())
+                : null);
+        copy.setOwner(mappingJob.getOwner());
+        copy.setHeartbeatAt(mappingJob.getHeartbeatAt());
+        copy.setCreatedAt(mappingJob.getCreatedAt());
+        copy.setFinishedAt(mappingJob.getFinishedAt());
+        copy.setMessage(mappingJob.getMessage());
+        copy.setVersion(mappingJob.getVersion());
+        return copy;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.time.Duration;
+
+/**
+ * The deadline of the request currently being served.
+ *
+ * <p>When the service runs on AWS Lambda, the deadline is derived from
+ * the remaining execution time of the Lambda invocation, and is set by
+ * the Lambda handler at the start of each invocation. (A Lambda execution
+ * environment serves only one invocation at a time, so a single, global
+ * deadline is all that is needed.) When no deadline has been set, e.g.
+ * when the service runs as a plain Spring Boot application, a default
+ * request budget applies.</p>
+ *
+ * <p>The DAO derives its per-call timeouts and its retry budgets from
+ * the deadline, so that a degraded database makes requests fail fast
+ * instead of hanging until Lambda kills the invocation.</p>
+ */
+public final class RequestDeadline {
+    // Time reserved for turning a DAO result (or failure) into a response.
+    private static final Duration RESPONSE_RESERVE = Duration.ofSeconds(1);
+    private static final Duration DEFAULT_BUDGET = Duration.ofSeconds(30);
+    private static final Duration MAX_CALL_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration MIN_CALL_TIMEOUT = Duration.ofMillis(100);
+
+    private static volatile long deadlineNanos;
+    private static volatile boolean isSet;
+
+    private RequestDeadline() {
+    }
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    /**
+     * Start the deadline for a new request.
+     *
+     * @param remainingTime The time remaining before the request is
+     *                      forcibly terminated.
+     */
+    public static void start(Duration remainingTime) {
+        deadlineNanos = System.nanoTime() + remainingTime.minus(RESPONSE_RESERVE).toNanos();
+        isSet = true;
+    }
+
+    public static void clear() {
+        isSet = false;
+    }
+
+    /**
+     * Get the time remaining until the deadline.
+     *
+     * @return The remaining time (never negative), or the default request
+     * budget if no deadline has been set.
+     */
+    public static Duration remaining() {
+        if (!isSet) {
+            return DEFAULT_BUDGET;
+        }
+        long remainingNanos = deadlineNanos - System.nanoTime();
+        return Duration.ofNanos(Math.max(0, remainingNanos));
+    }
+
+    /**
+     * Get the timeout for a single database call.
+     *
+     * @return The smaller of the maximum call timeout and the remaining
+     * time, but at least a minimal timeout, so that a call that is made
+     * very close to the deadline still gets a chance.
+     */
+    public static Duration callTimeout() {
+        Duration remaining = remaining();
+        if (remaining.compareTo(MAX_CALL_TIMEOUT) > 0) {
+            return MAX_CALL_TIMEOUT;
+        }
+        return (remaining.compareTo(MIN_CALL_TIMEOUT) < 0) ? MIN_CALL_TIMEOUT : remaining;
+    }
+
+    /**
+     * Determine whether there is enough time left to wait for `backoff`
+     * and then make another database call.
+     *
+     * @param backoff The time to wait before making the call.
+     * @return `true` if the wait plus a full call timeout fits before the
+     * deadline.
+     */
+    public static boolean hasTimeFor(Duration backoff) {
+        return remaining().compareTo(backoff.plus(MAX_CALL_TIMEOUT)) > 0;
+    }
+}
@@ -0,0 +1,285 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
+
+/**
+ * Tail the DynamoDB stream of the Short URL Mapping table, and publish each
+ * change to the in-process caches of mapping data (see
+ * `MappingChangeListener`), so that a change made by any instance of the
+ * service invalidates the cached copies held by every other instance.
+ *
+ * <p>Every instance reads the stream itself, since an in-process cache can
+ * only be invalidated from within its own process. The feed starts at the
+ * latest record of each open shard (there is nothing cached yet that older
+ * records could invalidate), and reads every shard that appears later from
+ * its beginning. Records of a parent shard and its children may thus be
+ * delivered out of order, which is harmless, since an invalidation can only
+ * ever make a cache drop more than it needs to.</p>
+ *
+ * <p>After every round in which it has read all shards up to their ends, the
+ * feed tells the listeners that they have caught up. A listener should stop
+ * trusting its cache when it has not heard so for a while, e.g. because a
+ * Lambda execution environment has been frozen, or the stream is unreadable.
+ * If records may have been lost (the feed was away for longer than a shard
+ * iterator lives, or records were trimmed from the stream), the listeners
+ * are told to drop everything.</p>
+ *
+ * <p>The stream is read via the same endpoint as the table, so the feed
+ * works with DynamoDB Local as well. Since a shard can serve only a few
+ * reads per second, the number of instances that tail the stream should be
+ * kept modest; each instance backs off when it is throttled.</p>
+ */
+public class ShortUrlMappingChangeFeed implements AutoCloseable {
+    private static final Duration SHARD_REFRESH_INTERVAL = Duration.ofSeconds(30);
+    private static final int MAX_RECORDS_PER_READ = 1000;
+
+    private final DynamoDbClient dynamoDbClient;
+    private final DynamoDbStreamsClient dynamoDbStreamsClient;
+    private final String tableName;
+    private final List<MappingChangeListener> listeners;
+    private final Duration pollInterval;
+    private ScheduledExecutorService pollExecutor;
+
+    // The following are used by the poll thread only.
+    private String streamArn;
+    private boolean isStreamMissingReported;
+    // Whether the shards that existed when the feed started are known.
+    private boolean isStarted;
+    private final Map<String, String> shardIterators = new HashMap<>();
+    private final Set<String> finishedShardIds = new HashSet<>();
+    private long shardsRefreshedAtNanos;
+    private long throttledUntilNanos;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    /**
+     * @param dynamoDbClient The client used to look up the table's stream.
+     * @param dynamoDbStreamsClient The client used to read the stream.
+     * @param tableName The name of the Short URL Mapping table.
+     * @param listeners The caches to keep up to date.
+     * @param pollInterval The time between the end of one round of reads
+     *                     and the start of the next.
+     */
+    public ShortUrlMappingChangeFeed(
+            DynamoDbClient dynamoDbClient,
+            DynamoDbStreamsClient dynamoDbStreamsClient,
+            String tableName,
+            List<MappingChangeListener> listeners,
+            Duration pollInterval) {
+
+        this.dynamoDbClient = dynamoDbClient;
+        this.dynamoDbStreamsClient = dynamoDbStreamsClient;
+        this.tableName = tableName;
+        this.listeners = listeners;
+        this.pollInterval = pollInterval;
+        this.throttledUntilNanos = System.nanoTime();
+    }
+
+    /**
+     * Read the stream from a background thread, once per poll interval,
+     * until the feed is closed.
+     */
+    public synchronized void
+    startPolling() {
+        if (pollExecutor != null) {
+            return;
+        }
+        pollExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "short-url-mapping-change-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pollExecutor.scheduleWithFixedDelay(this::poll,
+                0, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void
+    close() {
+        if (pollExecutor != null) {
+            pollExecutor.shutdownNow();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    // Perform one round of reads. Package-private, so that tests can drive
+    // the feed one round at a time, without the poll thread.
+    void
+    poll() {
+        long roundStartNanos = System.nanoTime();
+        if (roundStartNanos - throttledUntilNanos < 0) {
+            return;
+        }
+        try {
+            if (streamArn == null && !findStream()) {
+                return;
+            }
+            if (!isStarted || roundStartNanos - shardsRefreshedAtNanos
+                    > SHARD_REFRESH_INTERVAL.toNanos()) {
+                refreshShards();
+                shardsRefreshedAtNanos = roundStartNanos;
+            }
+
+            boolean isCaughtUp = true;
+            for (Map.Entry<String, String> shard : new ArrayList<>(shardIterators.entrySet())) {
+                isCaughtUp &= readShard(shard.getKey(), shard.getValue());
+            }
+            if (isCaughtUp) {
+                for (MappingChangeListener listener : listeners) {
+                    listener.onCaughtUp(roundStartNanos);
+                }
+            }
+        } catch (ExpiredIteratorException | TrimmedDataAccessException | ResourceNotFoundException e) {
+            // Records may have been lost, or the stream itself is gone (e.g.
+            // because the table was re-created). Start over from the latest
+            // records of the current stream.
+            System.out.println("====> The change feed lost its position: " + e.getMessage());
+            restart();
+        } catch (LimitExceededException e) {
+            throttledUntilNanos = System.nanoTime() + pollInterval.multipliedBy(5).toNanos();
+        } catch (RuntimeException e) {
+            // Try again next round. Meanwhile, the listeners stop hearing that
+            // they have caught up, and so stop trusting their caches.
+            System.out.println("====> Reading the change feed failed: " + e.getMessage());
+        }
+    }
+
+    private boolean
+    findStream() {
+        streamArn = dynamoDbClient.describeTable(req -> req.tableName(tableName))
+                .table()
+                .latestStreamArn();
+        if (streamArn == null && !isStreamMissingReported) {
+            System.out.println("====> Table " + tableName + " has no stream; "
+                    + "run the index migration to enable it");
+            isStreamMissingReported = true;
+        }
+        return streamArn != null;
+    }
+
+    // Track the shards that have appeared since the last refresh.
+    private void
+    refreshShards() {
+        Set<String> currentShardIds = new HashSet<>();
+        String exclusiveStartShardId = null;
+        do {
+            String startShardId = exclusiveStartShardId;
+            StreamDescription stream = dynamoDbStreamsClient.describeStream(req -> req
+                    .streamArn(streamArn)
+                    .exclusiveStartShardId(startShardId))
+                .streamDescription();
+
+            for (Shard shard : stream.shards()) {
+                String shardId = shard.shardId();
+                currentShardIds.add(shardId);
+                if (shardIterators.containsKey(shardId) || finishedShardIds.contains(shardId)) {
+                    continue;
+                }
+                boolean isClosed = shard.sequenceNumberRange().endingSequenceNumber() != null;
+                if (!isStarted && isClosed) {
+                    // Closed before the feed started, so it holds only old records.
+                    finishedShardIds.add(shardId);
+                    continue;
+                }
+                ShardIteratorType iteratorType = isStarted
+                        ? ShardIteratorType.TRIM_HORIZON
+                        : ShardIteratorType.LATEST;
+                String shardIterator = dynamoDbStreamsClient.getShardIterator(req -> req
+                        .streamArn(streamArn)
+                        .shardId(shardId)
+                        .shardIteratorType(iteratorType))
+                    .shardIterator();
+                if (shardIterator != null) {
+                    shardIterators.put(shardId, shardIterator);
+                }
+            }
+            exclusiveStartShardId = stream.lastEvaluatedShardId();
+        } while (exclusiveStartShardId != null);
+
+        // Forget the shards that have been trimmed from the stream.
+        finishedShardIds.retainAll(currentShardIds);
+        isStarted = true;
+    }
+
+    // Read the next batch of records of a shard, and publish them. Returns
+    // whether the shard has been read up to its (current) end.
+    private boolean
+    readShard(String shardId, String shardIterator) {
+        GetRecordsResponse response = dynamoDbStreamsClient.getRecords(req -> req
+                .shardIterator(shardIterator)
+                .limit(MAX_RECORDS_PER_READ));
+
+        for (software.amazon.awssdk.services.dynamodb.model.Record record : response.records()) {
+            publish(record);
+        }
+
+        if (response.nextShardIterator() == null) {
+            // The shard is closed, and has been read completely.
+            shardIterators.remove(shardId);
+            finishedShardIds.add(shardId);
+            return true;
+        }
+        shardIterators.put(shardId, response.nextShardIterator());
+        return response.records().size() < MAX_RECORDS_PER_READ;
+    }
+
+    private void
+    publish(software.amazon.awssdk.services.dynamodb.model.Record record) {
+        StreamRecord streamRecord = record.dynamodb();
+        boolean isRemoval = record.eventName() == OperationType.REMOVE;
+        // A removal carries the item as it was, any other change the item as
+        // it now is (unless the stream carries the keys only).
+        Map<String, AttributeValue> image = isRemoval
+                ? streamRecord.oldImage()
+                : streamRecord.newImage();
+
+        AttributeValue shortUrl = streamRecord.keys().get("shortUrl");
+        AttributeValue username = image.get("username");
+        AttributeValue version = image.get("version");
+        AttributeValue clickCount = image.get("clickCount");
+        MappingChange change = new MappingChange(
+                (shortUrl != null) ? shortUrl.s() : null,
+                (username != null) ? username.s() : null,
+                (version != null && version.n() != null) ? Long.valueOf(version.n()) : null,
+                (clickCount != null && clickCount.n() != null) ? Long.valueOf(clickCount.n()) : null,
+                isRemoval);
+
+        for (MappingChangeListener listener : listeners) {
+            listener.onMappingChange(change);
+        }
+    }
+
+    private void
+    restart() {
+        streamArn = null;
+        isStarted = false;
+        shardIterators.clear();
+        finishedShardIds.clear();
+        for (MappingChangeListener listener : listeners) {
+            listener.onChangesMissed();
+        }
+    }
+}
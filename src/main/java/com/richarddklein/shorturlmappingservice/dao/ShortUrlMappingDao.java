@@ -5,24 +5,42 @@
 
 package com.richarddklein.shorturlmappingservice.dao;
 
+import java.util.Map;
+
 import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.*;
-import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.entity.ShortUrlMapping;
 import com.richarddklein.shorturlcommonlibrary.service.status.ShortUrlStatus;
 import com.richarddklein.shorturlcommonlibrary.service.status.Status;
+import com.richarddklein.shorturlmappingservice.dto.StatusAndFoundAndMissingMappings;
+import com.richarddklein.shorturlmappingservice.dto.UsernameAndShortUrlArray;
+import com.richarddklein.shorturlmappingservice.entity.ShortUrlMappingItem;
 import reactor.core.publisher.Mono;
 
 public interface ShortUrlMappingDao {
     void initializeShortUrlMappingRepository();
 
+    String migrateShortUrlMappingIndexes();
+
     Mono<ShortUrlStatus>
-    createMapping(ShortUrlMapping shortUrlUser);
+    createMapping(ShortUrlMappingItem shortUrlUser);
 
     Mono<StatusAndShortUrlMappingArray>
     getMappings(ShortUrlMappingFilter shortUrlMappingFilter);
 
+    Mono<StatusAndFoundAndMissingMappings>
+    getMappingsByShortUrls(UsernameAndShortUrlArray usernameAndShortUrlArray);
+
     Mono<ShortUrlStatus>
     changeLongUrl(ShortUrlAndLongUrl shortUrlAndLongUrl);
 
     Mono<Status>
     deleteMappings(ShortUrlMappingFilter shortUrlMappingFilter);
+
+    // Delete the mappings that match a filter, one page at a time, starting
+    // at `position` (`null` for the first page). Used by background jobs,
+    // which record the position of the next page as their checkpoint.
+    Mono<DeletionPage>
+    deleteMappingsPage(ShortUrlMappingFilter shortUrlMappingFilter, Map<String, String> position);
+
+    Mono<Void>
+    addClicks(String shortUrl, long clicks);
 }
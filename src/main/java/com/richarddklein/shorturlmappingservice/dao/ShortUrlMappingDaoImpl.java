@@ -6,29 +6,48 @@
 package com.richarddklein.shorturlmappingservice.dao;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 
 import com.richarddklein.shorturlcommonlibrary.environment.ParameterStoreAccessor;
 import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.*;
 import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.entity.ShortUrlMapping;
 import com.richarddklein.shorturlcommonlibrary.service.status.ShortUrlStatus;
 import com.richarddklein.shorturlcommonlibrary.service.status.Status;
+import com.richarddklein.shorturlmappingservice.dto.StatusAndFoundAndMissingMappings;
+import com.richarddklein.shorturlmappingservice.dto.UsernameAndShortUrlArray;
+import com.richarddklein.shorturlmappingservice.entity.ShortUrlMappingItem;
+import com.richarddklein.shorturlmappingservice.exception.ServiceUnavailableException;
 import com.richarddklein.shorturlmappingservice.exception.ShortUrlNotFoundException;
-import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
 import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.model.CreateTableEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
-import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
-import software.amazon.awssdk.services.dynamodb.model.ProjectionType;
-import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.model.*;
 import software.amazon.awssdk.services.dynamodb.waiters.DynamoDbWaiter;
 
 import static com.richarddklein.shorturlcommonlibrary.service.status.ShortUrlStatus.*;
+import static com.richarddklein.shorturlmappingservice.dao.ShortUrlMappingIndexes.*;
+import static com.richarddklein.shorturlmappingservice.dao.ShortUrlMappingTableSchema.CLICK_COUNT;
+import static com.richarddklein.shorturlmappingservice.dao.ShortUrlMappingTableSchema.EXPIRES_AT;
+import static com.richarddklein.shorturlmappingservice.dao.ShortUrlMappingTableSchema.LONG_URL_HOST;
 
 /**
  * The production implementation of the Short URL Mapping DAO interface.
@@ -38,6 +57,9 @@ import static com.richarddklein.shorturlcommonlibrary.service.status.ShortUrlSta
  *
  * <p>For this table, eventual consistency is good enough. Therefore, the table can
  * (and should) be replicated across multiple, geographically dispersed, instances.
+ * Point reads of a specific short URL can make use of a second replica: when the
+ * primary replica is slow to answer, the read is hedged by sending it to the second
+ * replica as well, and the first answer wins. (See `HedgedReader`.)</p>
  *
  * <p>To increase throughput, DynamoDB will automatically shard (horizontally scale)
  * each instance of the table into multiple, disjoint partitions as the access frequency
@@ -65,7 +87,27 @@ import static com.richarddklein.shorturlcommonlibrary.service.status.ShortUrlSta
  * URL that maps to a given long URL, when the user has forgotten the former. To
  * handle this use case, we create a Global Secondary Index (GSI) with the `longUrl`
  * attribute as the Partition Key. This allows us to do a quick lookup of any Short
- * URL Mapping item given its long URL.</p>
+ * URL Mapping item given its long URL. Similarly, a GSI with the `username`
+ * attribute as the Partition Key lets us quickly list the mappings of a user.
+ * Both GSIs project all attributes, so a listing needs just one query. (Tables
+ * created with the original, keys-only GSIs can be migrated online; see
+ * `ShortUrlMappingIndexes`.)</p>
+ *
+ * <p>The `longUrl` attribute may be stored in a compact, encoded form (see
+ * `LongUrlCodec`), which is decoded transparently when the item is read. Since the
+ * encoding is deterministic, lookups through the `longUrl` GSI keep working.</p>
+ *
+ * <p>Each item also stores the normalized host of its long URL, in the derived
+ * `longUrlHost` attribute, which has a GSI of its own. This lets a filter select
+ * the mappings for a domain, or for a long URL prefix, with an index query
+ * rather than a scan (see `LongUrlPattern`).</p>
+ *
+ * <p>A mapping may be created with an expiry time, which is stored in the
+ * `expiresAt` attribute (see `ShortUrlMappingItem`). This is the table's TTL
+ * attribute, so DynamoDB deletes expired items in the background, which keeps
+ * the table (and its scans) small. Since the deletion may lag by a day or two,
+ * every read filters out expired items, and a new mapping may take the short
+ * URL of an expired one.</p>
  *
  * <p>The `version` attribute of each Short URL Mapping item is a long integer indicating
  * the version # of the Short URL Mapping entity. This attribute is for the exclusive use
@@ -84,12 +126,53 @@ import static com.richarddklein.shorturlcommonlibrary.service.status.ShortUrlSta
  * attribute in the database. If so, DynamoDB lets the `write` proceed, and updates the
  * `version` attribute in the database. If not, DynamoDB announces that the `write` has
  * failed.</p>
+ *
+ * <p>Listings of a user's mappings, the most common kind of read, are answered
+ * from an in-process view of the user's mappings whenever possible (see
+ * `UserMappingViews`). The DAO keeps the views up to date as it writes. The
+ * table also has a stream of its changes (new and old images), from which
+ * each instance learns of the writes made by the others (see
+ * `ShortUrlMappingChangeFeed`).</p>
+ *
+ * <p>Every call to the table is protected by a circuit breaker, and by a timeout
+ * derived from the deadline of the current request (see `RequestDeadline`). When
+ * the table is unavailable, or cannot answer before the deadline, the DAO fails
+ * fast with a `ServiceUnavailableException` instead of tying up the request.</p>
  */
-@Repository
 public class ShortUrlMappingDaoImpl implements ShortUrlMappingDao {
+    private static final Duration MAX_RETRY_BACKOFF = Duration.ofSeconds(2);
+    private static final Duration INDEX_MIGRATION_POLL_INTERVAL = Duration.ofSeconds(10);
+    // BatchGetItem accepts at most 100 keys per request.
+    private static final int MAX_BATCH_GET_KEYS = 100;
+    // How many of a lookup's batch reads may be in flight at once.
+    private static final int MAX_CONCURRENT_BATCH_GETS = 4;
+    private static final int MAX_BATCH_GET_ATTEMPTS = 8;
+    private static final Duration BATCH_GET_BASE_BACKOFF = Duration.ofMillis(25);
+    private static final Duration BATCH_GET_MAX_BACKOFF = Duration.ofSeconds(1);
+    // How long a single call of the index migration may spend backfilling
+    // the `longUrlHost` attribute, leaving ample margin within the Lambda
+    // function's timeout.
+    private static final Duration BACKFILL_TIME_BUDGET = Duration.ofSeconds(60);
+    // The number of items that a background job reads (and may delete) per
+    // page, and thus between two checkpoints.
+    private static final int DELETION_PAGE_SIZE = 100;
+    // The access path of a page: the name of the index queried, or else this.
+    private static final String TABLE_SCAN = "#scan";
+    // The key of the access path in a page position.
+    private static final String ACCESS_PATH = "#path";
+
     private final ParameterStoreAccessor parameterStoreAccessor;
     private final DynamoDbClient dynamoDbClient;
-    private final DynamoDbAsyncTable<ShortUrlMapping> shortUrlMappingTable;
+    private final DynamoDbAsyncClient dynamoDbAsyncClient;
+    private final DynamoDbAsyncTable<ShortUrlMappingItem> shortUrlMappingTable;
+    private final HedgedReader<DynamoDbAsyncTable<ShortUrlMappingItem>> shortUrlMappingReader;
+    private final CircuitBreaker circuitBreaker;
+    private final LongUrlCodec longUrlCodec;
+    private final ShortUrlMappingIndexes shortUrlMappingIndexes;
+    private final UserMappingViews userMappingViews;
+
+    private record BackfillProgress(int backfilledCount, boolean isComplete) {
+    }
 
     // ------------------------------------------------------------------------
     // PUBLIC METHODS
@@ -98,11 +181,23 @@ public class ShortUrlMappingDaoImpl implements ShortUrlMappingDao {
     public ShortUrlMappingDaoImpl(
             ParameterStoreAccessor parameterStoreAccessor,
             DynamoDbClient dynamoDbClient,
-            DynamoDbAsyncTable<ShortUrlMapping> shortUrlMappingTable) {
+            DynamoDbAsyncClient dynamoDbAsyncClient,
+            DynamoDbAsyncTable<ShortUrlMappingItem> shortUrlMappingTable,
+            HedgedReader<DynamoDbAsyncTable<ShortUrlMappingItem>> shortUrlMappingReader,
+            CircuitBreaker circuitBreaker,
+            LongUrlCodec longUrlCodec,
+            ShortUrlMappingIndexes shortUrlMappingIndexes,
+            UserMappingViews userMappingViews) {
 
         this.parameterStoreAccessor = parameterStoreAccessor;
         this.dynamoDbClient = dynamoDbClient;
+        this.dynamoDbAsyncClient = dynamoDbAsyncClient;
         this.shortUrlMappingTable = shortUrlMappingTable;
+        this.shortUrlMappingReader = shortUrlMappingReader;
+        this.circuitBreaker = circuitBreaker;
+        this.longUrlCodec = longUrlCodec;
+        this.shortUrlMappingIndexes = shortUrlMappingIndexes;
+        this.userMappingViews = userMappingViews;
     }
 
     // Initialization of the Short URL Mapping repository is performed rarely,
@@ -117,17 +212,66 @@ public class ShortUrlMappingDaoImpl implements ShortUrlMappingDao {
         createShortUrlMappingTable();
     }
 
+    // Like initialization, index migration is performed rarely, and then only
+    // by the Admin from a local machine, so synchronous logic is fine here.
+    //
+    // Building an index on a populated table can take far longer than a
+    // single request may run. Therefore, each call performs at most one step
+    // of the migration, and reports the progress made so far. The Admin calls
+    // repeatedly until the migration is reported to be complete.
+    @Override
+    public String
+    migrateShortUrlMappingIndexes() {
+        String tableName = parameterStoreAccessor.getShortUrlMappingTableName().block();
+
+        String progress = migrateIndex(tableName, USERNAME_INDEX, USERNAME_FULL_INDEX, "username");
+        if (progress == null) {
+            progress = migrateIndex(tableName, LONG_URL_INDEX, LONG_URL_FULL_INDEX, "longUrl");
+        }
+        if (progress == null) {
+            progress = migrateLongUrlHostIndex(tableName);
+        }
+        if (progress == null && !isTimeToLiveEnabled(tableName)) {
+            // Tables created before mappings could expire lack TTL as well.
+            enableTimeToLive(tableName);
+            progress = "Enabled TTL on attribute " + EXPIRES_AT;
+        }
+        if (progress == null && !isStreamEnabled(tableName)) {
+            // Tables created before the change feed lack a stream as well.
+            dynamoDbClient.updateTable(req -> req
+                    .tableName(tableName)
+                    .streamSpecification(this::changeStream));
+            progress = "Enabled the change stream";
+        }
+        shortUrlMappingIndexes.refresh();
+
+        return (progress != null) ? progress : "Index migration is complete";
+    }
+
     @Override
     public Mono<ShortUrlStatus>
-    createMapping(ShortUrlMapping shortUrlMapping) {
-        return Mono.fromFuture(
-            shortUrlMappingTable.putItem(req -> req
-                    .item(shortUrlMapping)
-                    .conditionExpression(Expression.builder()
-                            .expression("attribute_not_exists(shortUrl)")
-                            .build())
-            ))
-            .then(Mono.just(SUCCESS))
+    createMapping(ShortUrlMappingItem shortUrlMapping) {
+        return putNewShortUrlMapping(shortUrlMapping)
+            .onErrorResume(ConditionalCheckFailedException.class, e ->
+                // The short URL may be taken by a mapping that has expired, but
+                // that DynamoDB has not deleted yet. If so, delete it ourselves,
+                // and try again.
+                deleteShortUrlMappingIfExpired(shortUrlMapping.getShortUrl())
+                    .flatMap(isDeleted -> isDeleted
+                            ? putNewShortUrlMapping(shortUrlMapping)
+                            : Mono.error(e)))
+            .then(Mono.fromSupplier(() -> {
+                ShortUrlMappingItem createdShortUrlMapping = new ShortUrlMappingItem();
+                createdShortUrlMapping.setUsername(shortUrlMapping.getUsername());
+                createdShortUrlMapping.setShortUrl(shortUrlMapping.getShortUrl());
+                createdShortUrlMapping.setLongUrl(shortUrlMapping.getLongUrl());
+                createdShortUrlMapping.setExpiresAt(shortUrlMapping.getExpiresAt());
+                createdShortUrlMapping.setLongUrlHost(LongUrlPattern.hostOf(shortUrlMapping.getLongUrl()));
+                // Optimistic locking gives every new item version 1.
+                createdShortUrlMapping.setVersion(1L);
+                userMappingViews.put(createdShortUrlMapping);
+                return SUCCESS;
+            }))
             .onErrorResume(ConditionalCheckFailedException.class, e ->
                     Mono.just(SHORT_URL_ALREADY_TAKEN));
     }
@@ -135,29 +279,15 @@ public class ShortUrlMappingDaoImpl implements ShortUrlMappingDao {
     @Override
     public Mono<StatusAndShortUrlMappingArray>
     getMappings(ShortUrlMappingFilter shortUrlMappingFilter) {
-        String desiredUsername = shortUrlMappingFilter.getUsername();
-        String desiredShortUrl = shortUrlMappingFilter.getShortUrl();
-        String desiredLongUrl = shortUrlMappingFilter.getLongUrl();
-
-        return Flux.from(shortUrlMappingTable.scan().items())
-            .filter(item -> {
-                boolean matches = true;
-                if (!"*".equals(desiredUsername)) {
-                    matches = desiredUsername.equals(item.getUsername());
-                }
-                if (!"*".equals(desiredShortUrl)) {
-                    matches = matches && desiredShortUrl.equals(item.getShortUrl());
-                }
-                if (!"*".equals(desiredLongUrl)) {
-                    matches = matches && desiredLongUrl.equals(item.getLongUrl());
-                }
-                return matches;
-            })
+        return findMappings(shortUrlMappingFilter, true)
+            .cast(ShortUrlMapping.class)
             .collectList()
             .map(filteredMappings -> new StatusAndShortUrlMappingArray(
                     new Status(SUCCESS),
                     filteredMappings))
-            .onErrorResume(e -> {
+            .timeout(RequestDeadline.remaining())
+            .onErrorMap(TimeoutException.class, this::deadlineExceeded)
+            .onErrorResume(e -> !(e instanceof ServiceUnavailableException), e -> {
                 System.out.println("====> " + e.getMessage());
                 return Mono.just(new StatusAndShortUrlMappingArray(
                         new Status(UNKNOWN_ERROR),
@@ -166,32 +296,86 @@ public class ShortUrlMappingDaoImpl implements ShortUrlMappingDao {
     }
 
     @Override
-    public Mono<ShortUrlStatus>
-    changeLongUrl(ShortUrlAndLongUrl shortUrlAndLongUrl) {
-        ShortUrlMappingFilter shortUrlMappingFilter = new ShortUrlMappingFilter(
-                "*", shortUrlAndLongUrl.getShortUrl(), "*");
+    public Mono<StatusAndFoundAndMissingMappings>
+    getMappingsByShortUrls(UsernameAndShortUrlArray usernameAndShortUrlArray) {
+        String desiredUsername = usernameAndShortUrlArray.getUsername();
+        List<String> shortUrls = usernameAndShortUrlArray.getShortUrls().stream()
+                .distinct()
+                .toList();
 
-        return getMappings(shortUrlMappingFilter)
-            .flatMap(statusAndShortUrlMappings -> {
-                List<ShortUrlMapping> shortUrlMappings =
-                        statusAndShortUrlMappings.getShortUrlMappings();
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < shortUrls.size(); i += MAX_BATCH_GET_KEYS) {
+            chunks.add(shortUrls.subList(i, Math.min(i + MAX_BATCH_GET_KEYS, shortUrls.size())));
+        }
 
+        // The chunks are fetched in parallel, but only a few at a time, so
+        // that one lookup cannot use up the table's read capacity.
+        return Flux.fromIterable(chunks)
+            .flatMap(chunk -> batchGetMappings(toKeysAndAttributes(chunk), 1),
+                    MAX_CONCURRENT_BATCH_GETS)
+            .map(this::decodeLongUrl)
+            .filter(item -> "*".equals(desiredUsername) || desiredUsername.equals(item.getUsername()))
+            .cast(ShortUrlMapping.class)
+            .collectList()
+            .map(foundMappings -> {
+                Set<String> foundShortUrls = new HashSet<>();
+                for (ShortUrlMapping foundMapping : foundMappings) {
+                    foundShortUrls.add(foundMapping.getShortUrl());
+                }
+                List<String> missingShortUrls = shortUrls.stream()
+                        .filter(shortUrl -> !foundShortUrls.contains(shortUrl))
+                        .toList();
+                return new StatusAndFoundAndMissingMappings(
+                        new Status(SUCCESS),
+                        foundMappings,
+                        missingShortUrls);
+            })
+            .timeout(RequestDeadline.remaining())
+            .onErrorMap(TimeoutException.class, this::deadlineExceeded)
+            .onErrorResume(e -> !(e instanceof ServiceUnavailableException), e -> {
+                System.out.println("====> getMappingsByShortUrls() failed: " + e.getMessage());
+                return Mono.just(new StatusAndFoundAndMissingMappings(
+                        new Status(UNKNOWN_ERROR),
+                        Collections.emptyList(),
+                        Collections.emptyList()));
+            });
+    }
+
+    @Override
+    public Mono<ShortUrlStatus>
+    changeLongUrl(ShortUrlAndLongUrl shortUrlAndLongUrl) {
+        // The read-update-write cycle always reads from the primary replica,
+        // since it is going to write to the primary replica anyway.
+        return guarded(getMappingByShortUrl(shortUrlMappingTable, shortUrlAndLongUrl.getShortUrl()))
+            .flatMap(shortUrlMappings -> {
                 if (shortUrlMappings.isEmpty()) {
                     return Mono.just(SHORT_URL_NOT_FOUND);
                 }
 
-                ShortUrlMapping shortUrlMapping = shortUrlMappings.getFirst();
-                shortUrlMapping.setLongUrl(shortUrlAndLongUrl.getLongUrl());
+                ShortUrlMappingItem shortUrlMapping = shortUrlMappings.getFirst();
+                shortUrlMapping.setLongUrl(longUrlCodec.encode(shortUrlAndLongUrl.getLongUrl()));
+                shortUrlMapping.setLongUrlHost(LongUrlPattern.hostOf(shortUrlAndLongUrl.getLongUrl()));
+                // Leave the click count alone (see `updateShortUrlMapping()`).
+                shortUrlMapping.setClickCount(null);
 
                 return updateShortUrlMapping(shortUrlMapping)
-                    .map(updatedShortUrlMapping -> SUCCESS);
+                    .map(updatedShortUrlMapping -> {
+                        userMappingViews.put(decodeLongUrl(updatedShortUrlMapping));
+                        return SUCCESS;
+                    });
             })
-            .retryWhen(Retry.backoff(5, Duration.ofSeconds(1))
-                    .filter(e -> e instanceof ConditionalCheckFailedException)
+            // Retry only while the request's deadline leaves time for both
+            // the worst-case backoff and another full read-update-write cycle.
+            .retryWhen(Retry.backoff(5, Duration.ofMillis(100))
+                    .maxBackoff(MAX_RETRY_BACKOFF)
+                    .filter(e -> e instanceof ConditionalCheckFailedException
+                            && RequestDeadline.hasTimeFor(MAX_RETRY_BACKOFF.multipliedBy(2)))
                     .doAfterRetry(retrySignal -> System.out.println(
                             "====> Retrying after error: " + retrySignal.failure().getMessage()))
             )
-            .onErrorResume(e -> {
+            .timeout(RequestDeadline.remaining())
+            .onErrorMap(TimeoutException.class, this::deadlineExceeded)
+            .onErrorResume(e -> !(e instanceof ServiceUnavailableException), e -> {
                 System.out.println("====> changeLongUrl() failed: " + e.getMessage());
                 return (e instanceof ShortUrlNotFoundException)
                         ? Mono.just(SHORT_URL_NOT_FOUND)
@@ -202,33 +386,124 @@ public class ShortUrlMappingDaoImpl implements ShortUrlMappingDao {
     @Override
     public Mono<Status>
     deleteMappings(ShortUrlMappingFilter shortUrlMappingFilter) {
-        String desiredUsername = shortUrlMappingFilter.getUsername();
-        String desiredShortUrl = shortUrlMappingFilter.getShortUrl();
-        String desiredLongUrl = shortUrlMappingFilter.getLongUrl();
-
-        return Flux.from(shortUrlMappingTable.scan().items())
-            .filter(item -> {
-                boolean matches = true;
-                if (!"*".equals(desiredUsername)) {
-                    matches = desiredUsername.equals(item.getUsername());
-                }
-                if (!"*".equals(desiredShortUrl)) {
-                    matches = matches && desiredShortUrl.equals(item.getShortUrl());
-                }
-                if (!"*".equals(desiredLongUrl)) {
-                    matches = matches && desiredLongUrl.equals(item.getLongUrl());
-                }
-                return matches;
-            })
+        return findMappings(shortUrlMappingFilter, false)
             .flatMap(this::deleteShortUrlMapping)
+            .doOnNext(deletedShortUrlMapping -> userMappingViews.remove(
+                    deletedShortUrlMapping.getUsername(), deletedShortUrlMapping.getShortUrl()))
             .then(Mono.just(new Status(SUCCESS)))
-            .onErrorResume(e -> {
+            .timeout(RequestDeadline.remaining())
+            .onErrorMap(TimeoutException.class, this::deadlineExceeded)
+            .onErrorResume(e -> !(e instanceof ServiceUnavailableException), e -> {
                 System.out.println("====> " + e.getMessage());
                 System.out.println("====> deleteMappings() failed: " + e.getMessage());
                 return Mono.just(new Status(UNKNOWN_ERROR));
             });
     }
 
+    @Override
+    public Mono<DeletionPage>
+    deleteMappingsPage(ShortUrlMappingFilter shortUrlMappingFilter, Map<String, String> position) {
+        String desiredUsername = shortUrlMappingFilter.getUsername();
+        String desiredShortUrl = shortUrlMappingFilter.getShortUrl();
+        LongUrlPattern longUrlPattern = LongUrlPattern.parse(shortUrlMappingFilter);
+
+        if (!"*".equals(desiredShortUrl) || longUrlPattern.getExactLongUrl() != null) {
+            // A specific short URL or long URL selects few enough mappings
+            // to delete them all in a single page.
+            return findMappings(shortUrlMappingFilter, false)
+                .flatMap(this::deleteShortUrlMapping)
+                .doOnNext(deletedShortUrlMapping -> userMappingViews.remove(
+                        deletedShortUrlMapping.getUsername(), deletedShortUrlMapping.getShortUrl()))
+                .count()
+                .map(deletedCount -> new DeletionPage(deletedCount, null));
+        }
+
+        List<String> indexNames;
+        String partitionValue;
+        if (longUrlPattern.getIndexedHost() != null) {
+            indexNames = LONG_URL_HOST_INDEXES;
+            partitionValue = longUrlPattern.getIndexedHost();
+        } else if (!"*".equals(desiredUsername)) {
+            indexNames = USERNAME_INDEXES;
+            partitionValue = desiredUsername;
+        } else {
+            indexNames = List.of();
+            partitionValue = null;
+        }
+
+        return guarded(shortUrlMappingIndexes.resolve(indexNames))
+            .defaultIfEmpty(new ShortUrlMappingIndexes.ActiveIndex(TABLE_SCAN, true))
+            .flatMap(accessPath -> {
+                // A position is only valid on the access path it was taken on.
+                // If the path has changed (e.g. an index has become active),
+                // start over, which is safe, since deleted mappings are gone.
+                Map<String, AttributeValue> exclusiveStartKey =
+                        (position != null && accessPath.indexName().equals(position.get(ACCESS_PATH)))
+                                ? toExclusiveStartKey(position)
+                                : null;
+                return readPage(accessPath, partitionValue, exclusiveStartKey)
+                    .flatMap(page -> {
+                        Flux<ShortUrlMappingItem> items = Flux.fromIterable(page.items());
+                        if (!accessPath.isProjectingAllAttributes()) {
+                            // The index projects only the keys, so fetch the full items.
+                            items = items
+                                .flatMap(keys -> guarded(getMappingByShortUrl(
+                                        shortUrlMappingTable, keys.getShortUrl())))
+                                .flatMapIterable(mappings -> mappings);
+                        }
+                        return items
+                            .filter(item -> !item.isExpired(Instant.now()))
+                            .map(this::decodeLongUrl)
+                            .filter(item -> matches(item, shortUrlMappingFilter, longUrlPattern))
+                            .flatMap(this::deleteShortUrlMapping)
+                            .doOnNext(deletedShortUrlMapping -> userMappingViews.remove(
+                                    deletedShortUrlMapping.getUsername(),
+                                    deletedShortUrlMapping.getShortUrl()))
+                            .count()
+                            .map(deletedCount -> new DeletionPage(deletedCount,
+                                    toPosition(accessPath.indexName(), page.lastEvaluatedKey())));
+                    });
+            })
+            .defaultIfEmpty(new DeletionPage(0, null))
+            // The index may have been deleted by an index migration since its
+            // layout was cached. If so, refresh the layout, so that the retry
+            // of the page takes another access path.
+            .doOnError(this::isMissingIndex, e -> shortUrlMappingIndexes.refresh());
+    }
+
+    @Override
+    public Mono<Void>
+    addClicks(String shortUrl, long clicks) {
+        // An atomic `ADD` neither reads the item nor bumps its version, so
+        // it never conflicts with a concurrent change of the long URL.
+        return guarded(Mono.fromFuture(() -> dynamoDbAsyncClient.updateItem(req -> req
+                    .tableName(shortUrlMappingTable.tableName())
+                    .key(Map.of("shortUrl", AttributeValue.fromS(shortUrl)))
+                    .updateExpression("ADD #clickCount :clicks")
+                    // Do not resurrect a mapping that has been deleted since.
+                    .conditionExpression("attribute_exists(shortUrl)")
+                    .expressionAttributeNames(Map.of("#clickCount", CLICK_COUNT))
+                    .expressionAttributeValues(Map.of(
+                            ":clicks", AttributeValue.fromN(String.valueOf(clicks))))
+                    // The new click count, to update the user's view with.
+                    .returnValues(ReturnValue.ALL_NEW))))
+            .doOnNext(response -> {
+                Map<String, AttributeValue> item = response.attributes();
+                AttributeValue username = item.get("username");
+                AttributeValue version = item.get("version");
+                AttributeValue clickCount = item.get(CLICK_COUNT);
+                if (username != null && clickCount != null) {
+                    userMappingViews.putClickCount(
+                            username.s(),
+                            shortUrl,
+                            (version != null) ? Long.valueOf(version.n()) : null,
+                            Long.valueOf(clickCount.n()));
+                }
+            })
+            .then()
+            .onErrorResume(ConditionalCheckFailedException.class, e -> Mono.empty());
+    }
+
     // ------------------------------------------------------------------------
     // PRIVATE METHODS
     // ------------------------------------------------------------------------
@@ -262,15 +537,22 @@ public class ShortUrlMappingDaoImpl implements ShortUrlMappingDao {
 
         CreateTableEnhancedRequest createTableRequest = CreateTableEnhancedRequest.builder()
             .globalSecondaryIndices(
+                // Project all attributes, so that listings read via an index
+                // need not fetch each item from the table as well.
+                gsiBuilder -> gsiBuilder
+                    .indexName(USERNAME_FULL_INDEX)
+                    .projection(projectionBuilder -> projectionBuilder
+                            .projectionType(ProjectionType.ALL)),
                 gsiBuilder -> gsiBuilder
-                    .indexName("username-index")
+                    .indexName(LONG_URL_FULL_INDEX)
                     .projection(projectionBuilder -> projectionBuilder
-                            .projectionType(ProjectionType.KEYS_ONLY)),
+                            .projectionType(ProjectionType.ALL)),
                 gsiBuilder -> gsiBuilder
-                    .indexName("longUrl-index")
+                    .indexName(LONG_URL_HOST_INDEX)
                     .projection(projectionBuilder -> projectionBuilder
-                            .projectionType(ProjectionType.KEYS_ONLY))
+                            .projectionType(ProjectionType.ALL))
             )
+            .streamSpecification(this::changeStream)
             .build();
         shortUrlMappingTable.createTable(createTableRequest);
 
@@ -280,12 +562,542 @@ public class ShortUrlMappingDaoImpl implements ShortUrlMappingDao {
             .tableName(parameterStoreAccessor.getShortUrlMappingTableName().block()).build());
         waiter.close();
 
+        enableTimeToLive(parameterStoreAccessor.getShortUrlMappingTableName().block());
+
         System.out.println(" done!");
     }
 
-    private Mono<ShortUrlMapping>
-    updateShortUrlMapping(ShortUrlMapping shortUrlMapping) {
-        return Mono.fromFuture(shortUrlMappingTable.updateItem(shortUrlMapping))
+    // Let DynamoDB delete expired mappings in the background. (Until it does,
+    // reads filter them out.)
+    private void enableTimeToLive(String tableName) {
+        dynamoDbClient.updateTimeToLive(req -> req
+            .tableName(tableName)
+            .timeToLiveSpecification(specification -> specification
+                    .attributeName(EXPIRES_AT)
+                    .enabled(true)));
+    }
+
+    // Protect a single database call with the circuit breaker and a timeout
+    // derived from the request's deadline.
+    private <T> Mono<T>
+    guarded(Mono<T> call) {
+        return Mono.defer(() -> circuitBreaker.protect(call.timeout(RequestDeadline.callTimeout())))
+            .onErrorMap(TimeoutException.class, this::deadlineExceeded);
+    }
+
+    // Protect a paginated database call (e.g. a scan) with the circuit breaker,
+    // and with a timeout on each page derived from the request's deadline.
+    private <T> Flux<T>
+    guarded(Flux<T> call) {
+        return Flux.defer(() -> circuitBreaker.protect(call.timeout(RequestDeadline.callTimeout())))
+            .onErrorMap(TimeoutException.class, this::deadlineExceeded);
+    }
+
+    private ServiceUnavailableException
+    deadlineExceeded(TimeoutException e) {
+        return new ServiceUnavailableException(
+                "The database did not answer in time", Duration.ofSeconds(1));
+    }
+
+    // Find the mappings that match a filter, using the cheapest access path
+    // that the filter allows: a point read for a specific short URL, the
+    // user's view or an index query for a specific username, an index query
+    // for a specific long URL or long URL host, and a full scan otherwise.
+    //
+    // Only reads that may be slightly stale (i.e. not the reads that precede
+    // a delete) are hedged across replicas, or answered from a user's view.
+    //
+    // Each branch decodes the long URLs of the items it reads from the table,
+    // exactly once; the items of a user's view are decoded already. Decoding
+    // is not idempotent, so an item must never be decoded twice.
+    private Flux<ShortUrlMappingItem>
+    findMappings(ShortUrlMappingFilter shortUrlMappingFilter, boolean isStaleReadAllowed) {
+        String desiredUsername = shortUrlMappingFilter.getUsername();
+        String desiredShortUrl = shortUrlMappingFilter.getShortUrl();
+        LongUrlPattern longUrlPattern = LongUrlPattern.parse(shortUrlMappingFilter);
+
+        Flux<ShortUrlMappingItem> candidateMappings;
+        if (!"*".equals(desiredShortUrl)) {
+            // A point read may be hedged across table replicas to cut its
+            // tail latency.
+            Mono<List<ShortUrlMappingItem>> pointRead = isStaleReadAllowed
+                    ? shortUrlMappingReader.read(table -> getMappingByShortUrl(table, desiredShortUrl))
+                    : getMappingByShortUrl(shortUrlMappingTable, desiredShortUrl);
+            candidateMappings = guarded(pointRead)
+                .flatMapIterable(mappings -> mappings)
+                .map(this::decodeLongUrl)
+                // Let the user's view catch up with a newer version of the item.
+                .doOnNext(userMappingViews::put);
+        } else if (isStaleReadAllowed && !"*".equals(desiredUsername)) {
+            candidateMappings = findMappingsOfUser(desiredUsername);
+        } else if (longUrlPattern.getExactLongUrl() != null) {
+            // While long URL encoding is being rolled out (or back), an item may
+            // store the long URL in either its raw or its encoded form.
+            candidateMappings = Flux.fromIterable(
+                    longUrlCodec.storedForms(longUrlPattern.getExactLongUrl()))
+                .flatMap(storedLongUrl -> queryIndex(LONG_URL_INDEXES, storedLongUrl, true))
+                .map(this::decodeLongUrl);
+        } else if (longUrlPattern.getIndexedHost() != null) {
+            candidateMappings = queryIndex(
+                    LONG_URL_HOST_INDEXES, longUrlPattern.getIndexedHost(), true)
+                .map(this::decodeLongUrl);
+        } else if (!"*".equals(desiredUsername)) {
+            candidateMappings = queryIndex(USERNAME_INDEXES, desiredUsername, true)
+                .map(this::decodeLongUrl);
+        } else {
+            candidateMappings = guarded(Flux.from(shortUrlMappingTable.scan().items()))
+                .map(this::decodeLongUrl);
+        }
+
+        return candidateMappings
+            .filter(item -> !item.isExpired(Instant.now()))
+            .filter(item -> matches(item, shortUrlMappingFilter, longUrlPattern));
+    }
+
+    // Find all mappings of a user, from the user's view if there is one, and
+    // otherwise from the `username` index, loading the user's view.
+    private Flux<ShortUrlMappingItem>
+    findMappingsOfUser(String username) {
+        return Flux.defer(() -> {
+            List<ShortUrlMappingItem> cachedMappings = userMappingViews.get(username);
+            if (cachedMappings != null) {
+                return Flux.fromIterable(cachedMappings);
+            }
+            long token = userMappingViews.beginLoad(username);
+            return queryIndex(USERNAME_INDEXES, username, true)
+                // Without an index, the fallback scan returns everyone's mappings.
+                .filter(item -> username.equals(item.getUsername()))
+                .filter(item -> !item.isExpired(Instant.now()))
+                .map(this::decodeLongUrl)
+                .collectList()
+                .doOnNext(mappings -> userMappingViews.load(username, mappings, token))
+                .flatMapIterable(mappings -> mappings);
+        });
+    }
+
+    // Query an index for the items with a given partition key value. If none
+    // of the indexes is active, fall back to a scan (which the caller filters).
+    private Flux<ShortUrlMappingItem>
+    queryIndex(List<String> indexNames, String partitionValue, boolean isRetryAllowed) {
+        return guarded(shortUrlMappingIndexes.resolve(indexNames))
+            .map(index -> {
+                Flux<ShortUrlMappingItem> items = guarded(Flux.from(shortUrlMappingTable
+                        .index(index.indexName())
+                        .query(QueryConditional.keyEqualTo(Key.builder()
+                                .partitionValue(partitionValue)
+                                .build()))))
+                    .flatMapIterable(Page::items);
+                return index.isProjectingAllAttributes()
+                    ? items
+                    // The index projects only the keys, so fetch the full items.
+                    : items
+                        .flatMap(keys -> guarded(getMappingByShortUrl(
+                                shortUrlMappingTable, keys.getShortUrl())))
+                        .flatMapIterable(mappings -> mappings);
+            })
+            .defaultIfEmpty(guarded(Flux.from(shortUrlMappingTable.scan().items())))
+            .flatMapMany(mappings -> mappings)
+            // The index may have been deleted by an index migration since its
+            // layout was cached. If so, refresh the layout and try again.
+            .onErrorResume(e -> isRetryAllowed && isMissingIndex(e), e -> {
+                shortUrlMappingIndexes.refresh();
+                return queryIndex(indexNames, partitionValue, false);
+            });
+    }
+
+    // Read a single page of items, either from an index, or from the table.
+    private Mono<Page<ShortUrlMappingItem>>
+    readPage(ShortUrlMappingIndexes.ActiveIndex accessPath,
+             String partitionValue,
+             Map<String, AttributeValue> exclusiveStartKey) {
+        if (TABLE_SCAN.equals(accessPath.indexName())) {
+            return guarded(Flux.from(shortUrlMappingTable.scan(ScanEnhancedRequest.builder()
+                        .limit(DELETION_PAGE_SIZE)
+                        .exclusiveStartKey(exclusiveStartKey)
+                        .build()))
+                    .next());
+        }
+        return guarded(Flux.from(shortUrlMappingTable.index(accessPath.indexName())
+                    .query(QueryEnhancedRequest.builder()
+                        .queryConditional(QueryConditional.keyEqualTo(Key.builder()
+                                .partitionValue(partitionValue)
+                                .build()))
+                        .limit(DELETION_PAGE_SIZE)
+                        .exclusiveStartKey(exclusiveStartKey)
+                        .build()))
+                .next());
+    }
+
+    // The position of the next page is the last evaluated key of the page
+    // (whose attributes are all strings), tagged with the access path.
+    private static Map<String, String>
+    toPosition(String accessPath, Map<String, AttributeValue> lastEvaluatedKey) {
+        if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+            return null;
+        }
+        Map<String, String> position = new HashMap<>();
+        lastEvaluatedKey.forEach((name, value) -> position.put(name, value.s()));
+        position.put(ACCESS_PATH, accessPath);
+        return position;
+    }
+
+    private static Map<String, AttributeValue>
+    toExclusiveStartKey(Map<String, String> position) {
+        Map<String, AttributeValue> exclusiveStartKey = new HashMap<>();
+        position.forEach((name, value) -> {
+            if (!ACCESS_PATH.equals(name)) {
+                exclusiveStartKey.put(name, AttributeValue.fromS(value));
+            }
+        });
+        return exclusiveStartKey;
+    }
+
+    private KeysAndAttributes
+    toKeysAndAttributes(List<String> shortUrls) {
+        return KeysAndAttributes.builder()
+                .keys(shortUrls.stream()
+                        .map(shortUrl -> Map.of("shortUrl", AttributeValue.fromS(shortUrl)))
+                        .toList())
+                .build();
+    }
+
+    // Fetch a batch of items. When DynamoDB cannot process all keys at once
+    // (e.g. because the request exceeds the response size limit, or a
+    // partition is throttled), the items it did return are emitted, and the
+    // unprocessed keys are retried after an exponential backoff with jitter.
+    private Flux<ShortUrlMappingItem>
+    batchGetMappings(KeysAndAttributes keysAndAttributes, int attempt) {
+        String tableName = shortUrlMappingTable.tableName();
+
+        return guarded(Mono.fromFuture(() -> dynamoDbAsyncClient.batchGetItem(req -> req
+                    .requestItems(Map.of(tableName, keysAndAttributes)))))
+            .flatMapMany(response -> {
+                Flux<ShortUrlMappingItem> items = Flux
+                    .fromIterable(response.responses().getOrDefault(tableName, List.of()))
+                    .map(item -> shortUrlMappingTable.tableSchema().mapToItem(item))
+                    .filter(item -> !item.isExpired(Instant.now()));
+
+                KeysAndAttributes unprocessedKeys = response.unprocessedKeys().get(tableName);
+                if (unprocessedKeys == null || !unprocessedKeys.hasKeys()
+                        || unprocessedKeys.keys().isEmpty()) {
+                    return items;
+                }
+                if (attempt >= MAX_BATCH_GET_ATTEMPTS) {
+                    return items.concatWith(Flux.error(new IllegalStateException(String.format(
+                            "%d keys still unprocessed after %d attempts",
+                            unprocessedKeys.keys().size(), attempt))));
+                }
+
+                long maxBackoffMillis = Math.min(
+                        BATCH_GET_BASE_BACKOFF.toMillis() << (attempt - 1),
+                        BATCH_GET_MAX_BACKOFF.toMillis());
+                Duration backoff = Duration.ofMillis(
+                        ThreadLocalRandom.current().nextLong(maxBackoffMillis + 1));
+                return items.concatWith(Mono.delay(backoff)
+                        .thenMany(batchGetMappings(unprocessedKeys, attempt + 1)));
+            });
+    }
+
+    private boolean
+    isMissingIndex(Throwable e) {
+        return e instanceof DynamoDbException dynamoDbException
+                && dynamoDbException.awsErrorDetails() != null
+                && "ValidationException".equals(dynamoDbException.awsErrorDetails().errorCode());
+    }
+
+    // Perform the next step in the migration of one keys-only index to its
+    // full replacement. Returns a description of the step, or `null` if the
+    // migration of this index is complete.
+    private String
+    migrateIndex(String tableName, String oldIndexName, String newIndexName, String attributeName) {
+        TableDescription table = dynamoDbClient.describeTable(req -> req.tableName(tableName)).table();
+        GlobalSecondaryIndexDescription oldIndex = findIndex(table, oldIndexName);
+        GlobalSecondaryIndexDescription newIndex = findIndex(table, newIndexName);
+
+        if (newIndex == null) {
+            startCreatingIndex(tableName, table, newIndexName, attributeName, oldIndex);
+            return "Started creating index " + newIndexName;
+        }
+
+        if (newIndex.indexStatus() != IndexStatus.ACTIVE) {
+            // Until the new index is active, reads keep using the old index.
+            return String.format("Index %s is being built (status %s); try again in %d seconds",
+                    newIndexName, newIndex.indexStatus(), INDEX_MIGRATION_POLL_INTERVAL.toSeconds());
+        }
+
+        if (oldIndex != null) {
+            if (oldIndex.indexStatus() == IndexStatus.DELETING) {
+                return String.format("Index %s is being deleted; try again in %d seconds",
+                        oldIndexName, INDEX_MIGRATION_POLL_INTERVAL.toSeconds());
+            }
+            System.out.println("====> Deleting index " + oldIndexName);
+            dynamoDbClient.updateTable(req -> req
+                    .tableName(tableName)
+                    .globalSecondaryIndexUpdates(GlobalSecondaryIndexUpdate.builder()
+                            .delete(builder -> builder.indexName(oldIndexName))
+                            .build()));
+            return "Started deleting index " + oldIndexName;
+        }
+
+        return null;
+    }
+
+    // Perform the next step in adding the `longUrlHost` index: first backfill
+    // the `longUrlHost` attribute of the existing items, then create the index.
+    // (Creating the index only after the backfill ensures that, once the index
+    // is active, it is complete.) Returns a description of the step, or `null`
+    // if the index is complete.
+    private String
+    migrateLongUrlHostIndex(String tableName) {
+        TableDescription table = dynamoDbClient.describeTable(req -> req.tableName(tableName)).table();
+        GlobalSecondaryIndexDescription index = findIndex(table, LONG_URL_HOST_INDEX);
+
+        if (index == null) {
+            BackfillProgress progress = backfillLongUrlHosts(
+                    tableName, Instant.now().plus(BACKFILL_TIME_BUDGET));
+            if (!progress.isComplete()) {
+                return String.format(
+                        "Backfilled attribute %s of %d items; call again to continue",
+                        LONG_URL_HOST, progress.backfilledCount());
+            }
+            startCreatingIndex(tableName, table, LONG_URL_HOST_INDEX, LONG_URL_HOST, null);
+            return String.format("Backfilled attribute %s of %d items, and started creating index %s",
+                    LONG_URL_HOST, progress.backfilledCount(), LONG_URL_HOST_INDEX);
+        }
+
+        if (index.indexStatus() != IndexStatus.ACTIVE) {
+            return String.format("Index %s is being built (status %s); try again in %d seconds",
+                    LONG_URL_HOST_INDEX, index.indexStatus(), INDEX_MIGRATION_POLL_INTERVAL.toSeconds());
+        }
+
+        return null;
+    }
+
+    // Set the `longUrlHost` attribute of the items that lack it, until either
+    // none is left or the deadline has passed. Items written since the
+    // `longUrlHost` attribute was introduced already have it, so each call
+    // scans for the remaining items from the start of the table.
+    private BackfillProgress
+    backfillLongUrlHosts(String tableName, Instant deadline) {
+        int backfilledCount = 0;
+        Map<String, AttributeValue> exclusiveStartKey = null;
+        do {
+            Map<String, AttributeValue> startKey = exclusiveStartKey;
+            ScanResponse page = dynamoDbClient.scan(req -> req
+                    .tableName(tableName)
+                    .filterExpression("attribute_not_exists(#longUrlHost)")
+                    .projectionExpression("shortUrl, #longUrl")
+                    .expressionAttributeNames(Map.of(
+                            "#longUrlHost", LONG_URL_HOST,
+                            "#longUrl", "longUrl"))
+                    .exclusiveStartKey(startKey));
+
+            for (Map<String, AttributeValue> item : page.items()) {
+                if (Instant.now().isAfter(deadline)) {
+                    return new BackfillProgress(backfilledCount, false);
+                }
+                AttributeValue storedLongUrl = item.get("longUrl");
+                String longUrl = (storedLongUrl != null) ? longUrlCodec.decode(storedLongUrl.s()) : null;
+                try {
+                    dynamoDbClient.updateItem(req -> req
+                            .tableName(tableName)
+                            .key(Map.of("shortUrl", item.get("shortUrl")))
+                            .updateExpression("SET #longUrlHost = :longUrlHost")
+                            // Skip items whose long URL has changed since the
+                            // scan; the change has set their host already.
+                            .conditionExpression((storedLongUrl != null)
+                                    ? "#longUrl = :longUrl"
+                                    : "attribute_exists(shortUrl)")
+                            .expressionAttributeNames((storedLongUrl != null)
+                                    ? Map.of("#longUrlHost", LONG_URL_HOST, "#longUrl", "longUrl")
+                                    : Map.of("#longUrlHost", LONG_URL_HOST))
+                            .expressionAttributeValues((storedLongUrl != null)
+                                    ? Map.of(":longUrlHost", AttributeValue.fromS(
+                                                LongUrlPattern.hostOf(longUrl)),
+                                             ":longUrl", storedLongUrl)
+                                    : Map.of(":longUrlHost", AttributeValue.fromS(
+                                                LongUrlPattern.NO_HOST))));
+                    backfilledCount++;
+                } catch (ConditionalCheckFailedException e) {
+                    // Changed or deleted since the scan.
+                }
+            }
+
+            exclusiveStartKey = page.hasLastEvaluatedKey() && !page.lastEvaluatedKey().isEmpty()
+                    ? page.lastEvaluatedKey()
+                    : null;
+            if (exclusiveStartKey != null && Instant.now().isAfter(deadline)) {
+                return new BackfillProgress(backfilledCount, false);
+            }
+        } while (exclusiveStartKey != null);
+
+        return new BackfillProgress(backfilledCount, true);
+    }
+
+    // Start creating a full (all attributes projected) index. If the table
+    // uses provisioned capacity, the new index inherits the capacity of the
+    // index it replaces, if any, or else of the table.
+    private void
+    startCreatingIndex(String tableName,
+                       TableDescription table,
+                       String newIndexName,
+                       String attributeName,
+                       GlobalSecondaryIndexDescription oldIndex) {
+        CreateGlobalSecondaryIndexAction.Builder createIndex =
+            CreateGlobalSecondaryIndexAction.builder()
+                .indexName(newIndexName)
+                .keySchema(KeySchemaElement.builder()
+                        .attributeName(attributeName)
+                        .keyType(KeyType.HASH)
+                        .build())
+                .projection(Projection.builder()
+                        .projectionType(ProjectionType.ALL)
+                        .build());
+        if (table.billingModeSummary() == null
+                || table.billingModeSummary().billingMode() == BillingMode.PROVISIONED) {
+            ProvisionedThroughputDescription capacity = (oldIndex != null)
+                    ? oldIndex.provisionedThroughput()
+                    : table.provisionedThroughput();
+            createIndex.provisionedThroughput(ProvisionedThroughput.builder()
+                    .readCapacityUnits(capacity.readCapacityUnits())
+                    .writeCapacityUnits(capacity.writeCapacityUnits())
+                    .build());
+        }
+        System.out.println("====> Creating index " + newIndexName);
+        dynamoDbClient.updateTable(req -> req
+                .tableName(tableName)
+                .attributeDefinitions(AttributeDefinition.builder()
+                        .attributeName(attributeName)
+                        .attributeType(ScalarAttributeType.S)
+                        .build())
+                .globalSecondaryIndexUpdates(GlobalSecondaryIndexUpdate.builder()
+                        .create(createIndex.build())
+                        .build()));
+    }
+
+    private boolean
+    isTimeToLiveEnabled(String tableName) {
+        TimeToLiveStatus status = dynamoDbClient
+                .describeTimeToLive(req -> req.tableName(tableName))
+                .timeToLiveDescription()
+                .timeToLiveStatus();
+        return status == TimeToLiveStatus.ENABLED || status == TimeToLiveStatus.ENABLING;
+    }
+
+    private boolean
+    isStreamEnabled(String tableName) {
+        StreamSpecification streamSpecification = dynamoDbClient
+                .describeTable(req -> req.tableName(tableName))
+                .table()
+                .streamSpecification();
+        return streamSpecification != null && Boolean.TRUE.equals(streamSpecification.streamEnabled());
+    }
+
+    // The change feed needs the username and version of each changed item,
+    // so the stream carries the items' images, not just their keys.
+    private void
+    changeStream(StreamSpecification.Builder streamSpecification) {
+        streamSpecification
+                .streamEnabled(true)
+                .streamViewType(StreamViewType.NEW_AND_OLD_IMAGES);
+    }
+
+    private GlobalSecondaryIndexDescription
+    findIndex(TableDescription table, String indexName) {
+        if (!table.hasGlobalSecondaryIndexes()) {
+            return null;
+        }
+        return table.globalSecondaryIndexes().stream()
+                .filter(index -> index.indexName().equals(indexName))
+                .findFirst()
+                .orElse(null);
+    }
+
+    // Returns a copy of an item, as read from the table, with its long URL
+    // decoded. The item itself is left alone, so that it can never be decoded
+    // twice by mistake.
+    private ShortUrlMappingItem
+    decodeLongUrl(ShortUrlMappingItem shortUrlMapping) {
+        ShortUrlMappingItem decodedShortUrlMapping = new ShortUrlMappingItem();
+        decodedShortUrlMapping.setUsername(shortUrlMapping.getUsername());
+        decodedShortUrlMapping.setShortUrl(shortUrlMapping.getShortUrl());
+        decodedShortUrlMapping.setLongUrl(longUrlCodec.decode(shortUrlMapping.getLongUrl()));
+        decodedShortUrlMapping.setLongUrlHost(shortUrlMapping.getLongUrlHost());
+        decodedShortUrlMapping.setVersion(shortUrlMapping.getVersion());
+        decodedShortUrlMapping.setExpiresAt(shortUrlMapping.getExpiresAt());
+        decodedShortUrlMapping.setClickCount(shortUrlMapping.getClickCount());
+        return decodedShortUrlMapping;
+    }
+
+    private boolean
+    matches(ShortUrlMappingItem item,
+            ShortUrlMappingFilter shortUrlMappingFilter,
+            LongUrlPattern longUrlPattern) {
+        String desiredUsername = shortUrlMappingFilter.getUsername();
+        String desiredShortUrl = shortUrlMappingFilter.getShortUrl();
+
+        boolean matches = true;
+        if (!"*".equals(desiredUsername)) {
+            matches = desiredUsername.equals(item.getUsername());
+        }
+        if (!"*".equals(desiredShortUrl)) {
+            matches = matches && desiredShortUrl.equals(item.getShortUrl());
+        }
+        if (!longUrlPattern.isAny()) {
+            matches = matches && longUrlPattern.matches(item.getLongUrl());
+        }
+        return matches;
+    }
+
+    private Mono<List<ShortUrlMappingItem>>
+    getMappingByShortUrl(DynamoDbAsyncTable<ShortUrlMappingItem> table, String shortUrl) {
+        return Mono.fromFuture(() -> table.getItem(
+                    Key.builder().partitionValue(shortUrl).build()))
+            .filter(item -> !item.isExpired(Instant.now()))
+            .map(List::of)
+            .defaultIfEmpty(Collections.emptyList());
+    }
+
+    private Mono<Void>
+    putNewShortUrlMapping(ShortUrlMappingItem shortUrlMapping) {
+        // Store a copy, so that the long URL can be encoded without changing
+        // the caller's mapping.
+        ShortUrlMappingItem newShortUrlMapping = new ShortUrlMappingItem();
+        newShortUrlMapping.setUsername(shortUrlMapping.getUsername());
+        newShortUrlMapping.setShortUrl(shortUrlMapping.getShortUrl());
+        newShortUrlMapping.setLongUrl(longUrlCodec.encode(shortUrlMapping.getLongUrl()));
+        newShortUrlMapping.setExpiresAt(shortUrlMapping.getExpiresAt());
+        newShortUrlMapping.setLongUrlHost(LongUrlPattern.hostOf(shortUrlMapping.getLongUrl()));
+
+        return guarded(Mono.fromFuture(() -> shortUrlMappingTable.putItem(req -> req
+                .item(newShortUrlMapping)
+                .conditionExpression(Expression.builder()
+                        .expression("attribute_not_exists(shortUrl)")
+                        .build()))));
+    }
+
+    // Delete a mapping, but only if it has expired. Returns whether it was deleted.
+    private Mono<Boolean>
+    deleteShortUrlMappingIfExpired(String shortUrl) {
+        return guarded(Mono.fromFuture(() -> shortUrlMappingTable.deleteItem(req -> req
+                    .key(Key.builder().partitionValue(shortUrl).build())
+                    .conditionExpression(Expression.builder()
+                            .expression("#expiresAt <= :now")
+                            .putExpressionName("#expiresAt", EXPIRES_AT)
+                            .putExpressionValue(":now", AttributeValue.fromN(
+                                    String.valueOf(Instant.now().getEpochSecond())))
+                            .build()))))
+            .map(deletedShortUrlMapping -> true)
+            .onErrorResume(ConditionalCheckFailedException.class, e -> Mono.just(false));
+    }
+
+    private Mono<ShortUrlMappingItem>
+    updateShortUrlMapping(ShortUrlMappingItem shortUrlMapping) {
+        // Null attributes are left unchanged, rather than removed, so that an
+        // update does not overwrite clicks that were added after the read.
+        return guarded(Mono.fromFuture(() -> shortUrlMappingTable.updateItem(req -> req
+                    .item(shortUrlMapping)
+                    .ignoreNulls(true))))
             .onErrorResume(ConditionalCheckFailedException.class, e -> {
                 // Version check failed. Someone updated the ShortUrlMapping item in the
                 // database after we read the item, so the item we just tried to update
@@ -300,9 +1112,9 @@ public class ShortUrlMappingDaoImpl implements ShortUrlMappingDao {
             });
     }
 
-    private Mono<ShortUrlMapping>
-    deleteShortUrlMapping(ShortUrlMapping shortUrlMapping) {
-        return Mono.fromFuture(shortUrlMappingTable.deleteItem(shortUrlMapping))
+    private Mono<ShortUrlMappingItem>
+    deleteShortUrlMapping(ShortUrlMappingItem shortUrlMapping) {
+        return guarded(Mono.fromFuture(() -> shortUrlMappingTable.deleteItem(shortUrlMapping)))
             .onErrorResume(e -> {
                 System.out.println("====> deleteShortUrlMapping() failed: " + e.getMessage());
                 return Mono.error(e);
@@ -0,0 +1,124 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.richarddklein.shorturlmappingservice.entity.ShortUrlMappingItem;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
+import software.amazon.awssdk.services.dynamodb.model.GlobalSecondaryIndexDescription;
+import software.amazon.awssdk.services.dynamodb.model.IndexStatus;
+import software.amazon.awssdk.services.dynamodb.model.ProjectionType;
+
+/**
+ * Keep track of the Global Secondary Indexes (GSIs) of the Short URL Mapping
+ * table, and of which of them can currently be used for reads.
+ *
+ * <p>Originally, the `username` and `longUrl` GSIs projected only the keys of
+ * each item, so every item found via an index had to be fetched again from the
+ * table to get its `longUrl` and `version`. Their replacements, the "full"
+ * indexes, project all attributes, so a listing needs a single query.</p>
+ *
+ * <p>Since the projection of an existing GSI cannot be changed, an existing
+ * table is migrated by creating each full index alongside its keys-only
+ * predecessor, and deleting the predecessor once the full index is active.
+ * Throughout the migration, reads use whichever index is active, preferring
+ * the full one, so the migration does not interrupt the service.</p>
+ *
+ * <p>The `longUrlHost` index (see `LongUrlPattern`) is added to an existing
+ * table by the same migration, once every item has its `longUrlHost`
+ * attribute. Until the index is active, host lookups fall back to a scan.</p>
+ *
+ * <p>The layout of the indexes is read from the table description, and cached
+ * for a short while.</p>
+ */
+public class ShortUrlMappingIndexes {
+    public static final String USERNAME_INDEX = "username-index";
+    public static final String USERNAME_FULL_INDEX = "username-full-index";
+    public static final String LONG_URL_INDEX = "longUrl-index";
+    public static final String LONG_URL_FULL_INDEX = "longUrl-full-index";
+    public static final String LONG_URL_HOST_INDEX = "longUrlHost-index";
+
+    // The indexes for each indexed attribute, most preferred first.
+    public static final List<String> USERNAME_INDEXES =
+            List.of(USERNAME_FULL_INDEX, USERNAME_INDEX);
+    public static final List<String> LONG_URL_INDEXES =
+            List.of(LONG_URL_FULL_INDEX, LONG_URL_INDEX);
+    public static final List<String> LONG_URL_HOST_INDEXES =
+            List.of(LONG_URL_HOST_INDEX);
+
+    private static final Duration REFRESH_INTERVAL = Duration.ofMinutes(1);
+
+    private final DynamoDbAsyncTable<ShortUrlMappingItem> shortUrlMappingTable;
+    private volatile Mono<Map<String, ProjectionType>> activeIndexes;
+
+    /**
+     * An index that can be used for reads.
+     *
+     * @param indexName The name of the index.
+     * @param isProjectingAllAttributes Whether the items read from the index
+     *                                  contain all attributes, or just the keys.
+     */
+    public record ActiveIndex(String indexName, boolean isProjectingAllAttributes) {
+    }
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    public ShortUrlMappingIndexes(DynamoDbAsyncTable<ShortUrlMappingItem> shortUrlMappingTable) {
+        this.shortUrlMappingTable = shortUrlMappingTable;
+        refresh();
+    }
+
+    /**
+     * Choose the index to read from.
+     *
+     * @param indexNames The candidate indexes, most preferred first.
+     * @return The first of the candidate indexes that is active, or an empty
+     * `Mono` if none of them is.
+     */
+    public Mono<ActiveIndex>
+    resolve(List<String> indexNames) {
+        return activeIndexes.flatMap(projectionTypes -> {
+            for (String indexName : indexNames) {
+                ProjectionType projectionType = projectionTypes.get(indexName);
+                if (projectionType != null) {
+                    return Mono.just(new ActiveIndex(
+                            indexName, projectionType == ProjectionType.ALL));
+                }
+            }
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * Forget the cached index layout, e.g. after an index has been deleted.
+     */
+    public void
+    refresh() {
+        activeIndexes = Mono.fromFuture(shortUrlMappingTable::describeTable)
+            .map(response -> {
+                Map<String, ProjectionType> projectionTypes = new HashMap<>();
+                List<GlobalSecondaryIndexDescription> indexes =
+                        response.table().globalSecondaryIndexes();
+                for (GlobalSecondaryIndexDescription index : indexes) {
+                    if (index.indexStatus() == IndexStatus.ACTIVE) {
+                        projectionTypes.put(
+                                index.indexName(), index.projection().projectionType());
+                    }
+                }
+                return projectionTypes;
+            })
+            .cache(projectionTypes -> REFRESH_INTERVAL,
+                    e -> Duration.ZERO,
+                    () -> Duration.ZERO);
+    }
+}
@@ -0,0 +1,514 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import com.richarddklein.shorturlmappingservice.entity.ShortUrlMappingItem;
+
+/**
+ * The persistent storage of the embedded Short URL Mapping store (see
+ * `ShortUrlMappingLogDaoImpl`): an append-only log of changes, plus
+ * periodic snapshots of the complete state.
+ *
+ * <p>The log is a sequence of numbered, fixed-size segment files, each of
+ * which is memory-mapped, so that appending a record is a copy into memory
+ * (plus, if so configured, an `msync` of just the bytes written). Each
+ * record is framed by its length and a CRC32 checksum, so recovery can tell
+ * where the valid part of a segment ends, even after a crash in the middle
+ * of a write.</p>
+ *
+ * <p>A snapshot numbered N holds the state as of the start of segment N.
+ * Recovery loads the newest snapshot, and replays the segments from its
+ * number on. Once a snapshot has been written, the older segments and
+ * snapshots are deleted; this is how the log is compacted.</p>
+ *
+ * <p>A snapshot is written without holding up appends, and is only
+ * published (renamed, and the directory synced) under the log's lock, so
+ * that it never races with a switch to a new segment or with `clear()`.
+ * Still, this class does not know what the items are; its caller must make
+ * sure that the items passed to `writeSnapshot()` match the state at the
+ * start of the segment returned by `startNewSegment()`.</p>
+ */
+public class ShortUrlMappingLog implements AutoCloseable {
+    private static final String SEGMENT_FORMAT = "segment-%020d.log";
+    private static final String SNAPSHOT_FORMAT = "snapshot-%020d.snap";
+    private static final int SNAPSHOT_MAGIC = 0x53554d53;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    // Each record starts with its payload length and the payload's CRC32.
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean isSyncOnWrite;
+
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    private long segmentNumber;
+    // The number of bytes in the valid records of the log, and this number as
+    // of the start of each segment since the newest snapshot.
+    private long appendedBytes;
+    private final NavigableMap<Long, Long> appendedBytesAtSegmentStart = new TreeMap<>();
+    private long appendedBytesAtSnapshot;
+    private int unsyncedStart = -1;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    /**
+     * @param directory The directory that holds the segments and snapshots.
+     * @param segmentSize The size of each segment file, in bytes.
+     * @param isSyncOnWrite Whether each record is flushed to disk before
+     *                      `append()` returns. If not, records are flushed
+     *                      by `sync()`.
+     */
+    public ShortUrlMappingLog(Path directory, int segmentSize, boolean isSyncOnWrite) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.isSyncOnWrite = isSyncOnWrite;
+    }
+
+    /**
+     * Recover the state from the newest snapshot and the segments written
+     * since, and prepare to append to the log.
+     *
+     * @param items The map to load the items into, keyed by short URL.
+     */
+    public synchronized void
+    open(Map<String, ShortUrlMappingItem> items) throws IOException {
+        Files.createDirectories(directory);
+        deleteFiles("*.tmp", Long.MAX_VALUE);
+
+        long snapshotNumber = -1;
+        List<Long> snapshotNumbers = fileNumbers("snapshot-*.snap");
+        if (!snapshotNumbers.isEmpty()) {
+            snapshotNumber = snapshotNumbers.getLast();
+            readSnapshot(snapshotFile(snapshotNumber), items);
+        }
+
+        List<Long> segmentNumbers = new ArrayList<>();
+        for (long number : fileNumbers("segment-*.log")) {
+            if (number >= snapshotNumber) {
+                segmentNumbers.add(number);
+            }
+        }
+        resetAppendedBytes();
+        if (segmentNumbers.isEmpty()) {
+            openSegment(Math.max(snapshotNumber, 0));
+            return;
+        }
+        for (long number : segmentNumbers) {
+            openSegment(number);
+            int end = replaySegment(items);
+            segment.position(end);
+            appendedBytes += end;
+            System.out.printf("====> Replayed %d bytes of log segment %d%n", end, number);
+        }
+    }
+
+    /**
+     * Append the current state of an item to the log.
+     *
+     * @param item The item.
+     */
+    public synchronized void
+    appendPut(ShortUrlMappingItem item) throws IOException {
+        append(encodePut(item));
+    }
+
+    /**
+     * Append the deletion of an item to the log.
+     *
+     * @param shortUrl The short URL of the item.
+     */
+    public synchronized void
+    appendDelete(String shortUrl) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(DELETE);
+        writeString(out, shortUrl);
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Flush the records appended since the last flush to disk.
+     */
+    public synchronized void
+    sync() {
+        if (unsyncedStart >= 0) {
+            segment.force(unsyncedStart, segment.position() - unsyncedStart);
+            unsyncedStart = -1;
+        }
+    }
+
+    /**
+     * Seal the current segment, and start appending to a new one.
+     *
+     * @return The number of the new segment, which is also the number of
+     * the snapshot that will cover everything before it.
+     */
+    public synchronized long
+    startNewSegment() throws IOException {
+        sync();
+        openSegment(segmentNumber + 1);
+        syncDirectory();
+        return segmentNumber;
+    }
+
+    /**
+     * Write a snapshot, and delete the segments and snapshots that it makes
+     * obsolete. If the log has been cleared since the segment was started,
+     * the snapshot is stale, and is discarded.
+     *
+     * @param snapshotNumber The number returned by `startNewSegment()`.
+     * @param items The items as of the start of that segment.
+     */
+    public void
+    writeSnapshot(long snapshotNumber, Collection<ShortUrlMappingItem> items) throws IOException {
+        // Writing the snapshot is the slow part, so appends go on meanwhile.
+        Path snapshotFile = snapshotFile(snapshotNumber);
+        Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tempFile.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(items.size());
+            for (ShortUrlMappingItem item : items) {
+                byte[] payload = encodePut(item);
+                out.writeInt(payload.length);
+                out.writeInt(checksum(payload));
+                out.write(payload);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+
+        synchronized (this) {
+            Long appendedBytesAtSnapshotStart = appendedBytesAtSegmentStart.get(snapshotNumber);
+            if (appendedBytesAtSnapshotStart == null) {
+                Files.deleteIfExists(tempFile);
+                return;
+            }
+            // Only a complete snapshot ever bears a snapshot's name. The
+            // rename must itself be durable before the log it replaces is
+            // deleted; otherwise, a crash could leave neither behind.
+            Files.move(tempFile, snapshotFile, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory();
+
+            deleteFiles("segment-*.log", snapshotNumber);
+            deleteFiles("snapshot-*.snap", snapshotNumber);
+            appendedBytesAtSnapshot = appendedBytesAtSnapshotStart;
+            appendedBytesAtSegmentStart.headMap(snapshotNumber).clear();
+        }
+    }
+
+    /**
+     * @return The number of bytes appended since the newest snapshot, i.e.
+     * the amount of log that recovery would have to replay.
+     */
+    public synchronized long
+    getBytesSinceSnapshot() {
+        return appendedBytes - appendedBytesAtSnapshot;
+    }
+
+    /**
+     * Delete the entire log, and all snapshots.
+     */
+    public synchronized void
+    clear() throws IOException {
+        segmentChannel.close();
+        segmentChannel = null;
+        deleteFiles("segment-*.log", Long.MAX_VALUE);
+        deleteFiles("snapshot-*.snap", Long.MAX_VALUE);
+        resetAppendedBytes();
+        // The numbering goes on, so that a snapshot begun before the log was
+        // cleared can never match a segment started after.
+        openSegment(segmentNumber + 1);
+        syncDirectory();
+    }
+
+    @Override
+    public synchronized void
+    close() throws IOException {
+        sync();
+        segmentChannel.close();
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private void
+    append(byte[] payload) throws IOException {
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        if (recordSize > segmentSize) {
+            throw new IOException("Record of " + recordSize + " bytes exceeds the segment size");
+        }
+        if (segment.remaining() < recordSize) {
+            startNewSegment();
+        }
+
+        int start = segment.position();
+        // Write the payload before the header: a zero length marks the end
+        // of the log, so a torn record is never mistaken for a valid one.
+        segment.position(start + RECORD_HEADER_SIZE);
+        segment.put(payload);
+        segment.putInt(start + 4, checksum(payload));
+        segment.putInt(start, payload.length);
+        appendedBytes += recordSize;
+
+        if (isSyncOnWrite) {
+            segment.force(start, recordSize);
+        } else if (unsyncedStart < 0) {
+            unsyncedStart = start;
+        }
+    }
+
+    private void
+    openSegment(long number) throws IOException {
+        if (segmentChannel != null) {
+            // The mapping stays valid after the channel is closed, and is
+            // released once it is no longer referenced.
+            segmentChannel.close();
+        }
+        Path segmentFile = directory.resolve(String.format(SEGMENT_FORMAT, number));
+        segmentChannel = FileChannel.open(segmentFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // An existing segment keeps the size it was created with.
+        long size = Math.max(segmentChannel.size(), segmentSize);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        segmentNumber = number;
+        unsyncedStart = -1;
+        appendedBytesAtSegmentStart.putIfAbsent(number, appendedBytes);
+    }
+
+    private void
+    resetAppendedBytes() {
+        appendedBytes = 0;
+        appendedBytesAtSnapshot = 0;
+        appendedBytesAtSegmentStart.clear();
+    }
+
+    // Make the creation, renaming and deletion of files in the directory
+    // durable.
+    private void
+    syncDirectory() throws IOException {
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        }
+    }
+
+    // Apply the valid records of the current segment to the items, and
+    // return the position at which the valid records end.
+    private int
+    replaySegment(Map<String, ShortUrlMappingItem> items) throws IOException {
+        int position = 0;
+        while (segment.limit() - position >= RECORD_HEADER_SIZE) {
+            int length = segment.getInt(position);
+            if (length <= 0 || length > segment.limit() - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            segment.get(position + RECORD_HEADER_SIZE, payload);
+            if (checksum(payload) != segment.getInt(position + 4)) {
+                System.out.println("====> Ignoring a torn record at the end of log segment "
+                        + segmentNumber);
+                break;
+            }
+            apply(payload, items);
+            position += RECORD_HEADER_SIZE + length;
+        }
+        // Clear whatever a torn write may have left behind, so that it is not
+        // mistaken for the end of a later record.
+        for (int i = position; i < Math.min(position + RECORD_HEADER_SIZE, segment.limit()); i++) {
+            segment.put(i, (byte) 0);
+        }
+        return position;
+    }
+
+    private void
+    readSnapshot(Path snapshotFile, Map<String, ShortUrlMappingItem> items) throws IOException {
+        try (InputStream file = Files.newInputStream(snapshotFile);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a snapshot: " + snapshotFile);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] payload = new byte[in.readInt()];
+                int expectedChecksum = in.readInt();
+                in.readFully(payload);
+                if (checksum(payload) != expectedChecksum) {
+                    throw new IOException("Corrupt snapshot: " + snapshotFile);
+                }
+                apply(payload, items);
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated snapshot: " + snapshotFile, e);
+        }
+        System.out.printf("====> Loaded %d items from %s%n", items.size(), snapshotFile);
+    }
+
+    private static void
+    apply(byte[] payload, Map<String, ShortUrlMappingItem> items) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        String shortUrl = readString(in);
+        if (type == DELETE) {
+            items.remove(shortUrl);
+            return;
+        }
+        ShortUrlMappingItem item = new ShortUrlMappingItem();
+        item.setShortUrl(shortUrl);
+        item.setUsername(readString(in));
+        item.setLongUrl(readString(in));
+        item.setLongUrlHost(readString(in));
+        item.setVersion(readLong(in));
+        item.setExpiresAt(readLong(in));
+        item.setClickCount(readLong(in));
+        items.put(shortUrl, item);
+    }
+
+    private static byte[]
+    encodePut(ShortUrlMappingItem item) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(PUT);
+        writeString(out, item.getShortUrl());
+        writeString(out, item.getUsername());
+        writeString(out, item.getLongUrl());
+        writeString(out, item.getLongUrlHost());
+        writeLong(out, item.getVersion());
+        writeLong(out, item.getExpiresAt());
+        writeLong(out, item.getClickCount());
+        return bytes.toByteArray();
+    }
+
+    // Strings are written as a length (-1 for `null`) and UTF-8 bytes, since
+    // `writeUTF()` cannot handle long URLs of more than 64 KB.
+    private static void
+    writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String
+    readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void
+    writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long
+    readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static int
+    checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private Path
+    snapshotFile(long number) {
+        return directory.resolve(String.format(SNAPSHOT_FORMAT, number));
+    }
+
+    // The numbers of the files matching a pattern, in ascending order.
+    private List<Long>
+    fileNumbers(String glob) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        for (Path file : listFiles(glob)) {
+            long number = fileNumber(file);
+            if (number >= 0) {
+                numbers.add(number);
+            }
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    // Delete the files matching a pattern whose number is below a limit.
+    private void
+    deleteFiles(String glob, long belowNumber) throws IOException {
+        for (Path file : listFiles(glob)) {
+            if (fileNumber(file) < belowNumber) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    // The number in a file name such as `segment-00000000000000000042.log`,
+    // or -1 if there is none.
+    private static long
+    fileNumber(Path file) {
+        String name = file.getFileName().toString();
+        int numberStart = name.indexOf('-') + 1;
+        int numberEnd = name.indexOf('.');
+        if (numberStart <= 0 || numberEnd <= numberStart) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(numberStart, numberEnd));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private List<Path>
+    listFiles(String glob) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory, glob)) {
+            directoryStream.forEach(files::add);
+        }
+        return files;
+    }
+}
@@ -0,0 +1,434 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.ShortUrlAndLongUrl;
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.ShortUrlMappingFilter;
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.StatusAndShortUrlMappingArray;
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.entity.ShortUrlMapping;
+import com.richarddklein.shorturlcommonlibrary.service.status.ShortUrlStatus;
+import com.richarddklein.shorturlcommonlibrary.service.status.Status;
+import com.richarddklein.shorturlmappingservice.dto.StatusAndFoundAndMissingMappings;
+import com.richarddklein.shorturlmappingservice.dto.UsernameAndShortUrlArray;
+import com.richarddklein.shorturlmappingservice.entity.ShortUrlMappingItem;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import static com.richarddklein.shorturlcommonlibrary.service.status.ShortUrlStatus.*;
+
+/**
+ * An embedded implementation of the Short URL Mapping DAO interface, for
+ * on-premises and edge deployments that have no DynamoDB.
+ *
+ * <p>All mappings are held in memory, in a hash map keyed by short URL (plus
+ * a secondary map from each username to its short URLs), so every read is a
+ * local lookup. Every change is appended to a local, memory-mapped,
+ * append-only log before it becomes visible (see `ShortUrlMappingLog`). By
+ * default, the log is also synced to disk at that point, so a change is
+ * durable before it becomes visible. With
+ * `SHORT_URL_MAPPING_LOG_SYNC_ON_WRITE=false`, it is only synced once a
+ * second: the appended change survives a crash of the process (the memory
+ * mapping belongs to the operating system), but a crash of the machine can
+ * lose changes that were already visible, and acknowledged, during the last
+ * second. At startup, the in-memory maps are rebuilt from the newest
+ * snapshot and the log written since.</p>
+ *
+ * <p>The semantics match those of the DynamoDB implementation: creating a
+ * mapping fails if the short URL is taken by an unexpired mapping, every
+ * change of a long URL increments the mapping's version, and a delete
+ * removes exactly the mappings that match the filter. Since this is a single
+ * node, all changes are serialized by a lock, so a version check can never
+ * fail, and no retries are needed.</p>
+ *
+ * <p>In the background, the store compacts its log: once enough log has
+ * accumulated since the newest snapshot, a new snapshot of the live (and
+ * unexpired) mappings is written, and the log it covers is deleted. Unless
+ * each write is synced to disk, the log is synced periodically.</p>
+ */
+public class ShortUrlMappingLogDaoImpl implements ShortUrlMappingDao, AutoCloseable {
+    private static final Duration COMPACTION_CHECK_INTERVAL = Duration.ofSeconds(30);
+    private static final Duration SYNC_INTERVAL = Duration.ofSeconds(1);
+
+    private final ShortUrlMappingLog shortUrlMappingLog;
+    private final long compactionThreshold;
+    private final Map<String, ShortUrlMappingItem> items = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> shortUrlsByUsername = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private final AtomicBoolean isCompacting = new AtomicBoolean();
+    private final ScheduledExecutorService maintenanceExecutor;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    /**
+     * @param shortUrlMappingLog The log to persist the mappings to.
+     * @param compactionThreshold The number of bytes of log written since the
+     *                            newest snapshot that triggers a compaction.
+     * @param isSyncOnWrite Whether the log syncs each write to disk. If not,
+     *                      it is synced periodically in the background.
+     */
+    public ShortUrlMappingLogDaoImpl(
+            ShortUrlMappingLog shortUrlMappingLog,
+            long compactionThreshold,
+            boolean isSyncOnWrite) {
+
+        this.shortUrlMappingLog = shortUrlMappingLog;
+        this.compactionThreshold = compactionThreshold;
+
+        try {
+            shortUrlMappingLog.open(items);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the Short URL Mapping log", e);
+        }
+        for (ShortUrlMappingItem item : items.values()) {
+            indexUsername(item);
+        }
+        System.out.printf("====> Recovered %d Short URL Mapping items%n", items.size());
+
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "short-url-mapping-log-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenanceExecutor.scheduleWithFixedDelay(this::compactIfDue,
+                COMPACTION_CHECK_INTERVAL.toMillis(),
+                COMPACTION_CHECK_INTERVAL.toMillis(),
+                TimeUnit.MILLISECONDS);
+        if (!isSyncOnWrite) {
+            maintenanceExecutor.scheduleWithFixedDelay(shortUrlMappingLog::sync,
+                    SYNC_INTERVAL.toMillis(),
+                    SYNC_INTERVAL.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void
+    initializeShortUrlMappingRepository() {
+        synchronized (writeLock) {
+            try {
+                shortUrlMappingLog.clear();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            items.clear();
+            shortUrlsByUsername.clear();
+        }
+    }
+
+    @Override
+    public String
+    migrateShortUrlMappingIndexes() {
+        return "The embedded store has no indexes to migrate";
+    }
+
+    @Override
+    public Mono<ShortUrlStatus>
+    createMapping(ShortUrlMappingItem shortUrlMapping) {
+        return write(() -> {
+            ShortUrlMappingItem existingItem = items.get(shortUrlMapping.getShortUrl());
+            // A mapping that has expired no longer takes its short URL.
+            if (existingItem != null && !existingItem.isExpired(Instant.now())) {
+                return SHORT_URL_ALREADY_TAKEN;
+            }
+            ShortUrlMappingItem newItem = new ShortUrlMappingItem();
+            newItem.setUsername(shortUrlMapping.getUsername());
+            newItem.setShortUrl(shortUrlMapping.getShortUrl());
+            newItem.setLongUrl(shortUrlMapping.getLongUrl());
+            newItem.setLongUrlHost(LongUrlPattern.hostOf(shortUrlMapping.getLongUrl()));
+            newItem.setExpiresAt(shortUrlMapping.getExpiresAt());
+            newItem.setVersion(1L);
+            put(newItem);
+            return SUCCESS;
+        }, "createMapping");
+    }
+
+    @Override
+    public Mono<StatusAndShortUrlMappingArray>
+    getMappings(ShortUrlMappingFilter shortUrlMappingFilter) {
+        return Mono.fromSupplier(() -> new StatusAndShortUrlMappingArray(
+                new Status(SUCCESS),
+                new ArrayList<ShortUrlMapping>(findMappings(shortUrlMappingFilter))));
+    }
+
+    @Override
+    public Mono<StatusAndFoundAndMissingMappings>
+    getMappingsByShortUrls(UsernameAndShortUrlArray usernameAndShortUrlArray) {
+        return Mono.fromSupplier(() -> {
+            String desiredUsername = usernameAndShortUrlArray.getUsername();
+            Instant now = Instant.now();
+            List<ShortUrlMapping> foundMappings = new ArrayList<>();
+            List<String> missingShortUrls = new ArrayList<>();
+            for (String shortUrl : new HashSet<>(usernameAndShortUrlArray.getShortUrls())) {
+                ShortUrlMappingItem item = items.get(shortUrl);
+                if (item != null && !item.isExpired(now)
+                        && ("*".equals(desiredUsername) || desiredUsername.equals(item.getUsername()))) {
+                    foundMappings.add(copy(item));
+                } else {
+                    missingShortUrls.add(shortUrl);
+                }
+            }
+            return new StatusAndFoundAndMissingMappings(
+                    new Status(SUCCESS), foundMappings, missingShortUrls);
+        });
+    }
+
+    @Override
+    public Mono<ShortUrlStatus>
+    changeLongUrl(ShortUrlAndLongUrl shortUrlAndLongUrl) {
+        return write(() -> {
+            ShortUrlMappingItem existingItem = items.get(shortUrlAndLongUrl.getShortUrl());
+            if (existingItem == null || existingItem.isExpired(Instant.now())) {
+                return SHORT_URL_NOT_FOUND;
+            }
+            ShortUrlMappingItem updatedItem = copy(existingItem);
+            updatedItem.setLongUrl(shortUrlAndLongUrl.getLongUrl());
+            updatedItem.setLongUrlHost(LongUrlPattern.hostOf(shortUrlAndLongUrl.getLongUrl()));
+            updatedItem.setVersion(existingItem.getVersion() + 1);
+            put(updatedItem);
+            return SUCCESS;
+        }, "changeLongUrl");
+    }
+
+    @Override
+    public Mono<Status>
+    deleteMappings(ShortUrlMappingFilter shortUrlMappingFilter) {
+        return write(() -> {
+            for (ShortUrlMappingItem item : findMappings(shortUrlMappingFilter)) {
+                remove(item);
+            }
+            return SUCCESS;
+        }, "deleteMappings").map(Status::new);
+    }
+
+    @Override
+    public Mono<DeletionPage>
+    deleteMappingsPage(ShortUrlMappingFilter shortUrlMappingFilter, Map<String, String> position) {
+        // Every mapping is a local lookup away, so a single page covers them all.
+        return Mono.fromCallable(() -> {
+                synchronized (writeLock) {
+                    List<ShortUrlMappingItem> deletedMappings = findMappings(shortUrlMappingFilter);
+                    for (ShortUrlMappingItem item : deletedMappings) {
+                        remove(item);
+                    }
+                    return new DeletionPage(deletedMappings.size(), null);
+                }
+            })
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Void>
+    addClicks(String shortUrl, long clicks) {
+        return write(() -> {
+            ShortUrlMappingItem existingItem = items.get(shortUrl);
+            if (existingItem != null) {
+                // Like the atomic `ADD` in DynamoDB, this leaves the version alone.
+                ShortUrlMappingItem updatedItem = copy(existingItem);
+                updatedItem.setClickCount((existingItem.getClickCount() != null)
+                        ? existingItem.getClickCount() + clicks
+                        : clicks);
+                put(updatedItem);
+            }
+            return SUCCESS;
+        }, "addClicks").then();
+    }
+
+    /**
+     * Write a final snapshot, and close the log.
+     */
+    @Override
+    public void
+    close() throws IOException {
+        maintenanceExecutor.shutdown();
+        try {
+            maintenanceExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compact();
+        shortUrlMappingLog.close();
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private interface Write {
+        ShortUrlStatus apply() throws IOException;
+    }
+
+    // Perform a write under the write lock. Appending to the log may wait
+    // for the disk, so writes are performed off the caller's thread.
+    private Mono<ShortUrlStatus>
+    write(Write write, String operationName) {
+        return Mono.fromCallable(() -> {
+                synchronized (writeLock) {
+                    return write.apply();
+                }
+            })
+            .subscribeOn(Schedulers.boundedElastic())
+            .onErrorResume(IOException.class, e -> {
+                System.out.println("====> " + operationName + "() failed: " + e.getMessage());
+                return Mono.just(UNKNOWN_ERROR);
+            });
+    }
+
+    // The items are never modified once they are in the map; every change
+    // replaces an item with a changed copy, and readers get copies as well.
+    private void
+    put(ShortUrlMappingItem item) throws IOException {
+        shortUrlMappingLog.appendPut(item);
+        items.put(item.getShortUrl(), item);
+        indexUsername(item);
+    }
+
+    private void
+    remove(ShortUrlMappingItem item) throws IOException {
+        shortUrlMappingLog.appendDelete(item.getShortUrl());
+        items.remove(item.getShortUrl());
+        unindexUsername(item);
+    }
+
+    private void
+    indexUsername(ShortUrlMappingItem item) {
+        if (item.getUsername() != null) {
+            shortUrlsByUsername
+                .computeIfAbsent(item.getUsername(), username -> ConcurrentHashMap.newKeySet())
+                .add(item.getShortUrl());
+        }
+    }
+
+    private void
+    unindexUsername(ShortUrlMappingItem item) {
+        if (item.getUsername() != null) {
+            shortUrlsByUsername.computeIfPresent(item.getUsername(), (username, shortUrls) -> {
+                shortUrls.remove(item.getShortUrl());
+                return shortUrls.isEmpty() ? null : shortUrls;
+            });
+        }
+    }
+
+    // Find copies of the unexpired mappings that match a filter, looking only
+    // at the candidates that the filter allows: a specific short URL, the
+    // mappings of a specific user, or else all mappings.
+    private List<ShortUrlMappingItem>
+    findMappings(ShortUrlMappingFilter shortUrlMappingFilter) {
+        String desiredUsername = shortUrlMappingFilter.getUsername();
+        String desiredShortUrl = shortUrlMappingFilter.getShortUrl();
+        LongUrlPattern longUrlPattern = LongUrlPattern.parse(shortUrlMappingFilter);
+
+        Collection<ShortUrlMappingItem> candidateMappings;
+        if (!"*".equals(desiredShortUrl)) {
+            ShortUrlMappingItem item = items.get(desiredShortUrl);
+            candidateMappings = (item != null) ? List.of(item) : List.of();
+        } else if (!"*".equals(desiredUsername)) {
+            candidateMappings = new ArrayList<>();
+            for (String shortUrl : shortUrlsByUsername.getOrDefault(desiredUsername, Set.of())) {
+                ShortUrlMappingItem item = items.get(shortUrl);
+                if (item != null) {
+                    candidateMappings.add(item);
+                }
+            }
+        } else {
+            candidateMappings = items.values();
+        }
+
+        Instant now = Instant.now();
+        List<ShortUrlMappingItem> mappings = new ArrayList<>();
+        for (ShortUrlMappingItem item : candidateMappings) {
+            if (!item.isExpired(now)
+                    && ("*".equals(desiredUsername) || desiredUsername.equals(item.getUsername()))
+                    && ("*".equals(desiredShortUrl) || desiredShortUrl.equals(item.getShortUrl()))
+                    && longUrlPattern.matches(item.getLongUrl())) {
+                mappings.add(copy(item));
+            }
+        }
+        return mappings;
+    }
+
+    private void
+    compactIfDue() {
+        if (shortUrlMappingLog.getBytesSinceSnapshot() >= compactionThreshold) {
+            try {
+                compact();
+            } catch (IOException | RuntimeException e) {
+                // Try again at the next check; until then, the log just grows.
+                System.out.println("====> Compacting the Short URL Mapping log failed: "
+                        + e.getMessage());
+            }
+        }
+    }
+
+    // Snapshot the current state, which lets the log that precedes it be
+    // deleted. Only the switch to a new log segment, and the copying of the
+    // map, hold up writes; the snapshot itself is written concurrently.
+    //
+    // Expired mappings are dropped from memory at the same time. They need
+    // no delete records: they are left out of the snapshot, and the log that
+    // still holds them is deleted once the snapshot is written. Should that
+    // fail, they come back on recovery, still expired, until the next
+    // compaction.
+    private void
+    compact() throws IOException {
+        if (!isCompacting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long snapshotNumber;
+            List<ShortUrlMappingItem> snapshotItems;
+            int expiredCount = 0;
+            synchronized (writeLock) {
+                Instant now = Instant.now();
+                for (ShortUrlMappingItem item : List.copyOf(items.values())) {
+                    if (item.isExpired(now)) {
+                        items.remove(item.getShortUrl());
+                        unindexUsername(item);
+                        expiredCount++;
+                    }
+                }
+                snapshotNumber = shortUrlMappingLog.startNewSegment();
+                snapshotItems = List.copyOf(items.values());
+            }
+            shortUrlMappingLog.writeSnapshot(snapshotNumber, snapshotItems);
+            System.out.printf("====> Compacted the Short URL Mapping log into snapshot %d "
+                    + "(%d items, %d expired items dropped)%n",
+                    snapshotNumber, snapshotItems.size(), expiredCount);
+        } finally {
+            isCompacting.set(false);
+        }
+    }
+
+    private static ShortUrlMappingItem
+    copy(ShortUrlMappingItem item) {
+        ShortUrlMappingItem copy = new ShortUrlMappingItem();
+        copy.setUsername(item.getUsername());
+        copy.setShortUrl(item.getShortUrl());
+        copy.setLongUrl(item.getLongUrl());
+        copy.setLongUrlHost(item.getLongUrlHost());
+        copy.setVersion(item.getVersion());
+        copy.setExpiresAt(item.getExpiresAt());
+        copy.setClickCount(item.getClickCount());
+        return copy;
+    }
+}
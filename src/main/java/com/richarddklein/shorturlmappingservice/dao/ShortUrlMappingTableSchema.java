@@ -0,0 +1,79 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.entity.ShortUrlMapping;
+import com.richarddklein.shorturlmappingservice.entity.ShortUrlMappingItem;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.extensions.VersionedRecordExtension;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticTableSchema;
+
+/**
+ * A statically-defined table schema for the Short URL Mapping table.
+ *
+ * <p>`TableSchema.fromBean()` would derive the schema from the DynamoDB
+ * annotations on the `ShortUrlMapping` entity, but those annotations
+ * (which live in the common library) know only the original, keys-only
+ * GSIs, and not their full replacements (see `ShortUrlMappingIndexes`).
+ * Also, `fromBean()` introspects the class at runtime, and generates its
+ * getters and setters via `LambdaMetafactory`, neither of which works in
+ * a GraalVM native image. Therefore, this hand-written schema is used
+ * instead. It maps the table's items to `ShortUrlMappingItem`, which adds
+ * the attributes that only this service knows about.</p>
+ */
+public final class ShortUrlMappingTableSchema {
+    // The table's DynamoDB TTL attribute.
+    public static final String EXPIRES_AT = "expiresAt";
+    public static final String CLICK_COUNT = "clickCount";
+    public static final String LONG_URL_HOST = "longUrlHost";
+
+    private ShortUrlMappingTableSchema() {
+    }
+
+    public static TableSchema<ShortUrlMappingItem>
+    create() {
+        return StaticTableSchema.builder(ShortUrlMappingItem.class)
+            .newItemSupplier(ShortUrlMappingItem::new)
+            .addAttribute(String.class, attribute -> attribute
+                    .name("shortUrl")
+                    .getter(ShortUrlMapping::getShortUrl)
+                    .setter(ShortUrlMapping::setShortUrl)
+                    .tags(StaticAttributeTags.primaryPartitionKey()))
+            .addAttribute(String.class, attribute -> attribute
+                    .name("username")
+                    .getter(ShortUrlMapping::getUsername)
+                    .setter(ShortUrlMapping::setUsername)
+                    .tags(StaticAttributeTags.secondaryPartitionKey(
+                            ShortUrlMappingIndexes.USERNAME_INDEXES)))
+            .addAttribute(String.class, attribute -> attribute
+                    .name("longUrl")
+                    .getter(ShortUrlMapping::getLongUrl)
+                    .setter(ShortUrlMapping::setLongUrl)
+                    .tags(StaticAttributeTags.secondaryPartitionKey(
+                            ShortUrlMappingIndexes.LONG_URL_INDEXES)))
+            .addAttribute(Long.class, attribute -> attribute
+                    .name("version")
+                    .getter(ShortUrlMapping::getVersion)
+                    .setter(ShortUrlMapping::setVersion)
+                    .tags(VersionedRecordExtension.AttributeTags.versionAttribute()))
+            .addAttribute(Long.class, attribute -> attribute
+                    .name(EXPIRES_AT)
+                    .getter(ShortUrlMappingItem::getExpiresAt)
+                    .setter(ShortUrlMappingItem::setExpiresAt))
+            .addAttribute(Long.class, attribute -> attribute
+                    .name(CLICK_COUNT)
+                    .getter(ShortUrlMappingItem::getClickCount)
+                    .setter(ShortUrlMappingItem::setClickCount))
+            .addAttribute(String.class, attribute -> attribute
+                    .name(LONG_URL_HOST)
+                    .getter(ShortUrlMappingItem::getLongUrlHost)
+                    .setter(ShortUrlMappingItem::setLongUrlHost)
+                    .tags(StaticAttributeTags.secondaryPartitionKey(
+                            ShortUrlMappingIndexes.LONG_URL_HOST_INDEX)))
+            .build();
+    }
+}
@@ -0,0 +1,316 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.richarddklein.shorturlmappingservice.entity.ShortUrlMappingItem;
+
+/**
+ * An in-process view of the mappings of each recently active user, so that
+ * the most common listing, "all mappings of user X", can be answered without
+ * reading the table at all.
+ *
+ * <p>A user's view is loaded from the `username` index the first time the
+ * user's mappings are listed. From then on, it is kept up to date
+ * incrementally by the writes that this instance makes (`createMapping`,
+ * `changeLongUrl`, `deleteMappings`, and the flushes of click counts), and by
+ * every newer version of one of the user's items that this instance happens
+ * to read. Each incoming item is version-checked against the cached one, so
+ * a late, stale write can never replace a newer item. Adding clicks does not
+ * bump an item's version; since click counts only ever grow, a cached click
+ * count is simply raised to any larger count that comes along.</p>
+ *
+ * <p>Writes made by other instances of the service are not seen, so each
+ * view is also reloaded once it reaches its maximum age. Only the views of
+ * the most recently used users are kept.</p>
+ *
+ * <p>If the table's change feed is enabled (see `ShortUrlMappingChangeFeed`),
+ * the writes of other instances invalidate the affected views as well, so the
+ * maximum age can be long. The views are only trusted while the feed keeps
+ * up, though: if it has not caught up within the maximum lag (e.g. because
+ * the execution environment was frozen), listings read the table until it
+ * has.</p>
+ *
+ * <p>Every item is stored with its long URL decoded, and handed out as a copy,
+ * so callers are free to modify it. Items that expire while in a view are
+ * filtered out when the view is read.</p>
+ */
+public class UserMappingViews implements MappingChangeListener {
+    private final int maxUsers;
+    private final long maxAgeNanos;
+    private final boolean isFedByChangeFeed;
+    private final long maxChangeFeedLagNanos;
+    private final Map<String, UserMappingView> views;
+    private boolean hasCaughtUp;
+    private long caughtUpAtNanos;
+
+    // The mappings of a single user, keyed by short URL. The generation
+    // counts the writes that arrived while the view was being loaded.
+    private static class UserMappingView {
+        Map<String, ShortUrlMappingItem> mappings;
+        long loadedAtNanos;
+        long generation;
+    }
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    /**
+     * @param maxUsers The maximum number of views to keep.
+     * @param maxAge The age at which a view is reloaded.
+     * @param maxChangeFeedLag How long the views stay trusted after the
+     *                         change feed last caught up, or `null` if
+     *                         there is no change feed.
+     */
+    public UserMappingViews(int maxUsers, Duration maxAge, Duration maxChangeFeedLag) {
+        this.maxUsers = maxUsers;
+        this.maxAgeNanos = maxAge.toNanos();
+        this.isFedByChangeFeed = maxChangeFeedLag != null;
+        this.maxChangeFeedLagNanos = isFedByChangeFeed ? maxChangeFeedLag.toNanos() : 0;
+        // An access-ordered `LinkedHashMap` evicts the least recently used view.
+        this.views = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserMappingView> eldest) {
+                return size() > UserMappingViews.this.maxUsers;
+            }
+        };
+    }
+
+    /**
+     * Get the mappings of a user from the user's view.
+     *
+     * @param username The user.
+     * @return The user's unexpired mappings, or `null` if the user has no
+     * current view, in which case the caller should read the mappings from
+     * the table and `load()` them.
+     */
+    public synchronized List<ShortUrlMappingItem>
+    get(String username) {
+        UserMappingView view = views.get(username);
+        if (view == null || view.mappings == null) {
+            return null;
+        }
+        if (isFedByChangeFeed && (!hasCaughtUp
+                || System.nanoTime() - caughtUpAtNanos > maxChangeFeedLagNanos)) {
+            // The view may have missed the writes of other instances.
+            return null;
+        }
+        if (System.nanoTime() - view.loadedAtNanos > maxAgeNanos) {
+            views.remove(username);
+            return null;
+        }
+        Instant now = Instant.now();
+        return view.mappings.values().stream()
+                .filter(item -> !item.isExpired(now))
+                .map(UserMappingViews::copy)
+                .toList();
+    }
+
+    /**
+     * Announce that the mappings of a user are about to be read from the
+     * table, to be loaded into the user's view.
+     *
+     * @param username The user.
+     * @return A token to pass to `load()`.
+     */
+    public synchronized long
+    beginLoad(String username) {
+        UserMappingView view = views.computeIfAbsent(username, key -> new UserMappingView());
+        return view.generation;
+    }
+
+    /**
+     * Load the mappings of a user, as read from the table, into the user's
+     * view.
+     *
+     * <p>If any of the user's mappings was written while they were being
+     * read, the mappings read may already be stale, so they are discarded;
+     * the view will be loaded by a later listing instead.</p>
+     *
+     * @param username The user.
+     * @param mappings All of the user's mappings, with their long URLs decoded.
+     * @param token The token returned by `beginLoad()`.
+     */
+    public synchronized void
+    load(String username, List<ShortUrlMappingItem> mappings, long token) {
+        UserMappingView view = views.get(username);
+        if (view == null || view.generation != token) {
+            return;
+        }
+        view.mappings = new HashMap<>();
+        for (ShortUrlMappingItem mapping : mappings) {
+            view.mappings.put(mapping.getShortUrl(), copy(mapping));
+        }
+        view.loadedAtNanos = System.nanoTime();
+    }
+
+    /**
+     * Put a mapping into its user's view, unless the view already holds the
+     * same or a newer version of it.
+     *
+     * @param mapping The mapping, with its long URL decoded.
+     */
+    public synchronized void
+    put(ShortUrlMappingItem mapping) {
+        UserMappingView view = views.get(mapping.getUsername());
+        if (view == null) {
+            return;
+        }
+        view.generation++;
+        if (view.mappings == null) {
+            return;
+        }
+        ShortUrlMappingItem cachedMapping = view.mappings.get(mapping.getShortUrl());
+        if (cachedMapping == null || isNewer(mapping, cachedMapping)) {
+            view.mappings.put(mapping.getShortUrl(), copy(mapping));
+        }
+    }
+
+    /**
+     * Raise the click count of a mapping in its user's view, after clicks
+     * have been added to it.
+     *
+     * @param username The user.
+     * @param shortUrl The short URL of the mapping.
+     * @param version The version of the mapping, as of the addition.
+     * @param clickCount The click count of the mapping after the addition.
+     */
+    public synchronized void
+    putClickCount(String username, String shortUrl, Long version, Long clickCount) {
+        UserMappingView view = views.get(username);
+        if (view == null) {
+            return;
+        }
+        // A load in progress may have read the mapping before the addition.
+        view.generation++;
+        if (view.mappings == null) {
+            return;
+        }
+        ShortUrlMappingItem cachedMapping = view.mappings.get(shortUrl);
+        if (cachedMapping == null) {
+            return;
+        }
+        if (version == null || !version.equals(cachedMapping.getVersion())) {
+            // The cached mapping is of another version; rather than guess
+            // which is newer, reload the view.
+            views.remove(username);
+            return;
+        }
+        raiseClickCount(cachedMapping, clickCount);
+    }
+
+    /**
+     * Remove a mapping from its user's view.
+     *
+     * @param username The user.
+     * @param shortUrl The short URL of the mapping.
+     */
+    public synchronized void
+    remove(String username, String shortUrl) {
+        UserMappingView view = views.get(username);
+        if (view == null) {
+            return;
+        }
+        view.generation++;
+        if (view.mappings != null) {
+            view.mappings.remove(shortUrl);
+        }
+    }
+
+    /**
+     * Invalidate the view of the user whose mapping has changed, unless the
+     * view already reflects the change (typically because this instance
+     * made it).
+     *
+     * @param change The change.
+     */
+    @Override
+    public synchronized void
+    onMappingChange(MappingChange change) {
+        if (change.username() == null) {
+            // Without the owner, any view may be affected.
+            views.clear();
+            return;
+        }
+        UserMappingView view = views.get(change.username());
+        if (view == null) {
+            return;
+        }
+        if (view.mappings != null) {
+            ShortUrlMappingItem cachedMapping = view.mappings.get(change.shortUrl());
+            boolean isReflected = change.isRemoval()
+                    ? cachedMapping == null
+                    : cachedMapping != null
+                            && change.version() != null
+                            && Objects.equals(cachedMapping.getVersion(), change.version());
+            if (isReflected) {
+                // The same version may still have gained clicks.
+                if (!change.isRemoval()) {
+                    raiseClickCount(cachedMapping, change.clickCount());
+                }
+                return;
+            }
+        }
+        // Dropping the view also discards a load that is in progress.
+        views.remove(change.username());
+    }
+
+    @Override
+    public synchronized void
+    onChangesMissed() {
+        views.clear();
+    }
+
+    @Override
+    public synchronized void
+    onCaughtUp(long asOfNanos) {
+        hasCaughtUp = true;
+        caughtUpAtNanos = asOfNanos;
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private static boolean
+    isNewer(ShortUrlMappingItem mapping, ShortUrlMappingItem cachedMapping) {
+        if (mapping.getVersion() == null || cachedMapping.getVersion() == null) {
+            return true;
+        }
+        return mapping.getVersion() > cachedMapping.getVersion();
+    }
+
+    // Click counts only ever grow, so the larger count is the newer one,
+    // whatever order the changes arrive in.
+    private static void
+    raiseClickCount(ShortUrlMappingItem cachedMapping, Long clickCount) {
+        if (clickCount != null
+                && (cachedMapping.getClickCount() == null || clickCount > cachedMapping.getClickCount())) {
+            cachedMapping.setClickCount(clickCount);
+        }
+    }
+
+    private static ShortUrlMappingItem
+    copy(ShortUrlMappingItem mapping) {
+        ShortUrlMappingItem copy = new ShortUrlMappingItem();
+        copy.setUsername(mapping.getUsername());
+        copy.setShortUrl(mapping.getShortUrl());
+        copy.setLongUrl(mapping.getLongUrl());
+        copy.setVersion(mapping.getVersion());
+        copy.setExpiresAt(mapping.getExpiresAt());
+        copy.setClickCount(mapping.getClickCount());
+        copy.setLongUrlHost(mapping.getLongUrlHost());
+        return copy;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dto;
+
+/**
+ * A snapshot of the state of the concurrency limiter (see
+ * `ConcurrencyLimiter`), for monitoring.
+ */
+public class ConcurrencyLimiterState {
+    private int limit;
+    private int bulkLimit;
+    private int inFlight;
+    private double shortTermLatencyMillis;
+    private double longTermLatencyMillis;
+    private long admittedCount;
+    private long rejectedCount;
+
+    public ConcurrencyLimiterState() {
+    }
+
+    public ConcurrencyLimiterState(
+            int limit,
+            int bulkLimit,
+            int inFlight,
+            double shortTermLatencyMillis,
+            double longTermLatencyMillis,
+            long admittedCount,
+            long rejectedCount) {
+
+        this.limit = limit;
+        this.bulkLimit = bulkLimit;
+        this.inFlight = inFlight;
+        this.shortTermLatencyMillis = shortTermLatencyMillis;
+        this.longTermLatencyMillis = longTermLatencyMillis;
+        this.admittedCount = admittedCount;
+        this.rejectedCount = rejectedCount;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public int getBulkLimit() {
+        return bulkLimit;
+    }
+
+    public void setBulkLimit(int bulkLimit) {
+        this.bulkLimit = bulkLimit;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public void setInFlight(int inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    public double getShortTermLatencyMillis() {
+        return shortTermLatencyMillis;
+    }
+
+    public void setShortTermLatencyMillis(double shortTermLatencyMillis) {
+        this.shortTermLatencyMillis = shortTermLatencyMillis;
+    }
+
+    public double getLongTermLatencyMillis() {
+        return longTermLatencyMillis;
+    }
+
+    public void setLongTermLatencyMillis(double longTermLatencyMillis) {
+        this.longTermLatencyMillis = longTermLatencyMillis;
+    }
+
+    public long getAdmittedCount() {
+        return admittedCount;
+    }
+
+    public void setAdmittedCount(long admittedCount) {
+        this.admittedCount = admittedCount;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public void setRejectedCount(long rejectedCount) {
+        this.rejectedCount = rejectedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimiterState{" +
+                "limit=" + limit +
+                ", bulkLimit=" + bulkLimit +
+                ", inFlight=" + inFlight +
+                ", shortTermLatencyMillis=" + shortTermLatencyMillis +
+                ", longTermLatencyMillis=" + longTermLatencyMillis +
+                ", admittedCount=" + admittedCount +
+                ", rejectedCount=" + rejectedCount +
+                '}';
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dto;
+
+/**
+ * How the `longUrl` part of a Short URL Mapping filter is matched against
+ * the long URLs of the mappings (see `ShortUrlMappingMatchFilter`).
+ *
+ * <p>Whatever the match, a `longUrl` of `*` matches any long URL.</p>
+ */
+public enum LongUrlMatch {
+    // The long URL must equal the filter's `longUrl`.
+    EXACT,
+    // The host of the long URL must equal the host in the filter's
+    // `longUrl`, e.g. `example.com`. Hosts are compared case-insensitively,
+    // and without any `www.` prefix, port, or trailing dot. Subdomains do not
+    // match: `example.com` does not match `blog.example.com`.
+    DOMAIN,
+    // The long URL must start with the filter's `longUrl`, e.g.
+    // `https://example.com/promo/`.
+    PREFIX
+}
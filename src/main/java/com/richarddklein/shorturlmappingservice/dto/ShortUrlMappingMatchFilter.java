@@ -0,0 +1,61 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.ShortUrlMappingFilter;
+
+/**
+ * The request body of the `get-mappings`, `delete-mappings` and
+ * `delete-mappings-job` endpoints.
+ *
+ * <p>A Short URL Mapping filter, plus the optional `longUrlMatch`, which
+ * says how its `longUrl` is matched (see `LongUrlMatch`). Without it, the
+ * `longUrl` is an exact long URL (or `*`), just as for clients that send
+ * a plain `ShortUrlMappingFilter`.</p>
+ */
+public class ShortUrlMappingMatchFilter extends ShortUrlMappingFilter {
+    private final LongUrlMatch longUrlMatch;
+
+    @JsonCreator
+    public ShortUrlMappingMatchFilter(
+            @JsonProperty("username") String username,
+            @JsonProperty("shortUrl") String shortUrl,
+            @JsonProperty("longUrl") String longUrl,
+            @JsonProperty("longUrlMatch") LongUrlMatch longUrlMatch) {
+
+        super(username, shortUrl, longUrl);
+        this.longUrlMatch = (longUrlMatch != null) ? longUrlMatch : LongUrlMatch.EXACT;
+    }
+
+    public LongUrlMatch getLongUrlMatch() {
+        return longUrlMatch;
+    }
+
+    /**
+     * Get the way in which the `longUrl` of any filter is matched.
+     *
+     * @param shortUrlMappingFilter The filter.
+     * @return The filter's `longUrlMatch`, or `EXACT` for a plain filter.
+     */
+    public static LongUrlMatch
+    longUrlMatchOf(ShortUrlMappingFilter shortUrlMappingFilter) {
+        return (shortUrlMappingFilter instanceof ShortUrlMappingMatchFilter matchFilter)
+                ? matchFilter.getLongUrlMatch()
+                : LongUrlMatch.EXACT;
+    }
+
+    @Override
+    public String toString() {
+        return "ShortUrlMappingMatchFilter{" +
+                "username='" + getUsername() + '\'' +
+                ", shortUrl='" + getShortUrl() + '\'' +
+                ", longUrl='" + getLongUrl() + '\'' +
+                ", longUrlMatch=" + longUrlMatch +
+                '}';
+    }
+}
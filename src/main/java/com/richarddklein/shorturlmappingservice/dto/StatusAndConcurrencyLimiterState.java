@@ -0,0 +1,51 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dto;
+
+import com.richarddklein.shorturlcommonlibrary.service.status.Status;
+
+/**
+ * The response body of the `concurrency-limiter` endpoint.
+ */
+public class StatusAndConcurrencyLimiterState {
+    private Status status;
+    private ConcurrencyLimiterState concurrencyLimiterState;
+
+    public StatusAndConcurrencyLimiterState() {
+    }
+
+    public StatusAndConcurrencyLimiterState(
+            Status status,
+            ConcurrencyLimiterState concurrencyLimiterState) {
+
+        this.status = status;
+        this.concurrencyLimiterState = concurrencyLimiterState;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public ConcurrencyLimiterState getConcurrencyLimiterState() {
+        return concurrencyLimiterState;
+    }
+
+    public void setConcurrencyLimiterState(ConcurrencyLimiterState concurrencyLimiterState) {
+        this.concurrencyLimiterState = concurrencyLimiterState;
+    }
+
+    @Override
+    public String toString() {
+        return "StatusAndConcurrencyLimiterState{" +
+                "status=" + status +
+                ", concurrencyLimiterState=" + concurrencyLimiterState +
+                '}';
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dto;
+
+import java.util.List;
+
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.entity.ShortUrlMapping;
+import com.richarddklein.shorturlcommonlibrary.service.status.Status;
+
+/**
+ * The response body of the `multi-get-mappings` endpoint.
+ *
+ * <p>Contains the mappings that were found, and the requested short URLs
+ * for which no mapping (owned by the specified user) exists.</p>
+ */
+public class StatusAndFoundAndMissingMappings {
+    private Status status;
+    private List<ShortUrlMapping> foundMappings;
+    private List<String> missingShortUrls;
+
+    public StatusAndFoundAndMissingMappings() {
+    }
+
+    public StatusAndFoundAndMissingMappings(
+            Status status,
+            List<ShortUrlMapping> foundMappings,
+            List<String> missingShortUrls) {
+
+        this.status = status;
+        this.foundMappings = foundMappings;
+        this.missingShortUrls = missingShortUrls;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public List<ShortUrlMapping> getFoundMappings() {
+        return foundMappings;
+    }
+
+    public void setFoundMappings(List<ShortUrlMapping> foundMappings) {
+        this.foundMappings = foundMappings;
+    }
+
+    public List<String> getMissingShortUrls() {
+        return missingShortUrls;
+    }
+
+    public void setMissingShortUrls(List<String> missingShortUrls) {
+        this.missingShortUrls = missingShortUrls;
+    }
+
+    @Override
+    public String toString() {
+        return "StatusAndFoundAndMissingMappings{" +
+                "status=" + status +
+                ", foundMappings=" + foundMappings +
+                ", missingShortUrls=" + missingShortUrls +
+                '}';
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dto;
+
+import com.richarddklein.shorturlcommonlibrary.service.status.Status;
+import com.richarddklein.shorturlmappingservice.entity.MappingJobItem;
+
+/**
+ * The response body of the `delete-mappings-job` and `mapping-jobs`
+ * endpoints.
+ *
+ * <p>Contains the background job that was submitted or looked up,
+ * including its status and progress.</p>
+ */
+public class StatusAndMappingJob {
+    private Status status;
+    private MappingJobItem mappingJob;
+
+    public StatusAndMappingJob() {
+    }
+
+    public StatusAndMappingJob(Status status, MappingJobItem mappingJob) {
+        this.status = status;
+        this.mappingJob = mappingJob;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public MappingJobItem getMappingJob() {
+        return mappingJob;
+    }
+
+    public void setMappingJob(MappingJobItem mappingJob) {
+        this.mappingJob = mappingJob;
+    }
+
+    @Override
+    public String toString() {
+        return "StatusAndMappingJob{" +
+                "status=" + status +
+                ", mappingJob=" + mappingJob +
+                '}';
+    }
+}
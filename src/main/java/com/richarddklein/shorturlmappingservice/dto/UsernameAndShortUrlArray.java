@@ -0,0 +1,51 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dto;
+
+import java.util.List;
+
+/**
+ * The request body of the `multi-get-mappings` endpoint.
+ *
+ * <p>Specifies the short URLs whose mappings are to be retrieved, and the
+ * user who must own them (or `*` for any user).</p>
+ */
+public class UsernameAndShortUrlArray {
+    private String username;
+    private List<String> shortUrls;
+
+    public UsernameAndShortUrlArray() {
+    }
+
+    public UsernameAndShortUrlArray(String username, List<String> shortUrls) {
+        this.username = username;
+        this.shortUrls = shortUrls;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public List<String> getShortUrls() {
+        return shortUrls;
+    }
+
+    public void setShortUrls(List<String> shortUrls) {
+        this.shortUrls = shortUrls;
+    }
+
+    @Override
+    public String toString() {
+        return "UsernameAndShortUrlArray{" +
+                "username='" + username + '\'' +
+                ", shortUrls=" + shortUrls +
+                '}';
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+/**
+ * This package contains the Data Transfer Objects (DTOs) that are
+ * specific to the Short URL Mapping Service, i.e. that are not shared
+ * with other services via the common library.
+ */
+package com.richarddklein.shorturlmappingservice.dto;
@@ -0,0 +1,215 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.entity;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A background job, such as the deletion of all mappings that match a
+ * filter, as stored in the Mapping Job table.
+ *
+ * <p>A job is worked off page by page. After each page, the job records
+ * its progress: the number of mappings processed so far, and the position
+ * (the last evaluated key of the scan or query) at which the next page
+ * starts. A job that is interrupted can therefore be resumed, by any
+ * instance of the service, from its last checkpoint.</p>
+ *
+ * <p>The number of mappings processed is a lower bound. A page whose
+ * mappings were deleted, but whose checkpoint was never saved (because the
+ * instance lost its lease, or was interrupted), is redone from the previous
+ * position when the job is resumed; its mappings are gone by then, so they
+ * are never counted.</p>
+ *
+ * <p>The instance that works on a job holds a lease on it, which it renews
+ * with every checkpoint (`heartbeatAt`). A job whose lease has lapsed is
+ * up for grabs. Every write of the job is version-checked (optimistic
+ * locking), so exactly one instance wins the job, and an instance that
+ * has lost its lease finds out at its next checkpoint.</p>
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MappingJobItem {
+    public static final String DELETE_MAPPINGS = "deleteMappings";
+
+    public static final String PENDING = "PENDING";
+    public static final String RUNNING = "RUNNING";
+    public static final String SUCCEEDED = "SUCCEEDED";
+    public static final String FAILED = "FAILED";
+
+    private String jobId;
+    private String operation;
+    private String username;
+    private String shortUrl;
+    private String longUrl;
+    // The name of the filter's `LongUrlMatch`, or `null` for an exact match.
+    private String longUrlMatch;
+    private String status;
+    private Long processedCount;
+    private Map<String, String> position;
+    private String owner;
+    private Long heartbeatAt;
+    private Long createdAt;
+    private Long finishedAt;
+    private String message;
+    private Long version;
+
+    public MappingJobItem() {
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getShortUrl() {
+        return shortUrl;
+    }
+
+    public void setShortUrl(String shortUrl) {
+        this.shortUrl = shortUrl;
+    }
+
+    public String getLongUrl() {
+        return longUrl;
+    }
+
+    public void setLongUrl(String longUrl) {
+        this.longUrl = longUrl;
+    }
+
+    public String getLongUrlMatch() {
+        return longUrlMatch;
+    }
+
+    public void setLongUrlMatch(String longUrlMatch) {
+        this.longUrlMatch = longUrlMatch;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Long getProcessedCount() {
+        return processedCount;
+    }
+
+    public void setProcessedCount(Long processedCount) {
+        this.processedCount = processedCount;
+    }
+
+    @JsonIgnore
+    public Map<String, String> getPosition() {
+        return position;
+    }
+
+    public void setPosition(Map<String, String> position) {
+        this.position = position;
+    }
+
+    @JsonIgnore
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public Long getHeartbeatAt() {
+        return heartbeatAt;
+    }
+
+    public void setHeartbeatAt(Long heartbeatAt) {
+        this.heartbeatAt = heartbeatAt;
+    }
+
+    public Long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(Long finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    @JsonIgnore
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    /**
+     * Determine whether the job still has work to do.
+     *
+     * @return `true` if the job is pending or running.
+     */
+    @JsonIgnore
+    public boolean
+    isUnfinished() {
+        return PENDING.equals(status) || RUNNING.equals(status);
+    }
+
+    @Override
+    public String toString() {
+        return "MappingJobItem{" +
+                "jobId='" + jobId + '\'' +
+                ", operation='" + operation + '\'' +
+                ", username='" + username + '\'' +
+                ", shortUrl='" + shortUrl + '\'' +
+                ", longUrl='" + longUrl + '\'' +
+                ", longUrlMatch='" + longUrlMatch + '\'' +
+                ", status='" + status + '\'' +
+                ", processedCount=" + processedCount +
+                ", position=" + position +
+                ", owner='" + owner + '\'' +
+                ", heartbeatAt=" + heartbeatAt +
+                ", version=" + version +
+                '}';
+    }
+}
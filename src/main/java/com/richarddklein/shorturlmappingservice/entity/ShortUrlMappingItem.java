@@ -0,0 +1,96 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.entity;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.entity.ShortUrlMapping;
+
+/**
+ * A Short URL Mapping item, as stored in the Short URL Mapping table.
+ *
+ * <p>In addition to the attributes of the `ShortUrlMapping` entity that is
+ * shared with the other services, an item has attributes that only the
+ * Short URL Mapping Service knows about:</p>
+ *
+ * <ul>
+ *   <li>`expiresAt`: The time (in seconds since the epoch) at which the
+ *   mapping expires, or `null` if it never expires. This is the table's
+ *   DynamoDB TTL attribute, so DynamoDB deletes the item some time after
+ *   it expires. Until then, the service treats the item as nonexistent.</li>
+ *   <li>`clickCount`: The number of times the short URL has been resolved,
+ *   or `null` if it never has. It is only ever changed by atomic `ADD`s
+ *   (see `ClickCounter`), never by writing the whole item.</li>
+ *   <li>`longUrlHost`: The normalized host of the long URL, derived from
+ *   the long URL whenever it is written, so that the mappings for a host
+ *   can be found via an index (see `LongUrlPattern`). It is internal to the
+ *   table, and not part of the service's responses.</li>
+ * </ul>
+ */
+public class ShortUrlMappingItem extends ShortUrlMapping {
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long expiresAt;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long clickCount;
+
+    @JsonIgnore
+    private String longUrlHost;
+
+    public ShortUrlMappingItem() {
+    }
+
+    public Long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public Long getClickCount() {
+        return clickCount;
+    }
+
+    public void setClickCount(Long clickCount) {
+        this.clickCount = clickCount;
+    }
+
+    @JsonIgnore
+    public String getLongUrlHost() {
+        return longUrlHost;
+    }
+
+    public void setLongUrlHost(String longUrlHost) {
+        this.longUrlHost = longUrlHost;
+    }
+
+    /**
+     * Determine whether the mapping has expired.
+     *
+     * @param now The current time.
+     * @return `true` if the mapping has an expiry time, and it has passed.
+     */
+    public boolean
+    isExpired(Instant now) {
+        return expiresAt != null && expiresAt <= now.getEpochSecond();
+    }
+
+    @Override
+    public String toString() {
+        return "ShortUrlMappingItem{" +
+                "username='" + getUsername() + '\'' +
+                ", shortUrl='" + getShortUrl() + '\'' +
+                ", longUrl='" + getLongUrl() + '\'' +
+                ", version=" + getVersion() +
+                ", expiresAt=" + expiresAt +
+                ", clickCount=" + clickCount +
+                ", longUrlHost='" + longUrlHost + '\'' +
+                '}';
+    }
+}
@@ -8,6 +8,7 @@ package com.richarddklein.shorturlmappingservice.exception;
 import com.richarddklein.shorturlcommonlibrary.service.status.Status;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -40,6 +41,43 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(status, HttpStatus.NOT_FOUND);
     }
 
+    /**
+     * Handle the `ServiceUnavailableException` exception, which is thrown
+     * when the database is unavailable, or cannot answer before the
+     * request's deadline.
+     *
+     * @param e The `ServiceUnavailableException` exception that was thrown.
+     * @return An HTTP Response Entity containing an error message as well
+     * as the HTTP "Service Unavailable" error code (503), and a
+     * `Retry-After` header telling the client when to try again.
+     */
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<Status> handleServiceUnavailableException(
+            ServiceUnavailableException e) {
+        logger.warn("====> {}", e.getMessage());
+        Status status = new Status(UNKNOWN_ERROR, e.getMessage());
+        long retryAfterSeconds = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(status);
+    }
+
+    /**
+     * Handle the `InvalidRequestException` exception, which is thrown
+     * when a request is malformed.
+     *
+     * @param e The `InvalidRequestException` exception that was thrown.
+     * @return An HTTP Response Entity containing an error message as well
+     * as the HTTP "Bad Request" error code (400).
+     */
+    @ExceptionHandler(InvalidRequestException.class)
+    public ResponseEntity<Status> handleInvalidRequestException(
+            InvalidRequestException e) {
+        logger.warn("====> {}", e.getMessage());
+        Status status = new Status(UNKNOWN_ERROR, e.getMessage());
+        return new ResponseEntity<>(status, HttpStatus.BAD_REQUEST);
+    }
+
     /**
      * Handle all other exceptions.
      *
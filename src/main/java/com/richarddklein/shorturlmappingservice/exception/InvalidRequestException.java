@@ -0,0 +1,20 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.exception;
+
+/**
+ * Thrown when a request is malformed in a way that none of the statuses
+ * of `ShortUrlStatus` describes, e.g. a list of short URLs that is too
+ * long.
+ *
+ * <p>The client is told what is wrong with the request by the exception's
+ * message.</p>
+ */
+public class InvalidRequestException extends RuntimeException {
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+}
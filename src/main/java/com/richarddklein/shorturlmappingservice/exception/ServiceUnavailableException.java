@@ -0,0 +1,28 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.exception;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a request cannot be served because the database is
+ * unavailable (the circuit breaker is open), or because it could not
+ * answer before the request's deadline.
+ *
+ * <p>The client is told to retry after `retryAfter`.</p>
+ */
+public class ServiceUnavailableException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public ServiceUnavailableException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
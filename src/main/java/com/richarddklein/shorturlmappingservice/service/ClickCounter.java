@@ -0,0 +1,182 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.richarddklein.shorturlmappingservice.dao.ShortUrlMappingDao;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Count the clicks on (i.e. the resolutions of) each short URL, and
+ * periodically add them to the click counts stored in the table.
+ *
+ * <p>Writing each click to the table as it happens would cost a write per
+ * resolution, and would turn the item of a viral short URL into a hot
+ * partition. Instead, clicks are counted in memory, in a `LongAdder` per
+ * short URL (so concurrent clicks on the same short URL do not contend),
+ * and flushed at most once per flush interval, with one atomic `ADD` per
+ * short URL, however many clicks it got.</p>
+ *
+ * <p>When the service runs as a long-lived server, a background thread
+ * flushes the clicks (see `startPeriodicFlushing()`). A Lambda execution
+ * environment, on the other hand, is frozen between invocations, so a
+ * background thread cannot be relied upon to flush. Instead, the Lambda
+ * handler calls `flushIfDue()` at the start of each invocation, which
+ * starts a flush without waiting for it, so that the flush overlaps the
+ * invocation's own work rather than delaying its response. A flush that
+ * is still running when the invocation returns is frozen along with the
+ * execution environment, and finishes during a later invocation.</p>
+ *
+ * <p>Counts that could not be flushed are kept, and retried with the next
+ * flush. Counts that have not been flushed when the execution environment
+ * is shut down are lost, so the stored counts may fall slightly short of
+ * the actual counts.</p>
+ */
+public class ClickCounter implements AutoCloseable {
+    private static final int MAX_CONCURRENT_FLUSHES = 16;
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(5);
+
+    private final ShortUrlMappingDao shortUrlMappingDao;
+    private final Duration flushInterval;
+    private final Map<String, LongAdder> pendingClicks = new ConcurrentHashMap<>();
+    private final AtomicLong lastFlushNanos = new AtomicLong(System.nanoTime());
+    private final AtomicBoolean isFlushing = new AtomicBoolean();
+    private ScheduledExecutorService flushExecutor;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    public ClickCounter(ShortUrlMappingDao shortUrlMappingDao, Duration flushInterval) {
+        this.shortUrlMappingDao = shortUrlMappingDao;
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Count a click on a short URL.
+     *
+     * @param shortUrl The short URL.
+     */
+    public void
+    recordClick(String shortUrl) {
+        addClicks(shortUrl, 1);
+    }
+
+    /**
+     * Start a flush of the pending clicks, without waiting for it, if the
+     * flush interval has passed since the last flush.
+     */
+    public void
+    flushIfDue() {
+        if (System.nanoTime() - lastFlushNanos.get() < flushInterval.toNanos()) {
+            return;
+        }
+        // Any clicks that the flush fails to flush are retried with the next
+        // flush.
+        flush().subscribe(
+                null,
+                e -> System.out.println("====> Flushing click counts failed: " + e.getMessage()));
+    }
+
+    /**
+     * Flush the pending clicks from a background thread, once per flush
+     * interval, for as long as the process runs.
+     */
+    public synchronized void
+    startPeriodicFlushing() {
+        if (flushExecutor != null) {
+            return;
+        }
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "click-counter-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                flush().block();
+            } catch (RuntimeException e) {
+                System.out.println("====> Flushing click counts failed: " + e.getMessage());
+            }
+        }, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop flushing periodically, after a last flush of the pending clicks.
+     */
+    @Override
+    public synchronized void
+    close() {
+        if (flushExecutor == null) {
+            return;
+        }
+        // Let a flush that is in progress finish first.
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            flush().block(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            System.out.println("====> Flushing click counts failed: " + e.getMessage());
+        }
+        flushExecutor = null;
+    }
+
+    /**
+     * Add the pending clicks to the click counts stored in the table.
+     *
+     * @return A `Mono` that completes when the flush is complete.
+     */
+    public Mono<Void>
+    flush() {
+        if (!isFlushing.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        lastFlushNanos.set(System.nanoTime());
+
+        return Flux.fromIterable(pendingClicks.entrySet())
+            .flatMap(entry -> {
+                String shortUrl = entry.getKey();
+                long clicks = entry.getValue().sumThenReset();
+                if (clicks == 0) {
+                    // No clicks since the last flush, so stop tracking the
+                    // short URL. (A click that races with the removal is lost.)
+                    pendingClicks.remove(shortUrl, entry.getValue());
+                    return Mono.empty();
+                }
+                return shortUrlMappingDao.addClicks(shortUrl, clicks)
+                    .onErrorResume(e -> {
+                        // Keep the clicks, to be retried with the next flush.
+                        System.out.println("====> Flushing clicks on " + shortUrl
+                                + " failed: " + e.getMessage());
+                        addClicks(shortUrl, clicks);
+                        return Mono.empty();
+                    });
+            }, MAX_CONCURRENT_FLUSHES)
+            .then()
+            .doFinally(signalType -> isFlushing.set(false));
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private void
+    addClicks(String shortUrl, long clicks) {
+        pendingClicks.computeIfAbsent(shortUrl, key -> new LongAdder()).add(clicks);
+    }
+}
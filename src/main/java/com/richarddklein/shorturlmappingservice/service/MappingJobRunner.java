@@ -0,0 +1,262 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.ShortUrlMappingFilter;
+import com.richarddklein.shorturlmappingservice.controller.ConcurrencyLimiter;
+import com.richarddklein.shorturlmappingservice.controller.ConcurrencyLimiter.Priority;
+import com.richarddklein.shorturlmappingservice.dao.DeletionPage;
+import com.richarddklein.shorturlmappingservice.dao.MappingJobDao;
+import com.richarddklein.shorturlmappingservice.dao.ShortUrlMappingDao;
+import com.richarddklein.shorturlmappingservice.dto.LongUrlMatch;
+import com.richarddklein.shorturlmappingservice.dto.ShortUrlMappingMatchFilter;
+import com.richarddklein.shorturlmappingservice.entity.MappingJobItem;
+import com.richarddklein.shorturlmappingservice.exception.ServiceUnavailableException;
+import reactor.core.publisher.Mono;
+
+import static com.richarddklein.shorturlmappingservice.entity.MappingJobItem.*;
+
+/**
+ * Run long-running operations, such as the deletion of all mappings that
+ * match a broad filter, as background jobs.
+ *
+ * <p>Submitting a job records it in the Mapping Job table and returns at
+ * once; the job is then worked off, page by page, on a background thread.
+ * After each page, the job's progress and the position of the next page
+ * are saved as a checkpoint, which also renews this instance's lease on the
+ * job (see `MappingJobItem`).</p>
+ *
+ * <p>A Lambda execution environment is frozen between invocations, so a job
+ * only makes progress while the environment is serving requests, and its
+ * lease lapses while the environment is frozen. Therefore, looking up a job
+ * whose lease has lapsed resumes it from its last checkpoint, in whichever
+ * instance served the lookup. Clients that poll the status of a job thus
+ * keep it moving, and a job survives the loss of the instance that ran it.
+ * If the original instance thaws, its next checkpoint fails the version
+ * check, and it abandons the job.</p>
+ *
+ * <p>Each page of a job is a bulk operation, and runs under the bulk share
+ * of the concurrency limit (see `ConcurrencyLimiter`), whichever request
+ * started or resumed the job. A page that is shed is retried after a
+ * while, without counting as a failure of the job.</p>
+ */
+public class MappingJobRunner {
+    private static final Duration LEASE_DURATION = Duration.ofSeconds(30);
+    private static final int MAX_CONSECUTIVE_FAILURES = 5;
+    private static final Duration BASE_RETRY_BACKOFF = Duration.ofMillis(500);
+
+    private final ShortUrlMappingDao shortUrlMappingDao;
+    private final MappingJobDao mappingJobDao;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    // Identifies this instance as the owner of the jobs it runs.
+    private final String ownerId = UUID.randomUUID().toString();
+    // The jobs that have a thread in this instance, so that a job is never
+    // run twice in the same instance.
+    private final Set<String> runningJobIds = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "mapping-job-runner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    public MappingJobRunner(
+            ShortUrlMappingDao shortUrlMappingDao,
+            MappingJobDao mappingJobDao,
+            ConcurrencyLimiter concurrencyLimiter) {
+
+        this.shortUrlMappingDao = shortUrlMappingDao;
+        this.mappingJobDao = mappingJobDao;
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * Submit a job that deletes all mappings that match a filter.
+     *
+     * @param shortUrlMappingFilter The filter.
+     * @return The job, as submitted.
+     */
+    public Mono<MappingJobItem>
+    submitDeleteMappings(ShortUrlMappingFilter shortUrlMappingFilter) {
+        long now = Instant.now().toEpochMilli();
+
+        MappingJobItem mappingJob = new MappingJobItem();
+        mappingJob.setJobId(UUID.randomUUID().toString());
+        mappingJob.setOperation(DELETE_MAPPINGS);
+        mappingJob.setUsername(shortUrlMappingFilter.getUsername());
+        mappingJob.setShortUrl(shortUrlMappingFilter.getShortUrl());
+        mappingJob.setLongUrl(shortUrlMappingFilter.getLongUrl());
+        mappingJob.setLongUrlMatch(
+                ShortUrlMappingMatchFilter.longUrlMatchOf(shortUrlMappingFilter).name());
+        mappingJob.setStatus(PENDING);
+        mappingJob.setProcessedCount(0L);
+        mappingJob.setOwner(ownerId);
+        mappingJob.setHeartbeatAt(now);
+        mappingJob.setCreatedAt(now);
+
+        return mappingJobDao.createJob(mappingJob)
+            .then(Mono.fromSupplier(() -> {
+                start(mappingJob.getJobId());
+                return mappingJob;
+            }));
+    }
+
+    /**
+     * Look up a job, resuming it if it is unfinished and its lease has lapsed.
+     * The lookup itself is a point read; the pages of a resumed job run in
+     * the background, under the bulk share of the concurrency limit.
+     *
+     * @param jobId The ID of the job.
+     * @return The job, or an empty `Mono` if there is no such job.
+     */
+    public Mono<MappingJobItem>
+    getJob(String jobId) {
+        return mappingJobDao.getJob(jobId)
+            .doOnNext(mappingJob -> {
+                if (mappingJob.isUnfinished() && isLeaseLapsed(mappingJob)) {
+                    System.out.println("====> Resuming job " + jobId);
+                    start(jobId);
+                }
+            });
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private void
+    start(String jobId) {
+        if (runningJobIds.add(jobId)) {
+            executor.execute(() -> {
+                try {
+                    run(jobId);
+                } catch (RuntimeException e) {
+                    // The lease will lapse, and the next lookup will resume the job.
+                    System.out.println("====> Job " + jobId + " was interrupted: " + e.getMessage());
+                } finally {
+                    runningJobIds.remove(jobId);
+                }
+            });
+        }
+    }
+
+    // The job runs on its own thread, so it simply blocks on each call.
+    private void
+    run(String jobId) {
+        MappingJobItem mappingJob = claim(jobId);
+        if (mappingJob == null) {
+            return;
+        }
+        ShortUrlMappingFilter shortUrlMappingFilter = new ShortUrlMappingMatchFilter(
+                mappingJob.getUsername(),
+                mappingJob.getShortUrl(),
+                mappingJob.getLongUrl(),
+                (mappingJob.getLongUrlMatch() != null)
+                        ? LongUrlMatch.valueOf(mappingJob.getLongUrlMatch())
+                        : null);
+
+        int consecutiveFailures = 0;
+        while (mappingJob.isUnfinished()) {
+            Map<String, String> position = mappingJob.getPosition();
+            try {
+                DeletionPage page = concurrencyLimiter.limit(Priority.BULK, () ->
+                        shortUrlMappingDao.deleteMappingsPage(shortUrlMappingFilter, position))
+                    .block();
+                // The count is only saved by the checkpoint below. If that
+                // fails, the page is redone from the same position, and finds
+                // nothing left to delete; so `processedCount` is a lower bound
+                // (see `MappingJobItem`).
+                mappingJob.setProcessedCount(mappingJob.getProcessedCount() + page.deletedCount());
+                mappingJob.setPosition(page.nextPosition());
+                mappingJob.setMessage(null);
+                if (page.isLastPage()) {
+                    mappingJob.setStatus(SUCCEEDED);
+                    mappingJob.setFinishedAt(Instant.now().toEpochMilli());
+                }
+                consecutiveFailures = 0;
+            } catch (ServiceUnavailableException e) {
+                // The page was shed, or the database is unavailable. This is
+                // not the job's fault, so it just waits, and tries again.
+                System.out.println("====> Job " + jobId + " is waiting: " + e.getMessage());
+                mappingJob.setMessage(e.getMessage());
+                if (!sleep(e.getRetryAfter())) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                // The page is retried from the same position. Pages are
+                // idempotent, since deleted mappings are gone.
+                consecutiveFailures++;
+                System.out.println("====> Job " + jobId + " failed to process a page: " + e.getMessage());
+                mappingJob.setMessage(e.getMessage());
+                if (consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+                    mappingJob.setStatus(FAILED);
+                    mappingJob.setFinishedAt(Instant.now().toEpochMilli());
+                } else if (!sleep(BASE_RETRY_BACKOFF.multipliedBy(1L << (consecutiveFailures - 1)))) {
+                    return;
+                }
+            }
+
+            mappingJob = checkpoint(mappingJob);
+            if (mappingJob == null) {
+                System.out.println("====> Lost the lease on job " + jobId);
+                return;
+            }
+        }
+        System.out.println("====> Job " + jobId + " finished: " + mappingJob);
+    }
+
+    // Take over the job, if it is unfinished, and either already ours or
+    // abandoned. Returns the claimed job, or `null` if it was not claimed.
+    private MappingJobItem
+    claim(String jobId) {
+        MappingJobItem mappingJob = mappingJobDao.getJob(jobId).block();
+        if (mappingJob == null || !mappingJob.isUnfinished()
+                || !(ownerId.equals(mappingJob.getOwner()) || isLeaseLapsed(mappingJob))) {
+            return null;
+        }
+        mappingJob.setStatus(RUNNING);
+        mappingJob.setOwner(ownerId);
+        return checkpoint(mappingJob);
+    }
+
+    // Save the job, renewing the lease. Returns the saved job, or `null` if
+    // the job was saved by another instance since we last saved it.
+    private MappingJobItem
+    checkpoint(MappingJobItem mappingJob) {
+        mappingJob.setHeartbeatAt(Instant.now().toEpochMilli());
+        return mappingJobDao.saveJob(mappingJob).block();
+    }
+
+    private boolean
+    isLeaseLapsed(MappingJobItem mappingJob) {
+        return mappingJob.getHeartbeatAt() == null
+                || Instant.now().toEpochMilli() - mappingJob.getHeartbeatAt()
+                        > LEASE_DURATION.toMillis();
+    }
+
+    private boolean
+    sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
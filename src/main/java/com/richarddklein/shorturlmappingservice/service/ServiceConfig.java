@@ -5,7 +5,11 @@
 
 package com.richarddklein.shorturlmappingservice.service;
 
+import java.time.Duration;
+
 import com.richarddklein.shorturlcommonlibrary.environment.HostUtils;
+import com.richarddklein.shorturlmappingservice.controller.ConcurrencyLimiter;
+import com.richarddklein.shorturlmappingservice.dao.MappingJobDao;
 import com.richarddklein.shorturlmappingservice.dao.ShortUrlMappingDao;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
@@ -19,15 +23,55 @@ import org.springframework.context.annotation.Configuration;
  */
 @Configuration
 public class ServiceConfig {
+    // Optional environment variable that sets how often click counts are
+    // flushed to the table.
+    private static final String CLICK_COUNT_FLUSH_INTERVAL_SECONDS =
+            "CLICK_COUNT_FLUSH_INTERVAL_SECONDS";
+    private static final Duration DEFAULT_CLICK_COUNT_FLUSH_INTERVAL = Duration.ofSeconds(10);
+    // Set by AWS Lambda (and by `sam local`) in every execution environment.
+    private static final String AWS_LAMBDA_FUNCTION_NAME = "AWS_LAMBDA_FUNCTION_NAME";
+
     @Autowired
     ShortUrlMappingDao shortUrlMappingDao;
 
+    @Autowired
+    MappingJobDao mappingJobDao;
+
     @Autowired
     HostUtils hostUtils;
 
+    @Autowired
+    ConcurrencyLimiter concurrencyLimiter;
+
     @Bean
     public ShortUrlMappingService
     shortUrlMappingService() {
-        return new ShortUrlMappingServiceImpl(shortUrlMappingDao, hostUtils);
+        return new ShortUrlMappingServiceImpl(
+                shortUrlMappingDao,
+                hostUtils,
+                clickCounter(),
+                mappingJobDao,
+                mappingJobRunner());
+    }
+
+    @Bean
+    public ClickCounter
+    clickCounter() {
+        String flushInterval = System.getenv(CLICK_COUNT_FLUSH_INTERVAL_SECONDS);
+        ClickCounter clickCounter = new ClickCounter(shortUrlMappingDao,
+                (flushInterval == null || flushInterval.isBlank())
+                        ? DEFAULT_CLICK_COUNT_FLUSH_INTERVAL
+                        : Duration.ofSeconds(Long.parseLong(flushInterval)));
+        // On Lambda, the handler flushes instead (see `ClickCounter`).
+        if (System.getenv(AWS_LAMBDA_FUNCTION_NAME) == null) {
+            clickCounter.startPeriodicFlushing();
+        }
+        return clickCounter;
+    }
+
+    @Bean
+    public MappingJobRunner
+    mappingJobRunner() {
+        return new MappingJobRunner(shortUrlMappingDao, mappingJobDao, concurrencyLimiter);
     }
 }
@@ -6,24 +6,46 @@
 package com.richarddklein.shorturlmappingservice.service;
 
 import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.*;
-import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.entity.ShortUrlMapping;
 import com.richarddklein.shorturlcommonlibrary.service.status.ShortUrlStatus;
 import com.richarddklein.shorturlcommonlibrary.service.status.Status;
+import com.richarddklein.shorturlmappingservice.dto.StatusAndFoundAndMissingMappings;
+import com.richarddklein.shorturlmappingservice.dto.StatusAndMappingJob;
+import com.richarddklein.shorturlmappingservice.dto.UsernameAndShortUrlArray;
+import com.richarddklein.shorturlmappingservice.entity.MappingJobItem;
+import com.richarddklein.shorturlmappingservice.entity.ShortUrlMappingItem;
 import reactor.core.publisher.Mono;
 
 public interface ShortUrlMappingService {
     ShortUrlStatus
     initializeShortUrlMappingRepository();
 
+    Status
+    migrateShortUrlMappingIndexes();
+
+    // Fails with an `InvalidRequestException` if the mapping's `expiresAt`
+    // is not in the future, or is too large to be in seconds.
     Mono<ShortUrlStatus>
-    createMapping(ShortUrlMapping shortUrlMapping);
+    createMapping(ShortUrlMappingItem shortUrlMapping);
 
+    // A lookup of a specific short URL counts as a click on it if `isClick`.
     Mono<StatusAndShortUrlMappingArray>
-    getMappings(ShortUrlMappingFilter shortUrlMappingFilter);
+    getMappings(ShortUrlMappingFilter shortUrlMappingFilter, boolean isClick);
+
+    // Fails with an `InvalidRequestException` if more than
+    // `MAX_SHORT_URLS_PER_LOOKUP` short URLs are specified.
+    Mono<StatusAndFoundAndMissingMappings>
+    getMappingsByShortUrls(UsernameAndShortUrlArray usernameAndShortUrlArray);
 
     Mono<Status>
     changeLongUrl(ShortUrlAndLongUrl shortUrlAndLongUrl);
 
     Mono<Status>
     deleteMappings(ShortUrlMappingFilter shortUrlMappingFilter);
+
+    Mono<StatusAndMappingJob>
+    submitDeleteMappingsJob(ShortUrlMappingFilter shortUrlMappingFilter);
+
+    // Returns an empty `Mono` if there is no such job.
+    Mono<MappingJobItem>
+    getMappingJob(String jobId);
 }
@@ -5,12 +5,21 @@
 
 package com.richarddklein.shorturlmappingservice.service;
 
+import java.time.Instant;
+import java.util.List;
+
 import com.richarddklein.shorturlcommonlibrary.environment.HostUtils;
 import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.*;
-import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.entity.ShortUrlMapping;
 import com.richarddklein.shorturlcommonlibrary.service.status.ShortUrlStatus;
 import com.richarddklein.shorturlcommonlibrary.service.status.Status;
+import com.richarddklein.shorturlmappingservice.dao.MappingJobDao;
 import com.richarddklein.shorturlmappingservice.dao.ShortUrlMappingDao;
+import com.richarddklein.shorturlmappingservice.dto.StatusAndFoundAndMissingMappings;
+import com.richarddklein.shorturlmappingservice.dto.StatusAndMappingJob;
+import com.richarddklein.shorturlmappingservice.dto.UsernameAndShortUrlArray;
+import com.richarddklein.shorturlmappingservice.entity.MappingJobItem;
+import com.richarddklein.shorturlmappingservice.entity.ShortUrlMappingItem;
+import com.richarddklein.shorturlmappingservice.exception.InvalidRequestException;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
@@ -18,8 +27,20 @@ import static com.richarddklein.shorturlcommonlibrary.service.status.ShortUrlSta
 
 @Service
 public class ShortUrlMappingServiceImpl implements ShortUrlMappingService {
+    // The most short URLs that one lookup may ask for. Each lookup is served
+    // by a batch read of up to 100 short URLs per request, so this bounds
+    // the work (and the response size) of a single request.
+    static final int MAX_SHORT_URLS_PER_LOOKUP = 1000;
+    // `expiresAt` is in seconds since the epoch. A value above this one lies
+    // more than 3,000 years in the future, and is almost certainly a time
+    // in milliseconds by mistake.
+    private static final long MAX_EXPIRES_AT = 100_000_000_000L;
+
     private final ShortUrlMappingDao shortUrlMappingDao;
     private final HostUtils hostUtils;
+    private final ClickCounter clickCounter;
+    private final MappingJobDao mappingJobDao;
+    private final MappingJobRunner mappingJobRunner;
 
     // ------------------------------------------------------------------------
     // PUBLIC METHODS
@@ -27,10 +48,16 @@ public class ShortUrlMappingServiceImpl implements ShortUrlMappingService {
 
     public ShortUrlMappingServiceImpl(
             ShortUrlMappingDao shortUrlMappingDao,
-            HostUtils hostUtils) {
+            HostUtils hostUtils,
+            ClickCounter clickCounter,
+            MappingJobDao mappingJobDao,
+            MappingJobRunner mappingJobRunner) {
 
         this.shortUrlMappingDao = shortUrlMappingDao;
         this.hostUtils = hostUtils;
+        this.clickCounter = clickCounter;
+        this.mappingJobDao = mappingJobDao;
+        this.mappingJobRunner = mappingJobRunner;
     }
 
     // Initialization of the Short URL Mapping repository is performed rarely,
@@ -45,12 +72,28 @@ public class ShortUrlMappingServiceImpl implements ShortUrlMappingService {
         }
 
         shortUrlMappingDao.initializeShortUrlMappingRepository();
+        mappingJobDao.initializeMappingJobRepository();
         return SUCCESS;
     }
 
+    @Override
+    public Status
+    migrateShortUrlMappingIndexes() {
+        if (!hostUtils.isRunningLocally()) {
+            return new Status(NOT_ON_LOCAL_MACHINE);
+        }
+
+        // Tables created before background jobs existed lack the job table.
+        String progress = mappingJobDao.createMappingJobRepositoryIfMissing();
+        if (progress == null) {
+            progress = shortUrlMappingDao.migrateShortUrlMappingIndexes();
+        }
+        return new Status(SUCCESS, progress);
+    }
+
     @Override
     public Mono<ShortUrlStatus>
-    createMapping(ShortUrlMapping shortUrlMapping) {
+    createMapping(ShortUrlMappingItem shortUrlMapping) {
         String username = shortUrlMapping.getUsername();
         String shortUrl = shortUrlMapping.getShortUrl();
         String longUrl = shortUrlMapping.getLongUrl();
@@ -64,12 +107,23 @@ public class ShortUrlMappingServiceImpl implements ShortUrlMappingService {
         if (longUrl == null || longUrl.isBlank()) {
             return Mono.just(MISSING_LONG_URL);
         }
+        Long expiresAt = shortUrlMapping.getExpiresAt();
+        if (expiresAt != null && expiresAt > MAX_EXPIRES_AT) {
+            return Mono.error(new InvalidRequestException(String.format(
+                    "The expiration time %d is too large; it must be given "
+                            + "in seconds (not milliseconds) since the epoch",
+                    expiresAt)));
+        }
+        if (expiresAt != null && expiresAt <= Instant.now().getEpochSecond()) {
+            return Mono.error(new InvalidRequestException(String.format(
+                    "The expiration time %d is not in the future", expiresAt)));
+        }
         return shortUrlMappingDao.createMapping(shortUrlMapping);
     }
 
     @Override
     public Mono<StatusAndShortUrlMappingArray>
-    getMappings(ShortUrlMappingFilter shortUrlMappingFilter) {
+    getMappings(ShortUrlMappingFilter shortUrlMappingFilter, boolean isClick) {
         String username = shortUrlMappingFilter.getUsername();
         String shortUrl = shortUrlMappingFilter.getShortUrl();
         String longUrl = shortUrlMappingFilter.getLongUrl();
@@ -89,7 +143,43 @@ public class ShortUrlMappingServiceImpl implements ShortUrlMappingService {
                     new Status(MISSING_LONG_URL),
                     null));
         }
-        return shortUrlMappingDao.getMappings(shortUrlMappingFilter);
+        return shortUrlMappingDao.getMappings(shortUrlMappingFilter)
+            .doOnNext(statusAndShortUrlMappingArray -> {
+                // Looking up a specific short URL means resolving it, which
+                // counts as a click on it.
+                if (isClick && !"*".equals(shortUrl)
+                        && statusAndShortUrlMappingArray.getStatus().getStatus() == SUCCESS) {
+                    statusAndShortUrlMappingArray.getShortUrlMappings().forEach(shortUrlMapping ->
+                            clickCounter.recordClick(shortUrlMapping.getShortUrl()));
+                }
+            });
+    }
+
+    @Override
+    public Mono<StatusAndFoundAndMissingMappings>
+    getMappingsByShortUrls(UsernameAndShortUrlArray usernameAndShortUrlArray) {
+        String username = usernameAndShortUrlArray.getUsername();
+        List<String> shortUrls = usernameAndShortUrlArray.getShortUrls();
+
+        if (username == null || username.isBlank()) {
+            return Mono.just(new StatusAndFoundAndMissingMappings(
+                    new Status(MISSING_USERNAME),
+                    null,
+                    null));
+        }
+        if (shortUrls == null || shortUrls.isEmpty()
+                || shortUrls.stream().anyMatch(shortUrl -> shortUrl == null || shortUrl.isBlank())) {
+            return Mono.just(new StatusAndFoundAndMissingMappings(
+                    new Status(MISSING_SHORT_URL),
+                    null,
+                    null));
+        }
+        if (shortUrls.size() > MAX_SHORT_URLS_PER_LOOKUP) {
+            return Mono.error(new InvalidRequestException(String.format(
+                    "At most %d short URLs may be specified, not %d",
+                    MAX_SHORT_URLS_PER_LOOKUP, shortUrls.size())));
+        }
+        return shortUrlMappingDao.getMappingsByShortUrls(usernameAndShortUrlArray);
     }
 
     @Override
@@ -126,6 +216,32 @@ public class ShortUrlMappingServiceImpl implements ShortUrlMappingService {
         return shortUrlMappingDao.deleteMappings(shortUrlMappingFilter);
     }
 
+    @Override
+    public Mono<StatusAndMappingJob>
+    submitDeleteMappingsJob(ShortUrlMappingFilter shortUrlMappingFilter) {
+        String username = shortUrlMappingFilter.getUsername();
+        String shortUrl = shortUrlMappingFilter.getShortUrl();
+        String longUrl = shortUrlMappingFilter.getLongUrl();
+
+        if (username == null || username.isBlank()) {
+            return Mono.just(new StatusAndMappingJob(new Status(MISSING_USERNAME), null));
+        }
+        if (shortUrl == null || shortUrl.isBlank()) {
+            return Mono.just(new StatusAndMappingJob(new Status(MISSING_SHORT_URL), null));
+        }
+        if (longUrl == null || longUrl.isBlank()) {
+            return Mono.just(new StatusAndMappingJob(new Status(MISSING_LONG_URL), null));
+        }
+        return mappingJobRunner.submitDeleteMappings(shortUrlMappingFilter)
+            .map(mappingJob -> new StatusAndMappingJob(new Status(SUCCESS), mappingJob));
+    }
+
+    @Override
+    public Mono<MappingJobItem>
+    getMappingJob(String jobId) {
+        return mappingJobRunner.getJob(jobId);
+    }
+
     // ------------------------------------------------------------------------
     // PRIVATE METHODS
     // ------------------------------------------------------------------------
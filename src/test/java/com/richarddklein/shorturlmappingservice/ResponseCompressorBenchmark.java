@@ -0,0 +1,155 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.dto.StatusAndShortUrlMappingArray;
+import com.richarddklein.shorturlcommonlibrary.service.shorturlmappingservice.entity.ShortUrlMapping;
+import com.richarddklein.shorturlcommonlibrary.service.status.ShortUrlStatus;
+import com.richarddklein.shorturlcommonlibrary.service.status.Status;
+
+/**
+ * Compare the gzip levels that `ResponseCompressor` could use, on
+ * synthetic `get-mappings` response bodies of various sizes.
+ *
+ * <p>For each body size and level, this reports the size of the body on
+ * the wire (gzipped and base64-encoded), and the median CPU time of a
+ * compression, measured on the current thread after a warm-up. Each
+ * configuration is warmed up on its own, right before it is measured, so
+ * that the order of the configurations does not skew the results.</p>
+ *
+ * <p>Run it via `./run_benchmark.sh ResponseCompressorBenchmark`.</p>
+ */
+public class ResponseCompressorBenchmark {
+    private static final int[] MAPPING_COUNTS = {10, 100, 1000, 5000};
+    private static final int[] LEVELS = {Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION};
+    private static final long WARM_UP_NANOS = 2_000_000_000L;
+    private static final long MEASUREMENT_NANOS = 3_000_000_000L;
+
+    private static final String[] HOSTS = {
+            "www.example.com", "blog.example.org", "docs.example.net",
+            "shop.example.com", "news.example.co.uk"};
+    private static final String[] WORDS = {
+            "release", "notes", "getting", "started", "pricing", "summer",
+            "sale", "how", "to", "configure", "your", "account", "guide",
+            "annual", "report", "weekly", "digest", "product", "launch"};
+
+    // Keeps the JIT from eliminating the compressions.
+    private static long sink;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    public static void
+    main(String[] args) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        System.out.printf("%8s %10s   %-22s   %-22s%n", "mappings", "raw bytes",
+                "level 1 wire / CPU", "level 6 wire / CPU");
+        for (int mappingCount : MAPPING_COUNTS) {
+            byte[] body = objectMapper.writeValueAsBytes(syntheticResponse(mappingCount));
+            StringBuilder line = new StringBuilder(String.format("%8d %10d",
+                    mappingCount, body.length));
+            for (int level : LEVELS) {
+                int wireSize = Base64.getEncoder().encode(gzip(body, level)).length;
+                double medianMicros = medianCpuMicros(threadMXBean, body, level);
+                line.append(String.format("   %8d / %8.1f us", wireSize, medianMicros));
+            }
+            System.out.println(line);
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private static double
+    medianCpuMicros(ThreadMXBean threadMXBean, byte[] body, int level) throws IOException {
+        long warmUpEnd = System.nanoTime() + WARM_UP_NANOS;
+        while (System.nanoTime() < warmUpEnd) {
+            sink += gzip(body, level).length;
+        }
+
+        List<Long> cpuNanos = new ArrayList<>();
+        long measurementEnd = System.nanoTime() + MEASUREMENT_NANOS;
+        while (System.nanoTime() < measurementEnd) {
+            long startCpuNanos = threadMXBean.getCurrentThreadCpuTime();
+            sink += gzip(body, level).length;
+            cpuNanos.add(threadMXBean.getCurrentThreadCpuTime() - startCpuNanos);
+        }
+
+        long[] sorted = cpuNanos.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1000.0;
+    }
+
+    // The same stream setup as `ResponseCompressor`, with a variable level.
+    private static byte[]
+    gzip(byte[] data, int level) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4);
+        try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed, 8192) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzipStream.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    // A deterministic `get-mappings` response, with long URLs in the shape of
+    // typical marketing and documentation links.
+    private static StatusAndShortUrlMappingArray
+    syntheticResponse(int mappingCount) {
+        Random random = new Random(mappingCount);
+        List<ShortUrlMapping> shortUrlMappings = new ArrayList<>();
+        for (int i = 0; i < mappingCount; i++) {
+            String slug = WORDS[random.nextInt(WORDS.length)] + "-"
+                    + WORDS[random.nextInt(WORDS.length)] + "-"
+                    + WORDS[random.nextInt(WORDS.length)];
+            String longUrl = "https://" + HOSTS[random.nextInt(HOSTS.length)]
+                    + "/" + (2020 + random.nextInt(5)) + "/" + (1 + random.nextInt(12))
+                    + "/" + slug + "-" + random.nextInt(100_000)
+                    + "?utm_source=newsletter&utm_medium=email&utm_campaign="
+                    + WORDS[random.nextInt(WORDS.length)] + random.nextInt(100);
+
+            ShortUrlMapping shortUrlMapping = new ShortUrlMapping();
+            shortUrlMapping.setUsername("user" + random.nextInt(50));
+            shortUrlMapping.setShortUrl(randomShortUrl(random));
+            shortUrlMapping.setLongUrl(longUrl);
+            shortUrlMapping.setVersion((long) (1 + random.nextInt(5)));
+            shortUrlMappings.add(shortUrlMapping);
+        }
+        return new StatusAndShortUrlMappingArray(
+                new Status(ShortUrlStatus.SUCCESS, "Mappings successfully retrieved"),
+                shortUrlMappings);
+    }
+
+    private static String
+    randomShortUrl(Random random) {
+        String alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+        StringBuilder shortUrl = new StringBuilder();
+        for (int i = 0; i < 7; i++) {
+            shortUrl.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return shortUrl.toString();
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import javax.crypto.SecretKey;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Compare the cost of authenticating a bearer token on the Lambda fast
+ * path with and without `VerifiedTokenCache`.
+ *
+ * <p>The uncached path is what `FastPathAuthenticator` does for a token it
+ * has not seen before: hash the token, then parse and verify it (Base64
+ * decoding, JSON parsing, and HMAC-SHA256 verification), and cache the
+ * verdict. The cached path is what it does for a token it has seen: hash
+ * the token, and look up the verdict. The token is a typical HS256 token,
+ * signed with a random key.</p>
+ *
+ * <p>Each path is warmed up on its own, and then timed in batches; the
+ * median time per operation over all batches is reported.</p>
+ *
+ * <p>Run it via `./run_benchmark.sh VerifiedTokenCacheBenchmark`.</p>
+ */
+public class VerifiedTokenCacheBenchmark {
+    private static final int BATCH_SIZE = 1000;
+    private static final long WARM_UP_NANOS = 2_000_000_000L;
+    private static final long MEASUREMENT_NANOS = 3_000_000_000L;
+
+    // Keeps the JIT from eliminating the operations.
+    private static long sink;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    public static void
+    main(String[] args) {
+        byte[] keyBytes = new byte[32];
+        new Random(42).nextBytes(keyBytes);
+        SecretKey secretKey = Keys.hmacShaKeyFor(keyBytes);
+        JwtParser jwtParser = Jwts.parser().verifyWith(secretKey).build();
+        String token = Jwts.builder()
+                .subject("benchmark-user")
+                .issuedAt(new Date())
+                .expiration(new Date(System.currentTimeMillis() + Duration.ofHours(1).toMillis()))
+                .signWith(secretKey)
+                .compact();
+
+        VerifiedTokenCache verifiedTokenCache = new VerifiedTokenCache(
+                10_000, 1_000, Duration.ofMinutes(15), Duration.ofMinutes(1));
+
+        Runnable uncached = () -> {
+            String key = VerifiedTokenCache.keyOf(token);
+            long nowMillis = System.currentTimeMillis();
+            Claims claims = jwtParser.parseSignedClaims(token).getPayload();
+            verifiedTokenCache.putVerified(
+                    key, claims.getSubject(), claims.getExpiration(), nowMillis);
+            sink += claims.getSubject().length();
+        };
+        Runnable cached = () -> {
+            String key = VerifiedTokenCache.keyOf(token);
+            VerifiedTokenCache.Verdict verdict =
+                    verifiedTokenCache.get(key, System.currentTimeMillis());
+            sink += verdict.subject().length();
+        };
+
+        System.out.printf("token of %d characters%n", token.length());
+        System.out.printf("%-10s %10.2f us/op%n", "uncached", medianMicrosPerOp(uncached));
+        System.out.printf("%-10s %10.2f us/op%n", "cached", medianMicrosPerOp(cached));
+        System.out.println("(sink " + sink + ")");
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private static double
+    medianMicrosPerOp(Runnable operation) {
+        long warmUpEnd = System.nanoTime() + WARM_UP_NANOS;
+        while (System.nanoTime() < warmUpEnd) {
+            operation.run();
+        }
+
+        List<Long> batchNanos = new ArrayList<>();
+        long measurementEnd = System.nanoTime() + MEASUREMENT_NANOS;
+        while (System.nanoTime() < measurementEnd) {
+            long startNanos = System.nanoTime();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                operation.run();
+            }
+            batchNanos.add(System.nanoTime() - startNanos);
+        }
+
+        long[] sorted = batchNanos.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1000.0 / BATCH_SIZE;
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the races between a read of the primary replica and its hedge,
+ * in virtual time. A new reader has not yet seen enough reads to estimate
+ * the primary's latency, so it hedges after the default delay of 50 ms.
+ */
+public class HedgedReaderTest {
+    private static final String PRIMARY = "primary";
+    private static final String SECONDARY = "secondary";
+
+    private final HedgedReader<String> hedgedReader = new HedgedReader<>(PRIMARY, SECONDARY, 95.0);
+    private final AtomicInteger secondaryReadCount = new AtomicInteger();
+    private final AtomicBoolean isPrimaryReadCancelled = new AtomicBoolean();
+    private final AtomicBoolean isSecondaryReadCancelled = new AtomicBoolean();
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    @Test
+    public void
+    primaryWinsBeforeTheHedgeDelay() {
+        Function<String, Mono<String>> read = replicaReads(
+                answer(PRIMARY, Duration.ofMillis(10)),
+                answer(SECONDARY, Duration.ofMillis(10)));
+
+        StepVerifier.withVirtualTime(() -> hedgedReader.read(read))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(10))
+                .expectNext(PRIMARY)
+                .verifyComplete();
+        assertEquals(0, secondaryReadCount.get());
+    }
+
+    @Test
+    public void
+    hedgeWinsAndCancelsThePrimary() {
+        Function<String, Mono<String>> read = replicaReads(
+                answer(PRIMARY, Duration.ofSeconds(1)),
+                answer(SECONDARY, Duration.ofMillis(10)));
+
+        StepVerifier.withVirtualTime(() -> hedgedReader.read(read))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(60))
+                .expectNext(SECONDARY)
+                .verifyComplete();
+        assertEquals(1, secondaryReadCount.get());
+        assertTrue(isPrimaryReadCancelled.get());
+    }
+
+    @Test
+    public void
+    primaryErrorSurfacesImmediately() {
+        // The primary fails while the hedge is still running.
+        Function<String, Mono<String>> read = replicaReads(
+                fail(PRIMARY, Duration.ofMillis(100)),
+                answer(SECONDARY, Duration.ofSeconds(1)));
+
+        StepVerifier.withVirtualTime(() -> hedgedReader.read(read))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(100))
+                .expectErrorMessage(PRIMARY + " failed")
+                .verify();
+        assertEquals(1, secondaryReadCount.get());
+        assertTrue(isSecondaryReadCancelled.get());
+    }
+
+    @Test
+    public void
+    secondaryErrorIsIgnored() {
+        Function<String, Mono<String>> read = replicaReads(
+                answer(PRIMARY, Duration.ofMillis(200)),
+                fail(SECONDARY, Duration.ofMillis(10)));
+
+        StepVerifier.withVirtualTime(() -> hedgedReader.read(read))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(200))
+                .expectNext(PRIMARY)
+                .verifyComplete();
+        assertEquals(1, secondaryReadCount.get());
+    }
+
+    @Test
+    public void
+    overBudgetCompletesWithThePrimarysResult() {
+        Function<String, Mono<String>> read = replicaReads(
+                answer(PRIMARY, Duration.ofMillis(200)),
+                answer(SECONDARY, Duration.ofMillis(10)));
+
+        // The first read is hedged, which uses up the budget for the next
+        // nine reads. So the second read just waits for the primary.
+        StepVerifier.withVirtualTime(() -> Flux.concat(
+                        hedgedReader.read(read),
+                        hedgedReader.read(read)))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(60))
+                .expectNext(SECONDARY)
+                .expectNoEvent(Duration.ofMillis(200))
+                .expectNext(PRIMARY)
+                .verifyComplete();
+        assertEquals(1, secondaryReadCount.get());
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    // The read operation handed to the reader: it performs `primaryRead` or
+    // `secondaryRead`, depending on the replica it is given, and keeps track
+    // of the reads of the secondary and of the cancelled reads.
+    private Function<String, Mono<String>>
+    replicaReads(Mono<String> primaryRead, Mono<String> secondaryRead) {
+        return replica -> PRIMARY.equals(replica)
+                ? primaryRead.doOnCancel(() -> isPrimaryReadCancelled.set(true))
+                : secondaryRead
+                    .doOnSubscribe(subscription -> secondaryReadCount.incrementAndGet())
+                    .doOnCancel(() -> isSecondaryReadCancelled.set(true));
+    }
+
+    // The delays are deferred, so that they are created on the virtual
+    // clock of the `StepVerifier`.
+    private static Mono<String>
+    answer(String replica, Duration latency) {
+        return Mono.defer(() -> Mono.delay(latency).thenReturn(replica));
+    }
+
+    private static Mono<String>
+    fail(String replica, Duration latency) {
+        return Mono.defer(() -> Mono.delay(latency)
+                .then(Mono.error(new IllegalStateException(replica + " failed"))));
+    }
+}
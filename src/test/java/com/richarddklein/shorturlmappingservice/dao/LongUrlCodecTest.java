@@ -0,0 +1,131 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round-trip tests of the long URL codec: every form in which a long URL
+ * may be stored must decode to the long URL, whether or not encoding is
+ * enabled, and stored values that merely look encoded must be returned as
+ * they are.
+ */
+public class LongUrlCodecTest {
+    private static final List<String> EXTRA_PREFIXES = List.of("https://www.example.com/");
+
+    private final LongUrlCodec encodingCodec = new LongUrlCodec(true, EXTRA_PREFIXES);
+    private final LongUrlCodec rawCodec = new LongUrlCodec(false, EXTRA_PREFIXES);
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    @Test
+    public void
+    roundTripsDictionaryForm() {
+        String longUrl = "https://www.example.org/page";
+        assertEquals("\u0001Aexample.org/page", encodingCodec.encode(longUrl));
+        assertRoundTrips(longUrl);
+
+        // The longest matching prefix wins, including the extra ones.
+        String exampleComUrl = "https://www.example.com/page";
+        assertEquals("\u0001Epage", encodingCodec.encode(exampleComUrl));
+        assertRoundTrips(exampleComUrl);
+    }
+
+    @Test
+    public void
+    roundTripsCompressedForm() {
+        String longUrl = "https://www.example.org/search?" + "tag=shorturl&".repeat(40);
+        String encoded = encodingCodec.encode(longUrl);
+        assertEquals('\u0002', encoded.charAt(0));
+        assertTrue(encoded.length() < longUrl.length() / 2);
+        assertRoundTrips(longUrl);
+    }
+
+    @Test
+    public void
+    leavesShortUrlsUncompressed() {
+        String longUrl = "https://www.example.org/search?" + "tag=shorturl&".repeat(10);
+        assertEquals('\u0001', encodingCodec.encode(longUrl).charAt(0));
+        assertRoundTrips(longUrl);
+    }
+
+    @Test
+    public void
+    roundTripsEscapedForm() {
+        for (String longUrl : List.of("\u0001Anot/encoded", "\u0002Zm9v", "\u0003x")) {
+            assertEquals('\u0003' + longUrl, encodingCodec.encode(longUrl));
+            assertEquals('\u0003' + longUrl, rawCodec.encode(longUrl));
+            assertRoundTrips(longUrl);
+        }
+    }
+
+    @Test
+    public void
+    roundTripsRawForm() {
+        for (String longUrl : List.of("https://www.example.org/page", "ftp://example.org/file", "")) {
+            assertEquals(longUrl, rawCodec.encode(longUrl));
+            assertRoundTrips(longUrl);
+        }
+        assertNull(encodingCodec.encode(null));
+        assertNull(encodingCodec.decode(null));
+    }
+
+    @Test
+    public void
+    returnsLegacyValuesThatDoNotDecodeAsTheyAre() {
+        // Stored raw before marker characters were escaped.
+        for (String storedLongUrl : List.of(
+                "\u0001",               // no prefix
+                "\u0001Zpage",          // unknown prefix
+                "\u0002",               // nothing compressed
+                "\u0002not base64!",    // not base64
+                "\u0002abcd")) {        // base64, but not a complete deflate stream
+            assertEquals(storedLongUrl, encodingCodec.decode(storedLongUrl));
+            assertEquals(storedLongUrl, rawCodec.decode(storedLongUrl));
+        }
+    }
+
+    @Test
+    public void
+    listsStoredFormsWithTheFormForNewItemsFirst() {
+        String longUrl = "https://www.example.org/page";
+        String encoded = "\u0001Aexample.org/page";
+        assertEquals(List.of(encoded, longUrl), encodingCodec.storedForms(longUrl));
+        assertEquals(List.of(longUrl, encoded), rawCodec.storedForms(longUrl));
+    }
+
+    @Test
+    public void
+    listsOneStoredFormIfEncodingChangesNothing() {
+        assertEquals(List.of("ftp://example.org/file"),
+                encodingCodec.storedForms("ftp://example.org/file"));
+        assertEquals(List.of("\u0003\u0001Apage"), encodingCodec.storedForms("\u0001Apage"));
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    // Whatever the codec stores, and every other form the long URL may have
+    // been stored in, decodes to the long URL, whether or not encoding is
+    // enabled.
+    private void
+    assertRoundTrips(String longUrl) {
+        assertEquals(longUrl, encodingCodec.decode(encodingCodec.encode(longUrl)));
+        assertEquals(longUrl, rawCodec.decode(rawCodec.encode(longUrl)));
+        for (String storedForm : encodingCodec.storedForms(longUrl)) {
+            assertEquals(longUrl, encodingCodec.decode(storedForm));
+            assertEquals(longUrl, rawCodec.decode(storedForm));
+        }
+        assertEquals(encodingCodec.storedForms(longUrl).reversed(), rawCodec.storedForms(longUrl));
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the change feed against a stubbed stream: what it publishes,
+ * when it tells the listeners that they have caught up, and how it starts
+ * over when it has lost its position.
+ */
+public class ShortUrlMappingChangeFeedTest {
+    private static final String STREAM_ARN = "arn:stream";
+
+    private final StubStreams streams = new StubStreams();
+    private final RecordingListener listener = new RecordingListener();
+    private int describeTableCount;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    @Test
+    public void
+    publishesChangesAndCatchesUp() {
+        streams.shards.add(openShard("shard-1"));
+        streams.records.add(List.of(
+                record(OperationType.MODIFY, "abc1234",
+                        Map.of("username", s("alice"), "version", n(3), "clickCount", n(42)), null),
+                record(OperationType.REMOVE, "def5678",
+                        null, Map.of("username", s("bob"), "version", n(1)))));
+
+        ShortUrlMappingChangeFeed feed = newFeed();
+        feed.poll();
+
+        assertEquals(List.of(
+                new MappingChange("abc1234", "alice", 3L, 42L, false),
+                new MappingChange("def5678", "bob", 1L, null, true)),
+                listener.changes);
+        assertEquals(1, listener.caughtUpCount);
+        // An open shard that existed at the start is read from its latest record.
+        assertEquals(List.of("shard-1:LATEST"), streams.iteratorRequests);
+    }
+
+    @Test
+    public void
+    isNotCaughtUpWhileAShardHasMoreRecords() {
+        streams.shards.add(openShard("shard-1"));
+        List<software.amazon.awssdk.services.dynamodb.model.Record> fullBatch = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            fullBatch.add(record(OperationType.INSERT, "s" + i,
+                    Map.of("username", s("alice"), "version", n(1)), null));
+        }
+        streams.records.add(fullBatch);
+        streams.records.add(List.of());
+
+        ShortUrlMappingChangeFeed feed = newFeed();
+        feed.poll();
+        assertEquals(1000, listener.changes.size());
+        assertEquals(0, listener.caughtUpCount);
+
+        feed.poll();
+        assertEquals(1, listener.caughtUpCount);
+    }
+
+    @Test
+    public void
+    skipsShardsClosedBeforeStartAndReadsNewShardsFromTheirBeginning() {
+        streams.shards.add(closedShard("shard-0"));
+        streams.shards.add(openShard("shard-1"));
+        streams.records.add(List.of());
+
+        ShortUrlMappingChangeFeed feed = newFeed();
+        feed.poll();
+        assertEquals(List.of("shard-1:LATEST"), streams.iteratorRequests);
+        assertEquals(1, listener.caughtUpCount);
+
+        // A shard that appears later is read from its beginning, and a closed
+        // shard that has been read completely counts as caught up.
+        streams.shards.add(openShard("shard-2"));
+        streams.isLastBatchOfShard = true;
+        streams.records.add(List.of());
+        streams.records.add(List.of());
+        forceShardRefresh(feed);
+        feed.poll();
+        assertEquals(List.of("shard-1:LATEST", "shard-2:TRIM_HORIZON"), streams.iteratorRequests);
+        assertEquals(2, listener.caughtUpCount);
+    }
+
+    @Test
+    public void
+    startsOverWhenItsPositionIsLost() {
+        streams.shards.add(openShard("shard-1"));
+        streams.failure = ExpiredIteratorException.builder().message("expired").build();
+
+        ShortUrlMappingChangeFeed feed = newFeed();
+        feed.poll();
+        assertEquals(1, listener.missedCount);
+        assertEquals(0, listener.caughtUpCount);
+
+        // The next round looks up the stream again, and starts from the
+        // latest records.
+        streams.failure = null;
+        streams.records.add(List.of());
+        feed.poll();
+        assertEquals(2, describeTableCount);
+        assertEquals(List.of("shard-1:LATEST", "shard-1:LATEST"), streams.iteratorRequests);
+        assertEquals(1, listener.caughtUpCount);
+    }
+
+    @Test
+    public void
+    isNotCaughtUpWhenTheStreamCannotBeRead() {
+        streams.shards.add(openShard("shard-1"));
+        streams.failure = DynamoDbException.builder().message("unavailable").build();
+
+        ShortUrlMappingChangeFeed feed = newFeed();
+        feed.poll();
+        assertEquals(0, listener.caughtUpCount);
+        // Nothing was lost, so the caches need not be dropped.
+        assertEquals(0, listener.missedCount);
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private ShortUrlMappingChangeFeed
+    newFeed() {
+        DynamoDbClient dynamoDbClient = new DynamoDbClient() {
+            @Override
+            public DescribeTableResponse describeTable(DescribeTableRequest request) {
+                describeTableCount++;
+                return DescribeTableResponse.builder()
+                        .table(TableDescription.builder().latestStreamArn(STREAM_ARN).build())
+                        .build();
+            }
+
+            @Override
+            public String serviceName() {
+                return "dynamodb";
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        return new ShortUrlMappingChangeFeed(dynamoDbClient, streams, "table",
+                List.of(listener), Duration.ofSeconds(1));
+    }
+
+    // The feed looks for new shards only every 30 s. Rather than wait that
+    // long, backdate its last look.
+    private void
+    forceShardRefresh(ShortUrlMappingChangeFeed feed) {
+        try {
+            java.lang.reflect.Field field =
+                    ShortUrlMappingChangeFeed.class.getDeclaredField("shardsRefreshedAtNanos");
+            field.setAccessible(true);
+            field.setLong(feed, System.nanoTime() - Duration.ofMinutes(1).toNanos());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Shard
+    openShard(String shardId) {
+        return Shard.builder()
+                .shardId(shardId)
+                .sequenceNumberRange(SequenceNumberRange.builder().startingSequenceNumber("1").build())
+                .build();
+    }
+
+    private static Shard
+    closedShard(String shardId) {
+        return Shard.builder()
+                .shardId(shardId)
+                .sequenceNumberRange(SequenceNumberRange.builder()
+                        .startingSequenceNumber("1")
+                        .endingSequenceNumber("2")
+                        .build())
+                .build();
+    }
+
+    private static software.amazon.awssdk.services.dynamodb.model.Record
+    record(OperationType operation, String shortUrl,
+           Map<String, AttributeValue> newImage, Map<String, AttributeValue> oldImage) {
+        return software.amazon.awssdk.services.dynamodb.model.Record.builder()
+                .eventName(operation)
+                .dynamodb(StreamRecord.builder()
+                        .keys(Map.of("shortUrl", s(shortUrl)))
+                        .newImage(newImage)
+                        .oldImage(oldImage)
+                        .build())
+                .build();
+    }
+
+    private static AttributeValue
+    s(String value) {
+        return AttributeValue.fromS(value);
+    }
+
+    private static AttributeValue
+    n(long value) {
+        return AttributeValue.fromN(String.valueOf(value));
+    }
+
+    // A stream whose shards and records are set up by each test. Every call
+    // of `getRecords()` returns the next batch of records.
+    private static class StubStreams implements DynamoDbStreamsClient {
+        final List<Shard> shards = new ArrayList<>();
+        final Deque<List<software.amazon.awssdk.services.dynamodb.model.Record>> records =
+                new ArrayDeque<>();
+        final List<String> iteratorRequests = new ArrayList<>();
+        RuntimeException failure;
+        boolean isLastBatchOfShard;
+
+        @Override
+        public DescribeStreamResponse describeStream(DescribeStreamRequest request) {
+            return DescribeStreamResponse.builder()
+                    .streamDescription(StreamDescription.builder()
+                            .streamArn(request.streamArn())
+                            .shards(shards)
+                            .build())
+                    .build();
+        }
+
+        @Override
+        public GetShardIteratorResponse getShardIterator(GetShardIteratorRequest request) {
+            iteratorRequests.add(request.shardId() + ":" + request.shardIteratorTypeAsString());
+            return GetShardIteratorResponse.builder()
+                    .shardIterator(request.shardId() + "/0")
+                    .build();
+        }
+
+        @Override
+        public GetRecordsResponse getRecords(GetRecordsRequest request) {
+            if (failure != null) {
+                throw failure;
+            }
+            List<software.amazon.awssdk.services.dynamodb.model.Record> batch = records.isEmpty()
+                    ? Collections.emptyList()
+                    : records.poll();
+            boolean isLast = isLastBatchOfShard && request.shardIterator().startsWith("shard-2");
+            return GetRecordsResponse.builder()
+                    .records(batch)
+                    .nextShardIterator(isLast ? null : request.shardIterator())
+                    .build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "streams.dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class RecordingListener implements MappingChangeListener {
+        final List<MappingChange> changes = new ArrayList<>();
+        int missedCount;
+        int caughtUpCount;
+
+        @Override
+        public void onMappingChange(MappingChange change) {
+            changes.add(change);
+        }
+
+        @Override
+        public void onChangesMissed() {
+            missedCount++;
+        }
+
+        @Override
+        public void onCaughtUp(long asOfNanos) {
+            caughtUpCount++;
+        }
+    }
+}
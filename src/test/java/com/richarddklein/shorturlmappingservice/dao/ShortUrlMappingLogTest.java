@@ -0,0 +1,199 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import com.richarddklein.shorturlmappingservice.entity.ShortUrlMappingItem;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Recovery tests of the embedded store's log: whatever was appended and
+ * snapshotted must come back on the next `open()`, and a torn record at the
+ * end of the log must be dropped without losing the records before it.
+ */
+public class ShortUrlMappingLogTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    @Test
+    public void
+    recoversAppendedRecords() throws IOException {
+        Map<String, ShortUrlMappingItem> items = new HashMap<>();
+        try (ShortUrlMappingLog log = openLog(items)) {
+            log.appendPut(item("abc1234", "https://example.com/a", 1L));
+            log.appendPut(item("def5678", "https://example.com/b", 1L));
+            log.appendPut(item("abc1234", "https://example.com/c", 2L));
+            log.appendDelete("def5678");
+            log.appendPut(item("ghi9012", "https://example.org/été", 1L));
+        }
+
+        Map<String, ShortUrlMappingItem> recovered = new HashMap<>();
+        try (ShortUrlMappingLog log = openLog(recovered)) {
+            assertEquals(
+                    Map.of("abc1234", item("abc1234", "https://example.com/c", 2L).toString(),
+                           "ghi9012", item("ghi9012", "https://example.org/été", 1L).toString()),
+                    asStrings(recovered));
+        }
+    }
+
+    @Test
+    public void
+    recoversFromSnapshotPlusLaterSegments() throws IOException {
+        Map<String, ShortUrlMappingItem> items = new HashMap<>();
+        try (ShortUrlMappingLog log = openLog(items)) {
+            ShortUrlMappingItem first = item("abc1234", "https://example.com/a", 1L);
+            log.appendPut(first);
+            long snapshotNumber = log.startNewSegment();
+            ShortUrlMappingItem second = item("def5678", "https://example.com/b", 1L);
+            log.appendPut(second);
+            log.writeSnapshot(snapshotNumber, List.of(first));
+            log.appendDelete("abc1234");
+        }
+        assertEquals(List.of("segment-00000000000000000001.log", "snapshot-00000000000000000001.snap"),
+                fileNames());
+
+        Map<String, ShortUrlMappingItem> recovered = new HashMap<>();
+        try (ShortUrlMappingLog log = openLog(recovered)) {
+            assertEquals(Map.of("def5678", item("def5678", "https://example.com/b", 1L).toString()),
+                    asStrings(recovered));
+        }
+    }
+
+    @Test
+    public void
+    truncatesTornTail() throws IOException {
+        Map<String, ShortUrlMappingItem> items = new HashMap<>();
+        long validBytes;
+        try (ShortUrlMappingLog log = openLog(items)) {
+            log.appendPut(item("abc1234", "https://example.com/a", 1L));
+            log.appendPut(item("def5678", "https://example.com/b", 1L));
+            validBytes = log.getBytesSinceSnapshot();
+            log.appendPut(item("ghi9012", "https://example.com/c", 1L));
+        }
+
+        // Simulate a write that was torn by a crash: the header of the last
+        // record made it to disk, but part of its payload did not.
+        Path segmentFile = directory.resolve("segment-00000000000000000000.log");
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 0}), validBytes + 12);
+        }
+
+        Map<String, ShortUrlMappingItem> recovered = new HashMap<>();
+        try (ShortUrlMappingLog log = openLog(recovered)) {
+            assertEquals(List.of("abc1234", "def5678"), recovered.keySet().stream().sorted().toList());
+            assertEquals(validBytes, log.getBytesSinceSnapshot());
+            // New records go where the torn one was.
+            log.appendPut(item("jkl3456", "https://example.com/d", 1L));
+        }
+
+        Map<String, ShortUrlMappingItem> recoveredAgain = new HashMap<>();
+        try (ShortUrlMappingLog log = openLog(recoveredAgain)) {
+            assertEquals(List.of("abc1234", "def5678", "jkl3456"),
+                    recoveredAgain.keySet().stream().sorted().toList());
+        }
+    }
+
+    @Test
+    public void
+    countsSegmentsStartedWhileSnapshotting() throws IOException {
+        Map<String, ShortUrlMappingItem> items = new HashMap<>();
+        try (ShortUrlMappingLog log = openLog(items)) {
+            log.appendPut(item("abc1234", "https://example.com/a", 1L));
+            long snapshotNumber = log.startNewSegment();
+            long bytesBeforeSnapshot = log.getBytesSinceSnapshot();
+            // Enough records to roll over to further segments before the
+            // snapshot is written.
+            for (int i = 0; i < 100; i++) {
+                log.appendPut(item(String.format("x%06d", i), "https://example.com/" + i, 1L));
+            }
+            long bytesAfterSnapshotStart = log.getBytesSinceSnapshot() - bytesBeforeSnapshot;
+            assertTrue(bytesAfterSnapshotStart > SEGMENT_SIZE);
+
+            log.writeSnapshot(snapshotNumber, List.of(item("abc1234", "https://example.com/a", 1L)));
+            assertEquals(bytesAfterSnapshotStart, log.getBytesSinceSnapshot());
+        }
+
+        Map<String, ShortUrlMappingItem> recovered = new HashMap<>();
+        try (ShortUrlMappingLog log = openLog(recovered)) {
+            assertEquals(101, recovered.size());
+        }
+    }
+
+    @Test
+    public void
+    discardsSnapshotBegunBeforeClear() throws IOException {
+        Map<String, ShortUrlMappingItem> items = new HashMap<>();
+        try (ShortUrlMappingLog log = openLog(items)) {
+            log.appendPut(item("abc1234", "https://example.com/a", 1L));
+            long snapshotNumber = log.startNewSegment();
+            log.clear();
+            log.appendPut(item("def5678", "https://example.com/b", 1L));
+            log.writeSnapshot(snapshotNumber, List.of(item("abc1234", "https://example.com/a", 1L)));
+        }
+
+        Map<String, ShortUrlMappingItem> recovered = new HashMap<>();
+        try (ShortUrlMappingLog log = openLog(recovered)) {
+            assertEquals(List.of("def5678"), List.copyOf(recovered.keySet()));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private ShortUrlMappingLog
+    openLog(Map<String, ShortUrlMappingItem> items) throws IOException {
+        ShortUrlMappingLog log = new ShortUrlMappingLog(directory, SEGMENT_SIZE, true);
+        log.open(items);
+        return log;
+    }
+
+    private List<String>
+    fileNames() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    private static ShortUrlMappingItem
+    item(String shortUrl, String longUrl, Long version) {
+        ShortUrlMappingItem item = new ShortUrlMappingItem();
+        item.setUsername("user");
+        item.setShortUrl(shortUrl);
+        item.setLongUrl(longUrl);
+        item.setLongUrlHost(LongUrlPattern.hostOf(longUrl));
+        item.setVersion(version);
+        return item;
+    }
+
+    // `ShortUrlMappingItem` has no `equals()`, so items are compared by their
+    // string forms, which include every attribute.
+    private static Map<String, String>
+    asStrings(Map<String, ShortUrlMappingItem> items) {
+        Map<String, String> strings = new HashMap<>();
+        items.forEach((shortUrl, item) -> strings.put(shortUrl, item.toString()));
+        return strings;
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * The Short URL Mapping Service
+ * (Copyright 2024 by Richard Klein)
+ */
+
+package com.richarddklein.shorturlmappingservice.dao;
+
+import java.time.Duration;
+import java.util.List;
+
+import com.richarddklein.shorturlmappingservice.entity.ShortUrlMappingItem;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the per-user mapping views that are fed by the change feed:
+ * which changes count as already reflected in a view, which ones drop it,
+ * and when a view is trusted at all.
+ */
+public class UserMappingViewsTest {
+    private UserMappingViews userMappingViews;
+
+    // ------------------------------------------------------------------------
+    // PUBLIC METHODS
+    // ------------------------------------------------------------------------
+
+    @BeforeEach
+    public void
+    loadView() {
+        userMappingViews = new UserMappingViews(10, Duration.ofMinutes(15), Duration.ofMinutes(1));
+        long token = userMappingViews.beginLoad("alice");
+        userMappingViews.load("alice", List.of(
+                item("abc1234", 2L, 5L),
+                item("def5678", 1L, null)), token);
+        userMappingViews.onCaughtUp(System.nanoTime());
+    }
+
+    @Test
+    public void
+    isNotTrustedUntilTheFeedHasCaughtUp() {
+        UserMappingViews views = new UserMappingViews(10, Duration.ofMinutes(15), Duration.ofMinutes(1));
+        long token = views.beginLoad("alice");
+        views.load("alice", List.of(item("abc1234", 1L, null)), token);
+        assertNull(views.get("alice"));
+
+        views.onCaughtUp(System.nanoTime());
+        assertEquals(1, views.get("alice").size());
+
+        // Caught up too long ago, e.g. before the environment was frozen.
+        views.onCaughtUp(System.nanoTime() - Duration.ofMinutes(2).toNanos());
+        assertNull(views.get("alice"));
+    }
+
+    @Test
+    public void
+    keepsViewForChangeOfSameVersion() {
+        userMappingViews.onMappingChange(new MappingChange("abc1234", "alice", 2L, 5L, false));
+        assertNotNull(userMappingViews.get("alice"));
+    }
+
+    @Test
+    public void
+    dropsViewForChangeOfOtherVersion() {
+        userMappingViews.onMappingChange(new MappingChange("abc1234", "alice", 3L, 5L, false));
+        assertNull(userMappingViews.get("alice"));
+    }
+
+    @Test
+    public void
+    dropsViewForNewMappingOfUser() {
+        userMappingViews.onMappingChange(new MappingChange("ghi9012", "alice", 1L, null, false));
+        assertNull(userMappingViews.get("alice"));
+    }
+
+    @Test
+    public void
+    keepsViewForRemovalOfMappingNotInIt() {
+        userMappingViews.onMappingChange(new MappingChange("ghi9012", "alice", 1L, null, true));
+        assertNotNull(userMappingViews.get("alice"));
+    }
+
+    @Test
+    public void
+    dropsViewForRemovalOfMappingInIt() {
+        userMappingViews.onMappingChange(new MappingChange("abc1234", "alice", 2L, 5L, true));
+        assertNull(userMappingViews.get("alice"));
+    }
+
+    @Test
+    public void
+    dropsAllViewsForChangeWithoutOwner() {
+        userMappingViews.onMappingChange(new MappingChange("abc1234", null, null, null, false));
+        assertNull(userMappingViews.get("alice"));
+    }
+
+    @Test
+    public void
+    dropsAllViewsWhenChangesWereMissed() {
+        userMappingViews.onChangesMissed();
+        assertNull(userMappingViews.get("alice"));
+    }
+
+    @Test
+    public void
+    raisesClickCountFromChangeOfSameVersion() {
+        userMappingViews.onMappingChange(new MappingChange("abc1234", "alice", 2L, 9L, false));
+        assertEquals(9L, clickCountOf("abc1234"));
+
+        // A late record of an earlier addition never lowers the count.
+        userMappingViews.onMappingChange(new MappingChange("abc1234", "alice", 2L, 7L, false));
+        assertEquals(9L, clickCountOf("abc1234"));
+
+        userMappingViews.onMappingChange(new MappingChange("def5678", "alice", 1L, 1L, false));
+        assertEquals(1L, clickCountOf("def5678"));
+    }
+
+    @Test
+    public void
+    raisesClickCountAfterFlush() {
+        userMappingViews.putClickCount("alice", "abc1234", 2L, 6L);
+        assertEquals(6L, clickCountOf("abc1234"));
+    }
+
+    @Test
+    public void
+    dropsViewAfterFlushToOtherVersion() {
+        userMappingViews.putClickCount("alice", "abc1234", 3L, 6L);
+        assertNull(userMappingViews.get("alice"));
+    }
+
+    @Test
+    public void
+    discardsLoadThatOverlapsAFlush() {
+        userMappingViews.onChangesMissed();
+        long token = userMappingViews.beginLoad("alice");
+        userMappingViews.putClickCount("alice", "abc1234", 2L, 6L);
+        userMappingViews.load("alice", List.of(item("abc1234", 2L, 5L)), token);
+        assertNull(userMappingViews.get("alice"));
+    }
+
+    // ------------------------------------------------------------------------
+    // PRIVATE METHODS
+    // ------------------------------------------------------------------------
+
+    private Long
+    clickCountOf(String shortUrl) {
+        return userMappingViews.get("alice").stream()
+                .filter(item -> item.getShortUrl().equals(shortUrl))
+                .findFirst()
+                .orElseThrow()
+                .getClickCount();
+    }
+
+    private static ShortUrlMappingItem
+    item(String shortUrl, Long version, Long clickCount) {
+        ShortUrlMappingItem item = new ShortUrlMappingItem();
+        item.setUsername("alice");
+        item.setShortUrl(shortUrl);
+        item.setLongUrl("https://example.com/" + shortUrl);
+        item.setVersion(version);
+        item.setClickCount(clickCount);
+        return item;
+    }
+}